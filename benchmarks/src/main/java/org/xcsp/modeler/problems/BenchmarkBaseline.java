@@ -0,0 +1,152 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compare the JSON results of a JMH run (-rf json) with a baseline.
+ * 
+ * For each benchmark and parameters of the baseline, the throughput and
+ * the allocation per operation (with -prof gc) of the run are printed
+ * with their ratio to the baseline. A throughput is a regression when the
+ * 99.9% confidence interval given by JMH (the score plus or minus its
+ * error) is entirely below the one of the baseline, lowered by the
+ * tolerance: a fixed ratio would be within the noise of the benchmarks
+ * with a large error, and the tolerance absorbs the drift of the whole
+ * machine between two runs, which moves the narrow intervals apart.
+ * The exit status is 1 when there is a regression.
+ * 
+ * The JMH files are scanned with regular expressions, the fields being
+ * written by JMH in a fixed order, to avoid a JSON library.
+ * 
+ * Usage: BenchmarkBaseline [-tolerance=0.1] baseline.json run.json
+ */
+public class BenchmarkBaseline {
+
+	private static final Pattern BENCHMARK = Pattern.compile("\"benchmark\" : \"([^\"]*)\"");
+	private static final Pattern PARAMS = Pattern.compile("\"params\" : \\{([^}]*)\\}");
+	private static final Pattern PRIMARY_SCORE = Pattern.compile("\"primaryMetric\" : \\{\\s*\"score\" : ([-0-9.eE]+|\"NaN\"),\\s*\"scoreError\" : ([-0-9.eE]+|\"NaN\")");
+	private static final Pattern ALLOCATION_SCORE = Pattern.compile("\"gc\\.alloc\\.rate\\.norm\" : \\{\\s*\"score\" : ([-0-9.eE]+|\"NaN\")");
+
+	/**
+	 * Read the scores of a JMH JSON file.
+	 * 
+	 * @param fileName the name of the file.
+	 * @return the throughput, its error (NaN with a single iteration) and the allocation
+	 *         per operation (NaN without the gc profiler) of each benchmark, by benchmark
+	 *         and parameters.
+	 * @throws IOException
+	 */
+	static Map<String, double[]> read(String fileName) throws IOException {
+		String content = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+		Map<String, double[]> scores = new LinkedHashMap<>();
+
+		/* Each result begins with its JMH version */
+		String[] results = content.split("\"jmhVersion\"");
+		for (int i = 1; i < results.length; i++) {
+			Matcher benchmark = BENCHMARK.matcher(results[i]);
+			Matcher primaryScore = PRIMARY_SCORE.matcher(results[i]);
+			if (!benchmark.find() || !primaryScore.find()) {
+				throw new IOException(fileName + ": result " + i + " without benchmark or score");
+			}
+
+			Matcher params = PARAMS.matcher(results[i]);
+			Matcher allocationScore = ALLOCATION_SCORE.matcher(results[i]);
+			String name = benchmark.group(1).substring(benchmark.group(1).lastIndexOf('.', benchmark.group(1).lastIndexOf('.') - 1) + 1)
+				+ (params.find() ? " " + params.group(1).replaceAll("\\s+", " ").trim().replace("\" : \"", "=").replace("\"", "") : "");
+			scores.put(name, new double[] { parseScore(primaryScore.group(1)), parseScore(primaryScore.group(2)),
+				allocationScore.find() ? parseScore(allocationScore.group(1)) : Double.NaN });
+		}
+
+		return scores;
+	}
+
+	private static double parseScore(String score) {
+		return score.startsWith("\"") ? Double.NaN : Double.parseDouble(score);
+	}
+
+	/**
+	 * @param scores the scores of a benchmark.
+	 * @param sign   -1 for the lower bound of the confidence interval, 1 for its upper bound.
+	 * @return the bound of the confidence interval of the throughput, the score itself without error.
+	 */
+	private static double bound(double[] scores, int sign) {
+		return Double.isNaN(scores[1]) ? scores[0] : scores[0] + sign * scores[1];
+	}
+
+	public static void main(String[] args) throws IOException {
+		double tolerance = 0.1;
+		String[] files = new String[2];
+		int filesNumber = 0;
+
+		for (String arg : args) {
+			if (arg.startsWith("-tolerance=")) {
+				tolerance = Double.parseDouble(arg.substring("-tolerance=".length()));
+			} else if (filesNumber < files.length) {
+				files[filesNumber++] = arg;
+			}
+		}
+
+		if (filesNumber != 2) {
+			System.err.println("Usage: BenchmarkBaseline [-tolerance=0.1] baseline.json run.json");
+			return;
+		}
+
+		Map<String, double[]> baseline = read(files[0]);
+		Map<String, double[]> run = read(files[1]);
+		int regressionsNumber = 0;
+
+		for (Map.Entry<String, double[]> entry : baseline.entrySet()) {
+			double[] scores = run.get(entry.getKey());
+			if (scores == null) {
+				System.out.println(entry.getKey() + ": not run");
+				continue;
+			}
+
+			double[] baselineScores = entry.getValue();
+			double ratio = scores[0] / baselineScores[0];
+			boolean regression = bound(scores, 1) < bound(baselineScores, -1) * (1 - tolerance);
+			regressionsNumber += regression ? 1 : 0;
+			System.out.println(String.format("%s: %.3f +- %.3f ops/s (x%.2f, baseline %.3f +- %.3f), %.0f B/op (baseline %.0f B/op)%s",
+				entry.getKey(), scores[0], scores[1], ratio, baselineScores[0], baselineScores[1], scores[2], baselineScores[2],
+				regression ? " REGRESSION" : ""));
+		}
+
+		System.out.println(regressionsNumber + " regressions");
+		if (regressionsNumber > 0) {
+			System.exit(1);
+		}
+	}
+}
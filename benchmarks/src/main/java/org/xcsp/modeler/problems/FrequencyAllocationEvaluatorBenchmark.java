@@ -0,0 +1,117 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The moves per second of FrequencyAllocationEvaluator on the 500 stations
+ * instances, from a random assignment.
+ * 
+ * The moves are drawn in advance, so that the random generator isn't measured.
+ * The directory of the instances is given by the property data.dir (../data
+ * by default, from the benchmarks directory).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrequencyAllocationEvaluatorBenchmark {
+
+	/* The number of moves drawn in advance, a power of 2 */
+	private static final int MOVES_NUMBER = 1 << 16;
+
+	@Param({
+		"cop/celar_500_30_20_5_0.870000_24.json",
+		"cop/celar_500_30_20_5_0.870000_29.json",
+		"wcsp/celar_500_30_20_5_0.870000_0.json",
+		"wcsp/celar_500_30_20_5_0.870000_25.json"
+	})
+	public String instance;
+
+	private FrequencyAllocationEvaluator evaluator;
+	private int[] moveStations, movePairs;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		String dataDirectory = System.getProperty("data.dir", "../data");
+		this.evaluator = new FrequencyAllocationEvaluator(FrequencyAllocationInstance.load(Paths.get(dataDirectory, this.instance).toString()));
+
+		Random random = new Random(0);
+		int[] pairs = new int[this.evaluator.stationsNumber()];
+		for (int s = 0; s < pairs.length; s++) {
+			pairs[s] = random.nextInt(this.evaluator.pairsNumber(s));
+		}
+		this.evaluator.assign(pairs);
+
+		this.moveStations = new int[MOVES_NUMBER];
+		this.movePairs = new int[MOVES_NUMBER];
+		for (int i = 0; i < MOVES_NUMBER; i++) {
+			this.moveStations[i] = random.nextInt(pairs.length);
+			this.movePairs[i] = random.nextInt(this.evaluator.pairsNumber(this.moveStations[i]));
+		}
+	}
+
+	/**
+	 * Evaluate a move, without applying it.
+	 */
+	@Benchmark
+	public int evaluateMove() {
+		int i = this.next++ & (MOVES_NUMBER - 1);
+		this.evaluator.evaluateMove(this.moveStations[i], this.movePairs[i]);
+		return this.evaluator.moveViolationsDelta();
+	}
+
+	/**
+	 * Apply a move, as the local search does once it is chosen.
+	 */
+	@Benchmark
+	public int move() {
+		int i = this.next++ & (MOVES_NUMBER - 1);
+		this.evaluator.move(this.moveStations[i], this.movePairs[i]);
+		return this.evaluator.violations();
+	}
+}
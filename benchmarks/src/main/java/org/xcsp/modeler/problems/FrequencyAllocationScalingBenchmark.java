@@ -0,0 +1,106 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time of the generation of the WCSP and XCSP3 models on synthetic
+ * instances, from 1000 to 100000 stations (see FrequencyAllocationGenerator).
+ * 
+ * The instance is generated once per trial in a temporary directory, with
+ * 20 stations per region, the other parameters being the ones of the
+ * largest bundled instances. Each model is generated by FrequencyAllocationBatch
+ * in a single shot, these generations lasting seconds to minutes.
+ * 
+ *   java -cp ... org.openjdk.jmh.Main FrequencyAllocationScalingBenchmark -p stations=1000,10000
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FrequencyAllocationScalingBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int stations;
+
+	@Param({ "wcsp", "m1" })
+	public String model;
+
+	private File directory;
+	private File dataFile;
+	private FrequencyAllocationBatch batch;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.directory = Files.createTempDirectory("FrequencyAllocationScalingBenchmark").toFile();
+		FrequencyAllocationGenerator generator = new FrequencyAllocationGenerator(this.stations, this.stations / 20, 20, 5, 0.87, 0);
+		this.dataFile = new File(this.directory, generator.name() + ".json");
+		generator.generate(this.dataFile);
+		this.batch = new FrequencyAllocationBatch(this.directory, 1, new String[] { this.model }, new WCSPOptions());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (File file : this.directory.listFiles()) {
+			file.delete();
+		}
+		this.directory.delete();
+	}
+
+	/**
+	 * Generate the model of the instance, in the temporary directory.
+	 */
+	@Benchmark
+	public int generate() throws InterruptedException {
+		int failuresNumber = this.batch.run(Collections.singletonList(this.dataFile));
+		if (failuresNumber > 0) {
+			throw new IllegalStateException("Failed to generate " + this.model + " of " + this.dataFile);
+		}
+		return failuresNumber;
+	}
+}
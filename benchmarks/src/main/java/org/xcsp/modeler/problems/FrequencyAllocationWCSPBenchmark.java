@@ -0,0 +1,165 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of the steps of the WCSP generation on the bundled
+ * instances, from 50 to 500 stations.
+ * 
+ * The tuple loops write in an in-memory writer cleared at each call, so
+ * that the allocation rate given by the gc profiler is the one of the
+ * loops themselves. The whole generation writes the file in a temporary
+ * file, through generate() since model() ends the JVM. The directory of
+ * the instances is given by the property data.dir (../data by default,
+ * from the benchmarks directory).
+ * 
+ * The benchmarks are run in 3 forks of 10 iterations, so that the error of
+ * the baseline, to which BenchmarkBaseline compares a run, is narrow enough
+ * to tell a regression from the noise of a single JVM.
+ * 
+ * The baseline of the module, in baseline/, is updated with:
+ *   java -cp ... org.openjdk.jmh.Main FrequencyAllocationWCSPBenchmark -prof gc -rf json -rff baseline/FrequencyAllocationWCSPBenchmark.json
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class FrequencyAllocationWCSPBenchmark {
+
+	@Param({
+		"wcsp/celar_50_7_10_5_0.800000_0.json",
+		"cop/celar_50_7_10_5_0.800000_0.json",
+		"wcsp/celar_150_13_15_5_0.800000_2.json",
+		"cop/celar_150_13_15_5_0.800000_2.json",
+		"wcsp/celar_250_25_15_5_0.820000_0.json",
+		"cop/celar_250_25_15_5_0.820000_20.json",
+		"wcsp/celar_500_30_20_5_0.870000_0.json",
+		"cop/celar_500_30_20_5_0.870000_24.json"
+	})
+	public String instance;
+
+	private FrequencyAllocationWCSP problem;
+	private FrequencyAllocationWCSP.SpacedStation[] spacedStations;
+	private WCSPOutput chunk;
+	private File resultFile;
+	private WCSPOptions options;
+	private WCSPOptions cachedOptions;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		String dataDirectory = System.getProperty("data.dir", "../data");
+		this.problem = FrequencyAllocationWCSP.fromInstance(FrequencyAllocationInstance.load(Paths.get(dataDirectory, this.instance).toString()));
+		this.spacedStations = this.problem.computeSpacedStations();
+		this.chunk = new WCSPWriter();
+		this.resultFile = File.createTempFile("FrequencyAllocationWCSPBenchmark", ".wcsp");
+		this.options = new WCSPOptions();
+		this.cachedOptions = new WCSPOptions();
+		this.cachedOptions.tables = new CompatibilityTables(this.problem.interferences.length);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.resultFile.delete();
+	}
+
+	/**
+	 * Build the tuples of all the stations (Constraint 1).
+	 */
+	@Benchmark
+	public FrequencyAllocationWCSP.SpacedStation[] computeSpacedStations() {
+		return this.problem.computeSpacedStations();
+	}
+
+	/**
+	 * Write the allowed tuples of all the interferences.
+	 */
+	@Benchmark
+	public int computeInterferenceConstraintContent() {
+		this.chunk.clear();
+		int tuplesNumber = 0;
+		for (FrequencyAllocationWCSP.Interference interference : this.problem.interferences) {
+			tuplesNumber += this.problem.computeInterferenceConstraintContent(interference, this.spacedStations, false, this.chunk);
+		}
+		return tuplesNumber;
+	}
+
+	/**
+	 * Write the cost functions of all the interferences from the cache
+	 * of their tables, filled by the first call (see CompatibilityTables).
+	 */
+	@Benchmark
+	public long computeInterferenceConstraintCached() throws IOException {
+		this.chunk.clear();
+		for (FrequencyAllocationWCSP.Interference interference : this.problem.interferences) {
+			this.problem.computeInterferenceConstraintIteration(interference, this.spacedStations, this.chunk, this.cachedOptions);
+		}
+		return this.cachedOptions.tables.hitsNumber();
+	}
+
+	/**
+	 * Write the allowed tuples of all the connections.
+	 */
+	@Benchmark
+	public int computeConnectionConstraintIterationContent() {
+		this.chunk.clear();
+		int tuplesNumber = 0;
+		for (FrequencyAllocationWCSP.Connection connection : this.problem.connection) {
+			tuplesNumber += this.problem.computeConnectionConstraintIterationContent(connection, this.spacedStations, this.chunk);
+		}
+		return tuplesNumber;
+	}
+
+	/**
+	 * Generate the whole WCSP file, as model() does, with the default options.
+	 */
+	@Benchmark
+	public long model() throws IOException {
+		this.problem.generate(this.resultFile.getPath(), this.options);
+		return this.resultFile.length();
+	}
+}
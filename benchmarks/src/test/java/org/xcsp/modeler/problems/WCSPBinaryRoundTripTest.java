@@ -0,0 +1,189 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The binary files written by WCSPBinaryWriter, compressed or not, must be
+ * converted back by WCSPBinaryReader to the exact text file written by
+ * WCSPWriter for the same problem, and copied to the same binary file.
+ * 
+ * The problem is either written by hand, to cover the edges of the format
+ * (runs split by gaps and costs, unary cost functions without tuples, the
+ * global cost functions written with an arity of 0, negative integers taken
+ * as unsigned varints), or generated from a bundled instance with the
+ * complement tables and the soft regions. The directory of the instances is
+ * given by the property data.dir (../data by default, from the benchmarks
+ * directory).
+ */
+public class WCSPBinaryRoundTripTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void handWrittenProblem() throws IOException {
+		this.checkHandWrittenProblem(false);
+	}
+
+	@Test
+	public void compressedHandWrittenProblem() throws IOException {
+		this.checkHandWrittenProblem(true);
+	}
+
+	@Test
+	public void generatedProblem() throws IOException {
+		this.checkGeneratedProblem(false);
+	}
+
+	@Test
+	public void compressedGeneratedProblem() throws IOException {
+		this.checkGeneratedProblem(true);
+	}
+
+	private void checkHandWrittenProblem(boolean compressed) throws IOException {
+		File textFile = this.directory.resolve("problem.wcsp").toFile();
+		File binaryFile = this.directory.resolve(compressed ? "problem.wcspb.gz" : "problem.wcspb").toFile();
+
+		WCSPWriter textWriter = new WCSPWriter(textFile.getPath());
+		writeProblem(textWriter);
+		textWriter.close();
+		WCSPBinaryWriter binaryWriter = new WCSPBinaryWriter(binaryFile.getPath(), compressed);
+		writeProblem(binaryWriter);
+		binaryWriter.close();
+
+		this.checkRoundTrip(textFile, binaryFile, compressed);
+	}
+
+	private void checkGeneratedProblem(boolean compressed) throws IOException {
+		String dataDirectory = System.getProperty("data.dir", "../data");
+		FrequencyAllocationWCSP problem = FrequencyAllocationWCSP.fromInstance(
+			FrequencyAllocationInstance.load(Paths.get(dataDirectory, "wcsp", "celar_50_7_10_5_0.800000_0.json").toString()));
+
+		WCSPOptions options = new WCSPOptions();
+		options.complementTables = true;
+		options.regions = WCSPOptions.Regions.SOFT;
+		options.regionWeight = 3;
+		File textFile = this.directory.resolve("FrequencyAllocationWCSP" + options.resultFileExtension()).toFile();
+		problem.generate(textFile.getPath(), options);
+		assertTrue(new String(Files.readAllBytes(textFile.toPath()), StandardCharsets.US_ASCII).contains(" -1 wamong lin 3 "));
+
+		options.binaryOutput = true;
+		options.compressOutput = compressed;
+		File binaryFile = this.directory.resolve("FrequencyAllocationWCSP" + options.resultFileExtension()).toFile();
+		problem.generate(binaryFile.getPath(), options);
+
+		this.checkRoundTrip(textFile, binaryFile, compressed);
+	}
+
+	/**
+	 * Convert the binary file back to the text format and compare it with the
+	 * text file, then copy it to a binary file of the same compression.
+	 */
+	private void checkRoundTrip(File textFile, File binaryFile, boolean compressed) throws IOException {
+		File convertedFile = this.directory.resolve("converted.wcsp").toFile();
+		WCSPBinaryReader.convert(binaryFile.getPath(), convertedFile.getPath());
+		assertEquals(new String(Files.readAllBytes(textFile.toPath()), StandardCharsets.US_ASCII),
+			new String(Files.readAllBytes(convertedFile.toPath()), StandardCharsets.US_ASCII));
+
+		File copiedFile = this.directory.resolve(compressed ? "copied.wcspb.gz" : "copied.wcspb").toFile();
+		try (WCSPBinaryReader reader = new WCSPBinaryReader(binaryFile.getPath())) {
+			WCSPBinaryWriter writer = new WCSPBinaryWriter(copiedFile.getPath(), compressed);
+			reader.read(writer);
+			writer.close();
+		}
+		/* GZIPOutputStream writes no modification time, so the compressed files are equal too */
+		assertArrayEquals(Files.readAllBytes(binaryFile.toPath()), Files.readAllBytes(copiedFile.toPath()));
+		assertTrue(binaryFile.length() < textFile.length());
+	}
+
+	/**
+	 * Write a problem covering the edges of the binary format.
+	 */
+	private static void writeProblem(WCSPOutput writer) throws IOException {
+		writer.writeHeader("roundtrip", 6, 300, 8, Integer.MAX_VALUE);
+		writer.writeDomainSizes(new int[] { 3, 300, 40, 40, 5, 2 });
+
+		/* Runs split by a cost change, by gaps larger than a varint byte, and by a new first value index */
+		writer.beginCostFunction(0, 1, 1);
+		for (int j = 0; j < 10; j++) {
+			writer.writeTuple(0, j, j < 6 ? 0 : 2);
+		}
+		writer.writeTuple(0, 150, 0);
+		writer.writeTuple(0, 299, 0);
+		writer.writeTuple(2, 0, 0);
+		writer.writeTuple(2, 1, 0);
+		writer.writeTuple(2, 200, 7);
+		writer.endCostFunction();
+
+		/* A complement table, whose tuples are the forbidden ones */
+		writer.beginCostFunction(2, 3, 0);
+		for (int i = 0; i < 40; i++) {
+			for (int j = Math.max(0, i - 2); j <= Math.min(39, i + 2); j++) {
+				writer.writeTuple(i, j, 1);
+			}
+		}
+		writer.endCostFunction();
+
+		/* A binary cost function without tuples */
+		writer.beginCostFunction(1, 2, 1);
+		writer.endCostFunction();
+
+		/* The negative integers, written as unsigned varints of 5 bytes */
+		writer.beginCostFunction(4, 5, Integer.MIN_VALUE);
+		writer.writeTuple(0, 1, -1);
+		writer.writeTuple(3, 0, Integer.MIN_VALUE);
+		writer.writeTuple(4, 1, Integer.MAX_VALUE);
+		writer.endCostFunction();
+
+		writer.beginUnaryCostFunction(4, 0);
+		writer.writeUnaryTuple(0, 5);
+		writer.writeUnaryTuple(1, 5);
+		writer.writeUnaryTuple(3, Integer.MIN_VALUE);
+		writer.endCostFunction();
+
+		writer.beginUnaryCostFunction(1, 0);
+		writer.endCostFunction();
+
+		/* The global cost functions, written with an arity of 0 in the binary format */
+		writer.writeGlobalCostFunction(new int[] { 2, 3, 5 }, "wamong lin 3 1 1 0 2");
+		writer.writeGlobalCostFunction(new int[0], "wamong hard 2147483647 1 1 0 0");
+	}
+}
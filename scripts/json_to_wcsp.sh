@@ -26,10 +26,5 @@
 
 #!/bin/bash
 
-for filename in data/wcsp/*.json; do
-	basename="$(basename "${filename%.*}")"
-	echo $basename > wcsp_queue.txt
-	cp $filename $basename.json
-	java -cp XCSP3-Java-Tools/target/xcsp3-compiler-1.0.1-SNAPSHOT.jar org.xcsp.modeler.Compiler org.xcsp.modeler.problems.FrequencyAllocationWCSP -data=$basename.json
-	rm -f $basename.json
-done
+# Generate all the WCSP instances in a single JVM (see FrequencyAllocationBatch)
+java -cp XCSP3-Java-Tools/target/xcsp3-compiler-1.0.1-SNAPSHOT.jar org.xcsp.modeler.problems.FrequencyAllocationBatch -models=wcsp -output=. data/wcsp
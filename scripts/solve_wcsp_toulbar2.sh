@@ -33,5 +33,10 @@ mkdir -p $output_dir
 
 for filename in $input_dir/*.wcsp; do
 	basename="$(basename "${filename%.*}")"
-	toulbar2 $input_dir/$basename.wcsp -w=$output_dir/$basename.sol > $output_dir/$basename.log
+	# The solution hint written with -Dwcsp.greedyBound=true is given as the initial solution
+	hint=""
+	if [ -f $input_dir/$basename.sol ]; then
+		hint=$input_dir/$basename.sol
+	fi
+	toulbar2 $input_dir/$basename.wcsp $hint -w=$output_dir/$basename.sol > $output_dir/$basename.log
 done
@@ -0,0 +1,244 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the compatibility tables of the interferences.
+ * 
+ * The tuples of the stations are interned, so that the stations with the
+ * same tuples share a domain id, and the table of an interference only
+ * depends on the domain ids of its stations and its Delta. The tables
+ * are kept as bitsets of their forbidden tuples, one row of words for each
+ * tuple of x, in a LRU map of at most capacity tables, and an interference
+ * whose table is cached writes it instead of computing it again.
+ * 
+ * The cache is shared by the workers of the parallel generation, so its
+ * methods are synchronized; the tables are computed outside of the lock.
+ */
+public class CompatibilityTables {
+
+	/**
+	 * The forbidden tuples of an interference.
+	 */
+	static class Table {
+		final int xTuplesNumber, yTuplesNumber;
+		/* The words of the forbidden tuples of y, row after row for the tuples of x */
+		final long[] forbidden;
+		final long forbiddenTuplesNumber;
+
+		Table(int xTuplesNumber, int yTuplesNumber, long[] forbidden, long forbiddenTuplesNumber) {
+			this.xTuplesNumber = xTuplesNumber;
+			this.yTuplesNumber = yTuplesNumber;
+			this.forbidden = forbidden;
+			this.forbiddenTuplesNumber = forbiddenTuplesNumber;
+		}
+
+		/**
+		 * @return the number of words of a row.
+		 */
+		static int rowWords(int yTuplesNumber) {
+			return (yTuplesNumber + 63) >>> 6;
+		}
+
+		/**
+		 * Write the allowed tuples with a cost of 0, or the forbidden
+		 * tuples with a cost of 1 for a complement table, in the order
+		 * of their indexes.
+		 * 
+		 * @param complement if true, write the forbidden tuples instead of the allowed ones.
+		 * @param writer
+		 * @return the number of written tuples.
+		 */
+		int write(boolean complement, WCSPOutput writer) {
+			int rowWords = rowWords(this.yTuplesNumber);
+			int tuplesNumber = 0;
+
+			for (int i = 0; i < this.xTuplesNumber; i++) {
+				for (int w = 0; w < rowWords; w++) {
+					long word = this.forbidden[i * rowWords + w];
+					word = complement ? word : ~word;
+					if (w == rowWords - 1 && (this.yTuplesNumber & 63) != 0) {
+						/* Ignore the bits after the last tuple */
+						word &= (1L << (this.yTuplesNumber & 63)) - 1;
+					}
+
+					while (word != 0) {
+						int j = (w << 6) + Long.numberOfTrailingZeros(word);
+						writer.writeTuple(i, j, complement ? 1 : 0);
+						tuplesNumber++;
+						word &= word - 1;
+					}
+				}
+			}
+
+			return tuplesNumber;
+		}
+	}
+
+	/**
+	 * The tuples of a station, compared by value.
+	 */
+	private static class Domain {
+		final int[] transmitter, receiver;
+		final int hash;
+
+		Domain(FrequencyAllocationWCSP.SpacedStation station) {
+			this.transmitter = Arrays.copyOf(station.transmitter, station.tuplesNumber);
+			this.receiver = Arrays.copyOf(station.receiver, station.tuplesNumber);
+			this.hash = 31 * Arrays.hashCode(this.transmitter) + Arrays.hashCode(this.receiver);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Domain)) {
+				return false;
+			}
+			Domain domain = (Domain) object;
+			return Arrays.equals(this.transmitter, domain.transmitter) && Arrays.equals(this.receiver, domain.receiver);
+		}
+	}
+
+	private final int capacity;
+	private final Map<Domain, Integer> domains;
+	/* The tables by key, in access order for the eviction of the least recently used one */
+	private final LinkedHashMap<Long, Table> tables;
+	private long hitsNumber, missesNumber, evictionsNumber;
+
+	/**
+	 * @param capacity the maximum number of tables kept.
+	 */
+	public CompatibilityTables(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity of the cache must be positive: " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.domains = new HashMap<>();
+		this.tables = new LinkedHashMap<Long, Table>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Table> eldest) {
+				if (this.size() > CompatibilityTables.this.capacity) {
+					CompatibilityTables.this.evictionsNumber++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @param station a station.
+	 * @return the canonical id of the tuples of the station, interned at its first request.
+	 */
+	public synchronized int domainId(FrequencyAllocationWCSP.SpacedStation station) {
+		if (station.domainId < 0) {
+			Domain domain = new Domain(station);
+			Integer domainId = this.domains.get(domain);
+			if (domainId == null) {
+				domainId = this.domains.size();
+				this.domains.put(domain, domainId);
+			}
+			station.domainId = domainId;
+		}
+
+		return station.domainId;
+	}
+
+	/**
+	 * @return the key of the table of two domains and a Delta,
+	 *         or -1 if they don't fit in a key and the table isn't cached.
+	 */
+	static long key(int xDomainId, int yDomainId, int Delta) {
+		if (xDomainId >= 1 << 21 || yDomainId >= 1 << 21 || Delta < 0 || Delta >= 1 << 22) {
+			return -1;
+		}
+		return ((long) xDomainId << 43) | ((long) yDomainId << 22) | Delta;
+	}
+
+	/**
+	 * @return the cached table of the key, or null if it must be computed.
+	 */
+	synchronized Table get(long key) {
+		Table table = this.tables.get(key);
+		if (table == null) {
+			this.missesNumber++;
+		} else {
+			this.hitsNumber++;
+		}
+		return table;
+	}
+
+	synchronized void put(long key, Table table) {
+		this.tables.put(key, table);
+	}
+
+	public synchronized long hitsNumber() {
+		return this.hitsNumber;
+	}
+
+	public synchronized long missesNumber() {
+		return this.missesNumber;
+	}
+
+	public synchronized long evictionsNumber() {
+		return this.evictionsNumber;
+	}
+
+	public synchronized int domainsNumber() {
+		return this.domains.size();
+	}
+
+	/**
+	 * @return the part of the requests found in the cache.
+	 */
+	public synchronized double hitRate() {
+		long requestsNumber = this.hitsNumber + this.missesNumber;
+		return requestsNumber == 0 ? 0 : (double) this.hitsNumber / requestsNumber;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d tables of %d domains, %d hits, %d misses (hit rate %.1f%%), %d evictions",
+			this.tables.size(), this.domains.size(), this.hitsNumber, this.missesNumber, 100 * this.hitRate(), this.evictionsNumber);
+	}
+}
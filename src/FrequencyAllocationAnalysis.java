@@ -0,0 +1,458 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An analysis of an instance which gives the bounds of the objectives and
+ * the symmetries between interchangeable stations, to tighten the XCSP3 models.
+ * 
+ * The number of different frequencies (model 1) is at least 2 for a station
+ * whose delta is not 0, and 4 for two interfering such stations, and at most
+ * the number of frequencies of the domains. The span (model 3) is at least
+ * the largest delta and Delta, and the gap between the highest lowest frequency
+ * of a station and the lowest highest one, and at most the width of the domains.
+ * 
+ * These lower bounds are raised by cliques of the interference graph, found
+ * by a greedy heuristic from each station: the frequencies of the stations of
+ * a clique are all different, so there are at least as many frequencies as
+ * in the clique, and the span is at least the width of the narrowest choice
+ * of as many values in their domains spaced by the smallest delta or Delta.
+ * The cliques are also given to post redundant allDifferent constraints.
+ * 
+ * A unit is a station without connections, or two stations connected only to
+ * each other. Two units are interchangeable if swapping their stations maps
+ * every station to one of the same region, delta and domains, and every
+ * interference and connection to one of the same Delta. Since the constraints
+ * and the objectives are then unchanged, the pairs of the units of a class
+ * can be ordered lexicographically. The larger groups of connected stations
+ * are left out.
+ * 
+ * Usage: FrequencyAllocationAnalysis data.json
+ */
+public class FrequencyAllocationAnalysis {
+
+	private final FrequencyAllocationInstance instance;
+
+	/* The sorted domains of each station */
+	private final int[][] transmitters, receivers;
+
+	/* The greatest Delta of the interferences, and the connections, by pair of stations */
+	private final Map<Long, Integer> interferenceDeltas = new HashMap<>();
+	private final Set<Long> connections = new HashSet<>();
+
+	/* The inclusive bounds of the number of different frequencies and of the span */
+	private int minFrequencies, maxFrequencies, minSpan, maxSpan;
+
+	/* The cliques of interfering stations of at least 3 stations, from the largest one */
+	private final List<int[]> cliques = new ArrayList<>();
+
+	/* The classes of interchangeable units, each unit as its stations in the order of the swaps */
+	private final List<int[][]> symmetryClasses = new ArrayList<>();
+
+	/**
+	 * @param instance the instance.
+	 */
+	public FrequencyAllocationAnalysis(FrequencyAllocationInstance instance) {
+		this.instance = instance;
+		this.transmitters = new int[instance.stationsNumber][];
+		this.receivers = new int[instance.stationsNumber][];
+		for (int s = 0; s < instance.stationsNumber; s++) {
+			this.transmitters[s] = instance.transmitter(s);
+			this.receivers[s] = instance.receiver(s);
+			Arrays.sort(this.transmitters[s]);
+			Arrays.sort(this.receivers[s]);
+		}
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			this.interferenceDeltas.merge(pairKey(instance.interferenceX[i], instance.interferenceY[i]), instance.interferenceDelta[i], Math::max);
+		}
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			this.connections.add(pairKey(instance.connectionX[i], instance.connectionY[i]));
+		}
+
+		this.computeCliques();
+		this.computeBounds();
+		this.computeSymmetryClasses();
+	}
+
+	/**
+	 * @return the lowest possible number of different frequencies.
+	 */
+	public int minFrequencies() {
+		return this.minFrequencies;
+	}
+
+	/**
+	 * @return the highest possible number of different frequencies.
+	 */
+	public int maxFrequencies() {
+		return this.maxFrequencies;
+	}
+
+	/**
+	 * @return the lowest possible span.
+	 */
+	public int minSpan() {
+		return this.minSpan;
+	}
+
+	/**
+	 * @return the highest possible span.
+	 */
+	public int maxSpan() {
+		return this.maxSpan;
+	}
+
+	/**
+	 * @return the different cliques of stations interfering two by two with a
+	 *         Delta which is not 0, of at least 3 stations, from the largest one.
+	 */
+	public List<int[]> cliques() {
+		return this.cliques;
+	}
+
+	/**
+	 * @return the classes of interchangeable units: in each class, the unit k is
+	 *         an array of stations which can be swapped with the stations at the
+	 *         same places in the other units.
+	 */
+	public List<int[][]> symmetryClasses() {
+		return this.symmetryClasses;
+	}
+
+	private static long pairKey(int x, int y) {
+		return x < y ? (long) x << 32 | y : (long) y << 32 | x;
+	}
+
+	private void computeBounds() {
+		int stationsNumber = this.instance.stationsNumber;
+		Set<Integer> values = new HashSet<>();
+		int lowest = Integer.MAX_VALUE, highest = Integer.MIN_VALUE;
+		int highestLowest = Integer.MIN_VALUE, lowestHighest = Integer.MAX_VALUE;
+		int minFrequencies = stationsNumber > 0 ? 1 : 0, minSpan = 0;
+
+		for (int s = 0; s < stationsNumber; s++) {
+			if (this.transmitters[s].length == 0 || this.receivers[s].length == 0) {
+				/* No assignment, the bounds are left as wide as possible */
+				this.minFrequencies = 0;
+				this.maxFrequencies = 2 * stationsNumber;
+				this.minSpan = 0;
+				this.maxSpan = 0;
+				return;
+			}
+			for (int value : this.transmitters[s]) {
+				values.add(value);
+			}
+			for (int value : this.receivers[s]) {
+				values.add(value);
+			}
+
+			/* Every frequency of s lies between the lowest and the highest value of its domains */
+			int first = Math.min(this.transmitters[s][0], this.receivers[s][0]);
+			int last = Math.max(this.transmitters[s][this.transmitters[s].length - 1], this.receivers[s][this.receivers[s].length - 1]);
+			lowest = Math.min(lowest, first);
+			highest = Math.max(highest, last);
+
+			/* Each domain of s has a frequency at least its lowest value, and at most its highest one */
+			highestLowest = Math.max(highestLowest, Math.max(this.transmitters[s][0], this.receivers[s][0]));
+			lowestHighest = Math.min(lowestHighest,
+				Math.min(this.transmitters[s][this.transmitters[s].length - 1], this.receivers[s][this.receivers[s].length - 1]));
+
+			minFrequencies = Math.max(minFrequencies, this.instance.delta[s] > 0 ? 2 : 1);
+			minSpan = Math.max(minSpan, this.instance.delta[s]);
+		}
+
+		/* The four frequencies of two interfering stations are different when the Delta and their deltas are not 0 */
+		for (int i = 0; i < this.instance.interferencesNumber; i++) {
+			int x = this.instance.interferenceX[i], y = this.instance.interferenceY[i], Delta = this.instance.interferenceDelta[i];
+			if (Delta > 0 && x != y) {
+				minSpan = Math.max(minSpan, Delta);
+				minFrequencies = Math.max(minFrequencies, (this.instance.delta[x] > 0 ? 2 : 1) + (this.instance.delta[y] > 0 ? 2 : 1));
+			}
+		}
+
+		/* The frequencies of a clique are all different, and spaced */
+		for (int[] clique : this.cliques) {
+			minFrequencies = Math.max(minFrequencies, this.frequenciesNumber(clique));
+			minSpan = Math.max(minSpan, this.minSpan(clique));
+		}
+
+		/* The lower bounds above the upper ones, when the instance can't be satisfied, are kept in the domains */
+		this.maxFrequencies = Math.min(2 * stationsNumber, values.size());
+		this.maxSpan = stationsNumber > 0 ? highest - lowest : 0;
+		this.minFrequencies = Math.min(minFrequencies, this.maxFrequencies);
+		this.minSpan = stationsNumber > 0 ? Math.min(Math.max(minSpan, highestLowest - lowestHighest), this.maxSpan) : 0;
+	}
+
+	/**
+	 * @return the number of different frequencies of the stations of a clique.
+	 */
+	private int frequenciesNumber(int[] clique) {
+		int frequenciesNumber = 0;
+		for (int station : clique) {
+			frequenciesNumber += this.instance.delta[station] > 0 ? 2 : 1;
+		}
+		return frequenciesNumber;
+	}
+
+	/**
+	 * The different frequencies of a clique are spaced by at least the smallest
+	 * delta or Delta between them. From each value of their domains, the closest
+	 * values so spaced give the narrowest band starting with this value.
+	 * 
+	 * @return the lowest span of the frequencies of a clique.
+	 */
+	private int minSpan(int[] clique) {
+		int gap = Integer.MAX_VALUE;
+		Set<Integer> union = new HashSet<>();
+		for (int i = 0; i < clique.length; i++) {
+			if (this.instance.delta[clique[i]] > 0) {
+				gap = Math.min(gap, this.instance.delta[clique[i]]);
+			}
+			for (int j = i + 1; j < clique.length; j++) {
+				gap = Math.min(gap, this.interferenceDeltas.get(pairKey(clique[i], clique[j])));
+			}
+			for (int value : this.transmitters[clique[i]]) {
+				union.add(value);
+			}
+			for (int value : this.receivers[clique[i]]) {
+				union.add(value);
+			}
+		}
+
+		int[] values = union.stream().mapToInt(Integer::intValue).sorted().toArray();
+		int frequenciesNumber = this.frequenciesNumber(clique);
+		int minSpan = Integer.MAX_VALUE;
+		for (int first = 0; first < values.length; first++) {
+			int last = first, chosen = 1;
+			for (int v = first + 1; v < values.length && chosen < frequenciesNumber; v++) {
+				if (values[v] - values[last] >= gap) {
+					last = v;
+					chosen++;
+				}
+			}
+			if (chosen == frequenciesNumber) {
+				minSpan = Math.min(minSpan, values[last] - values[first]);
+			}
+		}
+
+		/* Without such a band, the instance can't be satisfied */
+		return minSpan == Integer.MAX_VALUE ? values[values.length - 1] - values[0] : minSpan;
+	}
+
+	/**
+	 * From each station, the clique is grown with the neighbours of the station
+	 * by decreasing degree, each neighbour interfering with all the stations
+	 * of the clique being added.
+	 */
+	private void computeCliques() {
+		int stationsNumber = this.instance.stationsNumber;
+		FrequencyAllocationInstance.Adjacency interferences = this.instance.interferenceAdjacency();
+
+		/* The different stations interfering with each station, with a Delta which is not 0 */
+		int[][] neighbours = new int[stationsNumber][];
+		for (int s = 0; s < stationsNumber; s++) {
+			final int station = s;
+			neighbours[s] = Arrays.stream(interferences.edges, interferences.offsets[s], interferences.offsets[s + 1])
+				.map(e -> this.instance.interferenceX[e] == station ? this.instance.interferenceY[e] : this.instance.interferenceX[e])
+				.filter(t -> t != station && this.interferenceDeltas.get(pairKey(station, t)) > 0).distinct().toArray();
+		}
+
+		Set<List<Integer>> found = new HashSet<>();
+		for (int s = 0; s < stationsNumber; s++) {
+			if (neighbours[s].length < 2) {
+				continue;
+			}
+
+			Integer[] candidates = Arrays.stream(neighbours[s]).boxed().toArray(Integer[]::new);
+			Arrays.sort(candidates, (a, b) -> a.equals(b) ? 0 : neighbours[a].length != neighbours[b].length
+				? Integer.compare(neighbours[b].length, neighbours[a].length) : Integer.compare(a, b));
+			List<Integer> clique = new ArrayList<>();
+			clique.add(s);
+			for (int candidate : candidates) {
+				boolean adjacent = true;
+				for (int k = 0; k < clique.size() && adjacent; k++) {
+					Integer Delta = this.interferenceDeltas.get(pairKey(candidate, clique.get(k)));
+					adjacent = clique.get(k) == s || Delta != null && Delta > 0;
+				}
+				if (adjacent) {
+					clique.add(candidate);
+				}
+			}
+
+			if (clique.size() >= 3) {
+				clique.sort(null);
+				if (found.add(clique)) {
+					this.cliques.add(clique.stream().mapToInt(Integer::intValue).toArray());
+				}
+			}
+		}
+
+		/* From the largest clique, in the order of the stations otherwise */
+		this.cliques.sort((a, b) -> a.length != b.length ? Integer.compare(b.length, a.length) : Integer.compare(a[0], b[0]));
+	}
+
+	/**
+	 * @return true if the stations s and t have the same region, delta and domains.
+	 */
+	private boolean isAlike(int s, int t) {
+		return this.instance.region[s] == this.instance.region[t] && this.instance.delta[s] == this.instance.delta[t]
+			&& Arrays.equals(this.transmitters[s], this.transmitters[t]) && Arrays.equals(this.receivers[s], this.receivers[t]);
+	}
+
+	/**
+	 * @return true if swapping the stations from[k] and to[k], for every k, maps
+	 *         the instance onto itself.
+	 */
+	private boolean isSymmetry(int[] from, int[] to, FrequencyAllocationInstance.Adjacency interferences,
+			FrequencyAllocationInstance.Adjacency connectionAdjacency) {
+		Map<Integer, Integer> swap = new HashMap<>();
+		for (int k = 0; k < from.length; k++) {
+			if (!this.isAlike(from[k], to[k])) {
+				return false;
+			}
+			swap.put(from[k], to[k]);
+			swap.put(to[k], from[k]);
+		}
+
+		for (int station : swap.keySet()) {
+			for (int e = interferences.offsets[station]; e < interferences.offsets[station + 1]; e++) {
+				int interference = interferences.edges[e];
+				int x = this.instance.interferenceX[interference], y = this.instance.interferenceY[interference];
+				int Delta = this.interferenceDeltas.get(pairKey(x, y));
+				Integer swapped = this.interferenceDeltas.get(pairKey(swap.getOrDefault(x, x), swap.getOrDefault(y, y)));
+				if (swapped == null || swapped != Delta) {
+					return false;
+				}
+			}
+			for (int e = connectionAdjacency.offsets[station]; e < connectionAdjacency.offsets[station + 1]; e++) {
+				int connection = connectionAdjacency.edges[e];
+				int x = this.instance.connectionX[connection], y = this.instance.connectionY[connection];
+				if (!this.connections.contains(pairKey(swap.getOrDefault(x, x), swap.getOrDefault(y, y)))) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private void computeSymmetryClasses() {
+		FrequencyAllocationInstance.Adjacency interferences = this.instance.interferenceAdjacency();
+		FrequencyAllocationInstance.Adjacency connectionAdjacency = this.instance.connectionAdjacency();
+
+		/* The units, grouped by a signature of their stations which is kept by the swaps */
+		Map<List<Integer>, List<int[]>> candidates = new HashMap<>();
+		for (int s = 0; s < this.instance.stationsNumber; s++) {
+			int[] neighbours = this.connectedStations(s, connectionAdjacency);
+			int[] unit;
+			if (neighbours.length == 0) {
+				unit = new int[] { s };
+			} else if (neighbours.length == 1 && neighbours[0] > s && this.connectedStations(neighbours[0], connectionAdjacency).length == 1) {
+				unit = new int[] { s, neighbours[0] };
+			} else {
+				continue;
+			}
+
+			List<Integer> signature = new ArrayList<>();
+			for (int station : unit) {
+				signature.add(Arrays.asList(this.instance.region[station], this.instance.delta[station], Arrays.hashCode(this.transmitters[station]),
+					Arrays.hashCode(this.receivers[station]), interferences.offsets[station + 1] - interferences.offsets[station]).hashCode());
+			}
+			signature.sort(null);
+			candidates.computeIfAbsent(signature, key -> new ArrayList<>()).add(unit);
+		}
+
+		for (List<int[]> units : candidates.values()) {
+			boolean[] classified = new boolean[units.size()];
+			for (int u = 0; u < units.size(); u++) {
+				if (classified[u]) {
+					continue;
+				}
+
+				/* Each unit of the class is oriented as the swap with the first one */
+				int[] first = units.get(u);
+				List<int[]> symmetryClass = new ArrayList<>();
+				symmetryClass.add(first);
+				for (int v = u + 1; v < units.size(); v++) {
+					int[] unit = units.get(v);
+					int[] reversed = unit.length == 2 ? new int[] { unit[1], unit[0] } : null;
+					if (!classified[v] && this.isSymmetry(first, unit, interferences, connectionAdjacency)) {
+						symmetryClass.add(unit);
+						classified[v] = true;
+					} else if (!classified[v] && reversed != null && this.isSymmetry(first, reversed, interferences, connectionAdjacency)) {
+						symmetryClass.add(reversed);
+						classified[v] = true;
+					}
+				}
+
+				if (symmetryClass.size() > 1) {
+					this.symmetryClasses.add(symmetryClass.toArray(new int[0][]));
+				}
+			}
+		}
+
+		/* In the order of the stations, for the same models at each run */
+		this.symmetryClasses.sort((a, b) -> Integer.compare(a[0][0], b[0][0]));
+	}
+
+	/**
+	 * @return the different stations connected to the station s.
+	 */
+	private int[] connectedStations(int s, FrequencyAllocationInstance.Adjacency connectionAdjacency) {
+		return Arrays.stream(connectionAdjacency.edges, connectionAdjacency.offsets[s], connectionAdjacency.offsets[s + 1])
+			.map(e -> this.instance.connectionX[e] == s ? this.instance.connectionY[e] : this.instance.connectionX[e])
+			.filter(station -> station != s).distinct().toArray();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: FrequencyAllocationAnalysis data.json");
+			return;
+		}
+
+		FrequencyAllocationAnalysis analysis = new FrequencyAllocationAnalysis(FrequencyAllocationInstance.load(args[0]));
+		System.out.println("frequencies: " + analysis.minFrequencies() + " .. " + analysis.maxFrequencies());
+		System.out.println("span: " + analysis.minSpan() + " .. " + analysis.maxSpan());
+		System.out.println(analysis.cliques().size() + " cliques" + (analysis.cliques().isEmpty() ? ""
+			: ", the largest one: " + Arrays.toString(analysis.cliques().get(0))));
+		int unitsNumber = 0;
+		for (int[][] symmetryClass : analysis.symmetryClasses()) {
+			unitsNumber += symmetryClass.length;
+			System.out.println("interchangeable: " + Arrays.deepToString(symmetryClass));
+		}
+		System.out.println(analysis.symmetryClasses().size() + " classes of " + unitsNumber + " interchangeable units");
+	}
+}
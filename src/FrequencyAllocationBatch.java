@@ -0,0 +1,268 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xcsp.modeler.Compiler;
+
+/**
+ * Generate the WCSP and XCSP3 instances of many JSON files in a single
+ * process, instead of starting a JVM per file and per model.
+ * 
+ * The jobs (one per instance and per model) are run by a fixed number
+ * of workers fed by a bounded queue. The WCSP instances are generated
+ * in-process from FrequencyAllocationInstance, and the XCSP3 instances
+ * with the XCSP3 compiler, which writes them in the working directory
+ * before they are moved to the output directory. The compiler reads a
+ * copy of the data file under a unique name, so that data files with the
+ * same name in different directories don't share it, and it is run by a
+ * single worker at a time, its registration of the problems being static.
+ * 
+ * Usage: FrequencyAllocationBatch [-output=dir] [-workers=n] [-models=wcsp,m1,m2,m3] (file.json | dir)...
+ */
+public class FrequencyAllocationBatch {
+
+	private static final String XCSP3_PROBLEM_CLASS = FrequencyAllocationXCSP3.class.getName();
+	private static final String[] DEFAULT_MODELS = { "wcsp", "m1", "m2", "m3" };
+
+	/* The lock of the XCSP3 compiler, whose state is static, shared by the programs running it in-process */
+	static final Object COMPILER_LOCK = new Object();
+
+	private final File outputDirectory;
+	private final int workersNumber;
+	private final String[] models;
+	private final WCSPOptions options;
+
+	/**
+	 * @param outputDirectory the directory of the generated instances.
+	 * @param workersNumber   the number of jobs run at the same time.
+	 * @param models          the models to generate: "wcsp" and the XCSP3 variants.
+	 * @param options         the options of the WCSP generation.
+	 */
+	public FrequencyAllocationBatch(File outputDirectory, int workersNumber, String[] models, WCSPOptions options) {
+		this.outputDirectory = outputDirectory;
+		this.workersNumber = workersNumber;
+		this.models = models;
+		this.options = options;
+	}
+
+	/**
+	 * Generate the WCSP instance of a JSON file.
+	 * 
+	 * @param dataFile the JSON file.
+	 * @param basename the name of the instance.
+	 * @throws IOException
+	 */
+	public void generateWCSP(File dataFile, String basename) throws IOException {
+		FrequencyAllocationInstance instance = FrequencyAllocationInstance.load(dataFile.getPath());
+		File resultFile = new File(this.outputDirectory, "FrequencyAllocationWCSP_" + basename + this.options.resultFileExtension());
+
+		FrequencyAllocationWCSP.fromInstance(instance).generate(resultFile.getPath(), this.options);
+	}
+
+	/**
+	 * Generate an XCSP3 variant of an instance with the XCSP3 compiler,
+	 * one compilation at a time. The data file must be in the working
+	 * directory, under any name: the instance is renamed after basename.
+	 * 
+	 * @param localDataFile the JSON file, in the working directory.
+	 * @param basename      the name of the instance.
+	 * @param model         the model variant (m1, m2 or m3).
+	 * @throws IOException
+	 */
+	public void generateXCSP3(File localDataFile, String basename, String model) throws IOException {
+		String localBasename = localDataFile.getName().replaceFirst("\\.json$", "");
+		Path compiled = Paths.get("FrequencyAllocationXCSP3-" + model + "-" + localBasename + ".xml");
+		Path result = this.outputDirectory.toPath().resolve("FrequencyAllocationXCSP3-" + model + "-" + basename + ".xml");
+
+		synchronized (COMPILER_LOCK) {
+			Compiler.main(new String[] { XCSP3_PROBLEM_CLASS, "-data=" + localDataFile.getName(), "-model=" + model });
+		}
+		if (!Files.exists(compiled)) {
+			throw new IOException("The XCSP3 compiler didn't produce " + compiled);
+		}
+
+		if (!compiled.toAbsolutePath().equals(result.toAbsolutePath())) {
+			Files.move(compiled, result, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Submit the jobs generating the XCSP3 variants of a data file.
+	 * 
+	 * The XCSP3 compiler names the instance after the data file, so it reads
+	 * a copy in the working directory, under a unique name, deleted by the
+	 * last of these jobs.
+	 */
+	private void submitXCSP3(ThreadPoolExecutor executor, File dataFile, String basename, String[] xcsp3Models,
+			List<Future<?>> jobs, List<String> jobNames) throws IOException {
+		File localDataFile = Files.createTempFile(Paths.get("").toAbsolutePath(), basename + "_", ".json").toFile();
+		Files.copy(dataFile.toPath(), localDataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		AtomicInteger remaining = new AtomicInteger(xcsp3Models.length);
+		for (String model : xcsp3Models) {
+			jobNames.add(basename + " " + model);
+			jobs.add(executor.submit(() -> {
+				try {
+					this.generateXCSP3(localDataFile, basename, model);
+				} finally {
+					if (remaining.decrementAndGet() == 0) {
+						Files.deleteIfExists(localDataFile.toPath());
+					}
+				}
+				return null;
+			}));
+		}
+	}
+
+	/**
+	 * Generate the models of all the data files.
+	 * 
+	 * @param dataFiles the JSON files.
+	 * @return the number of failed jobs.
+	 * @throws InterruptedException
+	 */
+	public int run(List<File> dataFiles) throws InterruptedException {
+		/* When the queue is full, the submitting thread runs the job itself */
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(this.workersNumber, this.workersNumber, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(2 * this.workersNumber), new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Future<?>> jobs = new ArrayList<>();
+		List<String> jobNames = new ArrayList<>();
+		boolean wcsp = Arrays.asList(this.models).contains("wcsp");
+		String[] xcsp3Models = Arrays.stream(this.models).filter(model -> !model.equals("wcsp")).toArray(String[]::new);
+		int failuresNumber = 0;
+
+		for (File dataFile : dataFiles) {
+			String basename = dataFile.getName().replaceFirst("\\.json$", "");
+
+			if (wcsp) {
+				jobNames.add(basename + " wcsp");
+				jobs.add(executor.submit(() -> {
+					this.generateWCSP(dataFile, basename);
+					return null;
+				}));
+			}
+
+			if (xcsp3Models.length > 0) {
+				try {
+					this.submitXCSP3(executor, dataFile, basename, xcsp3Models, jobs, jobNames);
+				} catch (IOException e) {
+					System.err.println("Failed to copy " + dataFile + ":");
+					e.printStackTrace();
+					failuresNumber += xcsp3Models.length;
+				}
+			}
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		for (int i = 0; i < jobs.size(); i++) {
+			try {
+				jobs.get(i).get();
+			} catch (ExecutionException e) {
+				System.err.println("Failed to generate " + jobNames.get(i) + ":");
+				e.getCause().printStackTrace();
+				failuresNumber++;
+			}
+		}
+
+		return failuresNumber;
+	}
+
+	/**
+	 * Resolve the JSON files given on the command line,
+	 * the directories being replaced by their JSON files.
+	 * 
+	 * @param paths the files and directories.
+	 * @return the JSON files, sorted by name in each directory.
+	 */
+	private static List<File> resolveDataFiles(List<String> paths) {
+		List<File> dataFiles = new ArrayList<>();
+
+		for (String path : paths) {
+			File file = new File(path);
+			if (file.isDirectory()) {
+				File[] children = file.listFiles((directory, name) -> name.endsWith(".json"));
+				if (children != null) {
+					Arrays.sort(children);
+					dataFiles.addAll(Arrays.asList(children));
+				}
+			} else {
+				dataFiles.add(file);
+			}
+		}
+
+		return dataFiles;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		File outputDirectory = new File(".");
+		int workersNumber = Runtime.getRuntime().availableProcessors();
+		String[] models = DEFAULT_MODELS;
+		List<String> paths = new ArrayList<>();
+
+		for (String arg : args) {
+			if (arg.startsWith("-output=")) {
+				outputDirectory = new File(arg.substring("-output=".length()));
+			} else if (arg.startsWith("-workers=")) {
+				workersNumber = Integer.parseInt(arg.substring("-workers=".length()));
+			} else if (arg.startsWith("-models=")) {
+				models = arg.substring("-models=".length()).split(",");
+			} else {
+				paths.add(arg);
+			}
+		}
+
+		if (paths.isEmpty() || workersNumber < 1) {
+			System.err.println("Usage: FrequencyAllocationBatch [-output=dir] [-workers=n] [-models=wcsp,m1,m2,m3] (file.json | dir)...");
+			System.err.println("  the XCSP3 compiler runs on one worker at a time, the WCSP instances on all the workers");
+			return;
+		}
+
+		outputDirectory.mkdirs();
+		List<File> dataFiles = resolveDataFiles(paths);
+		int failuresNumber = new FrequencyAllocationBatch(outputDirectory, workersNumber, models, WCSPOptions.fromSystemProperties()).run(dataFiles);
+
+		System.out.println((dataFiles.size() * models.length - failuresNumber) + " instances generated, " + failuresNumber + " failed");
+	}
+}
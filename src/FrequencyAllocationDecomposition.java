@@ -0,0 +1,459 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A decomposition of an instance in independent components of stations.
+ * 
+ * Two stations are in the same component if they are linked by a chain of
+ * interferences and connections, or if they are in the same region: the
+ * region constraint (nValues) couples all the stations of a region, so the
+ * components are merged along the regions by default. They can be split
+ * along the interferences and the connections only for the models ignoring
+ * the regions (the WCSP model with wcsp.regions=none): the sub-instances
+ * then keep the limits of the regions, and the regions spanning several
+ * components, whose limit is shared, are listed next to them. The
+ * components are found with a union-find over the stations.
+ * 
+ * Each component is a sub-instance whose station i is the station
+ * stations(component)[i] of the instance, so that the sub-instances
+ * can be written as JSON files and generated on their own, or solved
+ * in parallel and merged into a solution of the whole instance.
+ * 
+ * Usage:
+ * FrequencyAllocationDecomposition -output=dir [-ignoreRegions] data.json
+ *   writes the sub-instances and their station mapping in dir.
+ * FrequencyAllocationDecomposition -solve [-model=m2] [-tl=milliseconds] [-workers=n] data.json
+ *   solves the components with FrequencyAllocationLocalSearch and prints the merged solution.
+ */
+public class FrequencyAllocationDecomposition {
+
+	private final FrequencyAllocationInstance instance;
+
+	/* The union-find forest of the stations */
+	private final int[] parent, rank;
+
+	/* The stations of component c are componentStations[componentOffsets[c] .. componentOffsets[c + 1] - 1] */
+	private final int componentsNumber;
+	private final int[] componentOf, componentOffsets, componentStations;
+
+	/* The index of each station in its component */
+	private final int[] localIndex;
+
+	/* The indexes of the interferences and the connections of each component, laid out like componentStations */
+	private final int[] componentInterferenceOffsets, componentInterferences;
+	private final int[] componentConnectionOffsets, componentConnections;
+
+	/**
+	 * @param instance     the instance.
+	 * @param mergeRegions true to put the stations of a region in the same component.
+	 */
+	public FrequencyAllocationDecomposition(FrequencyAllocationInstance instance, boolean mergeRegions) {
+		int stationsNumber = instance.stationsNumber;
+		this.instance = instance;
+		this.parent = new int[stationsNumber];
+		this.rank = new int[stationsNumber];
+		for (int s = 0; s < stationsNumber; s++) {
+			this.parent[s] = s;
+		}
+
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			this.union(instance.interferenceX[i], instance.interferenceY[i]);
+		}
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			this.union(instance.connectionX[i], instance.connectionY[i]);
+		}
+		if (mergeRegions) {
+			int[] regionStation = new int[instance.regions.length];
+			Arrays.fill(regionStation, -1);
+			for (int s = 0; s < stationsNumber; s++) {
+				int r = instance.region[s];
+				if (regionStation[r] == -1) {
+					regionStation[r] = s;
+				} else {
+					this.union(regionStation[r], s);
+				}
+			}
+		}
+
+		/* Number the components in the order of their first station */
+		int[] rootComponent = new int[stationsNumber];
+		Arrays.fill(rootComponent, -1);
+		this.componentOf = new int[stationsNumber];
+		int componentsNumber = 0;
+		for (int s = 0; s < stationsNumber; s++) {
+			int root = this.find(s);
+			if (rootComponent[root] == -1) {
+				rootComponent[root] = componentsNumber++;
+			}
+			this.componentOf[s] = rootComponent[root];
+		}
+		this.componentsNumber = componentsNumber;
+
+		this.componentOffsets = new int[componentsNumber + 1];
+		for (int s = 0; s < stationsNumber; s++) {
+			this.componentOffsets[this.componentOf[s] + 1]++;
+		}
+		for (int c = 0; c < componentsNumber; c++) {
+			this.componentOffsets[c + 1] += this.componentOffsets[c];
+		}
+		this.componentStations = new int[stationsNumber];
+		this.localIndex = new int[stationsNumber];
+		int[] fill = Arrays.copyOf(this.componentOffsets, componentsNumber);
+		for (int s = 0; s < stationsNumber; s++) {
+			int c = this.componentOf[s];
+			this.localIndex[s] = fill[c] - this.componentOffsets[c];
+			this.componentStations[fill[c]++] = s;
+		}
+
+		this.componentInterferenceOffsets = new int[componentsNumber + 1];
+		this.componentInterferences = this.bucket(instance.interferenceX, instance.interferencesNumber, this.componentInterferenceOffsets);
+		this.componentConnectionOffsets = new int[componentsNumber + 1];
+		this.componentConnections = this.bucket(instance.connectionX, instance.connectionsNumber, this.componentConnectionOffsets);
+	}
+
+	/**
+	 * Bucket the interferences or the connections by the component of their first station.
+	 * 
+	 * @param x       the first station of each interference or connection.
+	 * @param number  the number of interferences or connections.
+	 * @param offsets filled with the offsets of the components in the buckets.
+	 * @return the indexes of the interferences or connections of each component, in increasing order.
+	 */
+	private int[] bucket(int[] x, int number, int[] offsets) {
+		for (int i = 0; i < number; i++) {
+			offsets[this.componentOf[x[i]] + 1]++;
+		}
+		for (int c = 0; c < this.componentsNumber; c++) {
+			offsets[c + 1] += offsets[c];
+		}
+		int[] indexes = new int[number];
+		int[] fill = Arrays.copyOf(offsets, this.componentsNumber);
+		for (int i = 0; i < number; i++) {
+			indexes[fill[this.componentOf[x[i]]]++] = i;
+		}
+		return indexes;
+	}
+
+	private int find(int s) {
+		while (this.parent[s] != s) {
+			/* Path halving */
+			this.parent[s] = this.parent[this.parent[s]];
+			s = this.parent[s];
+		}
+		return s;
+	}
+
+	private void union(int a, int b) {
+		a = this.find(a);
+		b = this.find(b);
+		if (a == b) {
+			return;
+		}
+		if (this.rank[a] < this.rank[b]) {
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		this.parent[b] = a;
+		if (this.rank[a] == this.rank[b]) {
+			this.rank[a]++;
+		}
+	}
+
+	public int componentsNumber() {
+		return this.componentsNumber;
+	}
+
+	/**
+	 * @param component the component.
+	 * @return the stations of the component, in increasing order: the station i
+	 *         of the sub-instance is the station stations(component)[i] of the instance.
+	 */
+	public int[] stations(int component) {
+		return Arrays.copyOfRange(this.componentStations, this.componentOffsets[component], this.componentOffsets[component + 1]);
+	}
+
+	/**
+	 * Build the sub-instance of a component. Its interferences and connections
+	 * are the ones of its stations, renumbered, taken from the buckets of the
+	 * component, and its regions are the regions of the instance, with the
+	 * same limits.
+	 * 
+	 * @param component the component.
+	 * @return the sub-instance.
+	 */
+	public FrequencyAllocationInstance subInstance(int component) {
+		int[] stations = this.stations(component);
+		int[] num = new int[stations.length], region = new int[stations.length], delta = new int[stations.length];
+		int[][] transmitter = new int[stations.length][], receiver = new int[stations.length][];
+		for (int i = 0; i < stations.length; i++) {
+			num[i] = this.instance.num[stations[i]];
+			region[i] = this.instance.region[stations[i]];
+			delta[i] = this.instance.delta[stations[i]];
+			transmitter[i] = this.instance.transmitter(stations[i]);
+			receiver[i] = this.instance.receiver(stations[i]);
+		}
+
+		int from = this.componentInterferenceOffsets[component];
+		int[][] interference = new int[this.componentInterferenceOffsets[component + 1] - from][];
+		for (int j = 0; j < interference.length; j++) {
+			int i = this.componentInterferences[from + j];
+			interference[j] = new int[] { this.localIndex[this.instance.interferenceX[i]], this.localIndex[this.instance.interferenceY[i]],
+				this.instance.interferenceDelta[i] };
+		}
+
+		from = this.componentConnectionOffsets[component];
+		int[][] connection = new int[this.componentConnectionOffsets[component + 1] - from][];
+		for (int j = 0; j < connection.length; j++) {
+			int i = this.componentConnections[from + j];
+			connection[j] = new int[] { this.localIndex[this.instance.connectionX[i]], this.localIndex[this.instance.connectionY[i]] };
+		}
+
+		return FrequencyAllocationInstance.of(num, region, delta, transmitter, receiver, interference, connection, this.instance.regions.clone());
+	}
+
+	/**
+	 * @return the regions whose stations are in several components, each
+	 *         followed by the components of its stations, in increasing order.
+	 */
+	public List<int[]> spanningRegions() {
+		FrequencyAllocationInstance.IntList[] regionComponents = new FrequencyAllocationInstance.IntList[this.instance.regions.length];
+		for (int r = 0; r < regionComponents.length; r++) {
+			regionComponents[r] = new FrequencyAllocationInstance.IntList();
+		}
+		/* The components are visited in order, so a component is only compared to the last one of the region */
+		for (int c = 0; c < this.componentsNumber; c++) {
+			for (int i = this.componentOffsets[c]; i < this.componentOffsets[c + 1]; i++) {
+				FrequencyAllocationInstance.IntList components = regionComponents[this.instance.region[this.componentStations[i]]];
+				if (components.size() == 0 || components.get(components.size() - 1) != c) {
+					components.add(c);
+				}
+			}
+		}
+
+		List<int[]> spanningRegions = new ArrayList<>();
+		for (int r = 0; r < regionComponents.length; r++) {
+			if (regionComponents[r].size() > 1) {
+				int[] region = new int[regionComponents[r].size() + 1];
+				region[0] = r;
+				System.arraycopy(regionComponents[r].toArray(), 0, region, 1, regionComponents[r].size());
+				spanningRegions.add(region);
+			}
+		}
+		return spanningRegions;
+	}
+
+	/**
+	 * Write the sub-instances as the JSON files basename_c&lt;component&gt;.json,
+	 * and the stations of each component, one component per line, in
+	 * basename_components.txt. The regions spanning several components,
+	 * if the components weren't merged along the regions, are written one
+	 * per line in basename_regions.txt, as the region, its limit shared by
+	 * the components, then the components.
+	 * 
+	 * @param directory the output directory.
+	 * @param basename  the name of the instance.
+	 * @throws IOException
+	 */
+	public void write(File directory, String basename) throws IOException {
+		try (PrintWriter mapping = new PrintWriter(new File(directory, basename + "_components.txt"), "UTF-8")) {
+			for (int c = 0; c < this.componentsNumber; c++) {
+				String fileName = basename + "_c" + c + ".json";
+				this.subInstance(c).save(new File(directory, fileName).getPath());
+
+				StringBuilder line = new StringBuilder(fileName);
+				for (int s : this.stations(c)) {
+					line.append(' ').append(s);
+				}
+				mapping.println(line);
+			}
+		}
+
+		List<int[]> spanningRegions = this.spanningRegions();
+		File regionsFile = new File(directory, basename + "_regions.txt");
+		if (spanningRegions.isEmpty()) {
+			regionsFile.delete();
+			return;
+		}
+		try (PrintWriter regions = new PrintWriter(regionsFile, "UTF-8")) {
+			for (int[] region : spanningRegions) {
+				StringBuilder line = new StringBuilder().append(region[0]).append(' ').append(this.instance.regions[region[0]]);
+				for (int i = 1; i < region.length; i++) {
+					line.append(' ').append(region[i]);
+				}
+				regions.println(line);
+			}
+		}
+	}
+
+	/**
+	 * Solve the components in parallel with FrequencyAllocationLocalSearch,
+	 * and merge their solutions. Each component gets a share of the time
+	 * of the workers proportional to its number of stations.
+	 * 
+	 * Only the constraints and the objective of m2 are separable: the
+	 * components must have been merged along the regions, and the merged
+	 * solution of m2 is optimal if the solutions of the components are.
+	 * 
+	 * @param model         null to only satisfy the constraints, or m2.
+	 * @param timeLimit     the time limit of the whole solving, in milliseconds.
+	 * @param workersNumber the number of components solved at the same time.
+	 * @param seed          the seed of the random choices.
+	 * @return the pair index of each station of the instance, or null if a component wasn't solved.
+	 * @throws IOException
+	 */
+	public int[] solve(String model, long timeLimit, int workersNumber, long seed) throws IOException {
+		if (model != null && !model.equals("m2")) {
+			throw new IllegalArgumentException("The objective of " + model + " isn't separable in components");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(workersNumber);
+		try {
+			List<Future<int[]>> solutions = new ArrayList<>(this.componentsNumber);
+			for (int c = 0; c < this.componentsNumber; c++) {
+				FrequencyAllocationInstance subInstance = this.subInstance(c);
+				long componentTimeLimit = Math.max(1, timeLimit * workersNumber * subInstance.stationsNumber / this.instance.stationsNumber);
+				long componentSeed = seed + c;
+				solutions.add(executor.submit(() -> {
+					FrequencyAllocationLocalSearch search = new FrequencyAllocationLocalSearch(subInstance, model, componentSeed);
+					return search.hasPairs() ? search.solve(componentTimeLimit, new PrintStream(new NullOutputStream())) : null;
+				}));
+			}
+
+			int[] solution = new int[this.instance.stationsNumber];
+			for (int c = 0; c < this.componentsNumber; c++) {
+				int[] componentSolution = solutions.get(c).get();
+				if (componentSolution == null) {
+					return null;
+				}
+				int[] stations = this.stations(c);
+				for (int i = 0; i < stations.length; i++) {
+					solution[stations[i]] = componentSolution[i];
+				}
+			}
+
+			return solution;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while solving the components", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to solve a component", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * An output stream discarding the progress of the components.
+	 */
+	static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		File outputDirectory = null;
+		boolean mergeRegions = true, solve = false;
+		String model = null;
+		long timeLimit = 10000;
+		int workersNumber = Runtime.getRuntime().availableProcessors();
+		String dataFileName = null;
+
+		for (String arg : args) {
+			if (arg.startsWith("-output=")) {
+				outputDirectory = new File(arg.substring("-output=".length()));
+			} else if (arg.equals("-ignoreRegions")) {
+				mergeRegions = false;
+			} else if (arg.equals("-solve")) {
+				solve = true;
+			} else if (arg.startsWith("-model=")) {
+				model = arg.substring("-model=".length());
+			} else if (arg.startsWith("-tl=")) {
+				timeLimit = Long.parseLong(arg.substring("-tl=".length()));
+			} else if (arg.startsWith("-workers=")) {
+				workersNumber = Integer.parseInt(arg.substring("-workers=".length()));
+			} else {
+				dataFileName = arg;
+			}
+		}
+
+		if (dataFileName == null || (outputDirectory == null) == !solve) {
+			System.err.println("Usage: FrequencyAllocationDecomposition -output=dir [-ignoreRegions] data.json");
+			System.err.println("       FrequencyAllocationDecomposition -solve [-model=m2] [-tl=milliseconds] [-workers=n] data.json");
+			return;
+		}
+
+		FrequencyAllocationInstance instance = FrequencyAllocationInstance.load(dataFileName);
+
+		if (outputDirectory != null) {
+			FrequencyAllocationDecomposition decomposition = new FrequencyAllocationDecomposition(instance, mergeRegions);
+			outputDirectory.mkdirs();
+			decomposition.write(outputDirectory, new File(dataFileName).getName().replaceFirst("\\.json$", ""));
+			System.out.println(decomposition.componentsNumber() + " components written in " + outputDirectory);
+			if (!mergeRegions) {
+				System.out.println(decomposition.spanningRegions().size() + " regions spanning several components, with their shared limit");
+			}
+			return;
+		}
+
+		/* The region constraints are part of the solved model */
+		FrequencyAllocationDecomposition decomposition = new FrequencyAllocationDecomposition(instance, true);
+		System.out.println("c [" + String.join(", ", args) + "]");
+		System.out.println("c " + decomposition.componentsNumber() + " components");
+		int[] solution = decomposition.solve(model, timeLimit, workersNumber, 0);
+		if (solution == null) {
+			System.out.println("s UNKNOWN");
+			return;
+		}
+
+		FrequencyAllocationLocalSearch search = new FrequencyAllocationLocalSearch(instance, model, 0);
+		if (model != null) {
+			System.out.println("o " + search.objective(solution) + " ");
+		}
+		System.out.println("s SATISFIABLE");
+		search.printInstantiation(solution, System.out);
+	}
+}
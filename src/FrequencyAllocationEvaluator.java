@@ -0,0 +1,622 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * An incremental evaluator of the assignments of an instance, for the
+ * heuristics and the repairs working directly on the station graph.
+ * 
+ * Each station is assigned a pair (transmitter, receiver) whose gap is its
+ * delta, so that constraint 1 always holds. The other constraints are
+ * counted as violations:
+ * - an interference whose four gaps aren't all greater or equal to Delta
+ * - a connection whose frequencies don't match
+ * - a region using n frequencies more than its limit counts for n
+ * - a use of a forbidden frequency (see forbid())
+ * 
+ * The interferences and the connections are stored as adjacency lists in
+ * CSR arrays, the uses of the frequencies as counts, globally and in each
+ * region, and the frequencies are replaced by their index in the sorted
+ * distinct frequencies. The global counts are a multiset whose lowest and
+ * highest used indexes are followed by two pointers, for the span of m3.
+ * 
+ * evaluateMove() and move() take a time proportional to the degree of the
+ * station, and allocate nothing.
+ */
+public class FrequencyAllocationEvaluator {
+
+	/* The pairs of station s are pairT/pairR[pairOffsets[s] .. pairOffsets[s + 1] - 1], as frequency indexes */
+	final int[] pairOffsets, pairT, pairR;
+
+	/* The distinct frequencies, sorted, indexed by the frequency indexes */
+	final int[] frequencies;
+
+	final int stationsNumber, regionsNumber, frequenciesNumber;
+	final int[] stationRegion, regionLimit;
+	final int[] regionStationOffsets, regionStations;
+
+	/* The interferences of station s: neighbour and Delta, from interferenceOffsets[s] */
+	final int[] interferenceOffsets, interferenceNeighbour, interferenceDelta;
+
+	/* The connected stations of station s, from connectionOffsets[s] */
+	final int[] connectionOffsets, connectionNeighbour;
+
+	/* The current assignment: the pair index of each station, relative to its offset */
+	private final int[] assignment;
+
+	/* The number of violated interferences and connections, and of forbidden uses, of each station */
+	private final int[] stationViolations;
+
+	/* The indexed set of the stations with violations */
+	private final int[] violatedStations, violatedStationPosition;
+	private int violatedStationsNumber;
+
+	/* The number of uses of each frequency, globally and in each region */
+	private final int[] frequencyCount, regionFrequencyCount;
+	private final int[] regionDistinct;
+	private int distinct;
+	private long sum;
+
+	/* The lowest and highest used frequency indexes, may be below or above them between two moves */
+	private int minFrequency, maxFrequency;
+
+	/* The violated interferences and connections (counted once), and the region excesses */
+	private int binaryViolations, regionViolations;
+
+	/* The forbidden frequencies, and their number of uses */
+	private final boolean[] forbidden;
+	private int forbiddenUses;
+
+	/* The sum of the squares of the frequency counts */
+	private long squaredCounts;
+
+	/* The result of evaluateMove() */
+	private int moveViolationsDelta, moveDistinctDelta, moveSpanDelta;
+	private long moveSumDelta, moveSquaredCountsDelta;
+
+	/**
+	 * @param instance the instance.
+	 */
+	public FrequencyAllocationEvaluator(FrequencyAllocationInstance instance) {
+		this.stationsNumber = instance.stationsNumber;
+		this.regionsNumber = instance.regions.length;
+
+		/* Index the distinct frequencies */
+		int[] allFrequencies = new int[instance.transmitters.length + instance.receivers.length];
+		System.arraycopy(instance.transmitters, 0, allFrequencies, 0, instance.transmitters.length);
+		System.arraycopy(instance.receivers, 0, allFrequencies, instance.transmitters.length, instance.receivers.length);
+		this.frequencies = Arrays.stream(allFrequencies).sorted().distinct().toArray();
+		this.frequenciesNumber = this.frequencies.length;
+
+		/* The pairs of each station, as in SpacedStation (constraint 1) */
+		this.pairOffsets = new int[this.stationsNumber + 1];
+		FrequencyAllocationInstance.IntList pairT = new FrequencyAllocationInstance.IntList();
+		FrequencyAllocationInstance.IntList pairR = new FrequencyAllocationInstance.IntList();
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.pairOffsets[s] = pairT.size();
+			for (int i = instance.transmitterOffsets[s]; i < instance.transmitterOffsets[s + 1]; i++) {
+				for (int j = instance.receiverOffsets[s]; j < instance.receiverOffsets[s + 1]; j++) {
+					if (Math.abs(instance.transmitters[i] - instance.receivers[j]) == instance.delta[s]) {
+						pairT.add(Arrays.binarySearch(this.frequencies, instance.transmitters[i]));
+						pairR.add(Arrays.binarySearch(this.frequencies, instance.receivers[j]));
+					}
+				}
+			}
+		}
+		this.pairOffsets[this.stationsNumber] = pairT.size();
+		this.pairT = pairT.toArray();
+		this.pairR = pairR.toArray();
+
+		this.stationRegion = instance.region.clone();
+		this.regionLimit = instance.regions.clone();
+		this.regionStationOffsets = new int[this.regionsNumber + 1];
+		this.regionStations = new int[this.stationsNumber];
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.regionStationOffsets[this.stationRegion[s] + 1]++;
+		}
+		for (int r = 0; r < this.regionsNumber; r++) {
+			this.regionStationOffsets[r + 1] += this.regionStationOffsets[r];
+		}
+		int[] regionFill = Arrays.copyOf(this.regionStationOffsets, this.regionsNumber);
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.regionStations[regionFill[this.stationRegion[s]]++] = s;
+		}
+
+		/* The interference and connection neighbours of each station, in both directions */
+		this.interferenceOffsets = new int[this.stationsNumber + 1];
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			this.interferenceOffsets[instance.interferenceX[i] + 1]++;
+			this.interferenceOffsets[instance.interferenceY[i] + 1]++;
+		}
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.interferenceOffsets[s + 1] += this.interferenceOffsets[s];
+		}
+		this.interferenceNeighbour = new int[2 * instance.interferencesNumber];
+		this.interferenceDelta = new int[2 * instance.interferencesNumber];
+		int[] interferenceFill = Arrays.copyOf(this.interferenceOffsets, this.stationsNumber);
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			int x = instance.interferenceX[i];
+			int y = instance.interferenceY[i];
+			this.interferenceNeighbour[interferenceFill[x]] = y;
+			this.interferenceDelta[interferenceFill[x]++] = instance.interferenceDelta[i];
+			this.interferenceNeighbour[interferenceFill[y]] = x;
+			this.interferenceDelta[interferenceFill[y]++] = instance.interferenceDelta[i];
+		}
+
+		this.connectionOffsets = new int[this.stationsNumber + 1];
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			this.connectionOffsets[instance.connectionX[i] + 1]++;
+			this.connectionOffsets[instance.connectionY[i] + 1]++;
+		}
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.connectionOffsets[s + 1] += this.connectionOffsets[s];
+		}
+		this.connectionNeighbour = new int[2 * instance.connectionsNumber];
+		int[] connectionFill = Arrays.copyOf(this.connectionOffsets, this.stationsNumber);
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			this.connectionNeighbour[connectionFill[instance.connectionX[i]]++] = instance.connectionY[i];
+			this.connectionNeighbour[connectionFill[instance.connectionY[i]]++] = instance.connectionX[i];
+		}
+
+		this.assignment = new int[this.stationsNumber];
+		this.stationViolations = new int[this.stationsNumber];
+		this.violatedStations = new int[this.stationsNumber];
+		this.violatedStationPosition = new int[this.stationsNumber];
+		this.frequencyCount = new int[this.frequenciesNumber];
+		this.regionFrequencyCount = new int[this.regionsNumber * this.frequenciesNumber];
+		this.regionDistinct = new int[this.regionsNumber];
+		this.forbidden = new boolean[this.frequenciesNumber];
+	}
+
+	/**
+	 * @return true if every station has at least one pair of frequencies.
+	 */
+	public boolean hasPairs() {
+		for (int s = 0; s < this.stationsNumber; s++) {
+			if (this.pairOffsets[s] == this.pairOffsets[s + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int stationsNumber() {
+		return this.stationsNumber;
+	}
+
+	/**
+	 * @param station the station.
+	 * @return the number of pairs of the station.
+	 */
+	public int pairsNumber(int station) {
+		return this.pairOffsets[station + 1] - this.pairOffsets[station];
+	}
+
+	/**
+	 * @param station the station.
+	 * @param k       the pair index, relative to the offset of the station.
+	 * @return the transmitter frequency of the pair.
+	 */
+	public int transmitter(int station, int k) {
+		return this.frequencies[this.pairT[this.pairOffsets[station] + k]];
+	}
+
+	/**
+	 * @param station the station.
+	 * @param k       the pair index, relative to the offset of the station.
+	 * @return the receiver frequency of the pair.
+	 */
+	public int receiver(int station, int k) {
+		return this.frequencies[this.pairR[this.pairOffsets[station] + k]];
+	}
+
+	boolean interfere(int pa, int pb, int Delta) {
+		int ta = this.frequencies[this.pairT[pa]], ra = this.frequencies[this.pairR[pa]];
+		int tb = this.frequencies[this.pairT[pb]], rb = this.frequencies[this.pairR[pb]];
+		return Math.abs(ta - tb) < Delta || Math.abs(ta - rb) < Delta ||
+			Math.abs(ra - tb) < Delta || Math.abs(ra - rb) < Delta;
+	}
+
+	boolean disconnected(int pa, int pb) {
+		return this.pairT[pa] != this.pairR[pb] || this.pairT[pb] != this.pairR[pa];
+	}
+
+	private int pair(int station) {
+		return this.pairOffsets[station] + this.assignment[station];
+	}
+
+	/**
+	 * Count a use of a frequency more (delta = 1) or less (delta = -1).
+	 */
+	private void countFrequency(int region, int f, int delta) {
+		int regionIndex = region * this.frequenciesNumber + f;
+
+		this.squaredCounts += delta * (2L * this.frequencyCount[f] + delta);
+		if (this.forbidden[f]) {
+			this.forbiddenUses += delta;
+		}
+
+		if (delta > 0) {
+			if (this.frequencyCount[f]++ == 0) {
+				this.distinct++;
+				this.minFrequency = Math.min(this.minFrequency, f);
+				this.maxFrequency = Math.max(this.maxFrequency, f);
+			}
+			if (this.regionFrequencyCount[regionIndex]++ == 0 && ++this.regionDistinct[region] > this.regionLimit[region]) {
+				this.regionViolations++;
+			}
+		} else {
+			if (--this.frequencyCount[f] == 0) {
+				this.distinct--;
+			}
+			if (--this.regionFrequencyCount[regionIndex] == 0 && this.regionDistinct[region]-- > this.regionLimit[region]) {
+				this.regionViolations--;
+			}
+		}
+		this.sum += delta * (long) this.frequencies[f];
+	}
+
+	private int forbiddenUses(int p) {
+		return (this.forbidden[this.pairT[p]] ? 1 : 0) + (this.forbidden[this.pairR[p]] ? 1 : 0);
+	}
+
+	private void countPair(int station, int p, int delta) {
+		this.countFrequency(this.stationRegion[station], this.pairT[p], delta);
+		this.countFrequency(this.stationRegion[station], this.pairR[p], delta);
+	}
+
+	private void setStationViolations(int station, int violations) {
+		boolean wasViolated = this.stationViolations[station] > 0;
+		this.stationViolations[station] = violations;
+
+		if (violations > 0 && !wasViolated) {
+			this.violatedStationPosition[station] = this.violatedStationsNumber;
+			this.violatedStations[this.violatedStationsNumber++] = station;
+		} else if (violations == 0 && wasViolated) {
+			int last = this.violatedStations[--this.violatedStationsNumber];
+			int position = this.violatedStationPosition[station];
+			this.violatedStations[position] = last;
+			this.violatedStationPosition[last] = position;
+		}
+	}
+
+	/**
+	 * Assign a pair to each station, and compute the violations
+	 * and the objectives from scratch. The forbidden frequencies
+	 * are allowed again.
+	 * 
+	 * @param pairs the pair index of each station, relative to its offset.
+	 */
+	public void assign(int[] pairs) {
+		Arrays.fill(this.stationViolations, 0);
+		Arrays.fill(this.frequencyCount, 0);
+		Arrays.fill(this.regionFrequencyCount, 0);
+		Arrays.fill(this.regionDistinct, 0);
+		Arrays.fill(this.forbidden, false);
+		this.violatedStationsNumber = 0;
+		this.distinct = 0;
+		this.sum = 0;
+		this.binaryViolations = 0;
+		this.regionViolations = 0;
+		this.forbiddenUses = 0;
+		this.squaredCounts = 0;
+		this.minFrequency = this.frequenciesNumber - 1;
+		this.maxFrequency = 0;
+
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.assignment[s] = pairs[s];
+			this.countPair(s, this.pair(s), 1);
+		}
+
+		for (int s = 0; s < this.stationsNumber; s++) {
+			int violations = 0;
+			for (int e = this.interferenceOffsets[s]; e < this.interferenceOffsets[s + 1]; e++) {
+				violations += this.interfere(this.pair(s), this.pair(this.interferenceNeighbour[e]), this.interferenceDelta[e]) ? 1 : 0;
+			}
+			for (int e = this.connectionOffsets[s]; e < this.connectionOffsets[s + 1]; e++) {
+				violations += this.disconnected(this.pair(s), this.pair(this.connectionNeighbour[e])) ? 1 : 0;
+			}
+			this.binaryViolations += violations;
+			this.setStationViolations(s, violations);
+		}
+		/* Each violated interference or connection has been counted by its two stations */
+		this.binaryViolations /= 2;
+	}
+
+	/**
+	 * Evaluate the move of a station to another pair. Its effect is then
+	 * given by moveViolationsDelta(), moveDistinctDelta(), moveSumDelta(),
+	 * moveSpanDelta() and moveSquaredCountsDelta().
+	 * 
+	 * @param station the station.
+	 * @param k       the new pair index, relative to the offset of the station.
+	 */
+	public void evaluateMove(int station, int k) {
+		int oldPair = this.pair(station);
+		int newPair = this.pairOffsets[station] + k;
+		int violationsDelta = this.forbiddenUses(newPair) - this.forbiddenUses(oldPair);
+
+		for (int e = this.interferenceOffsets[station]; e < this.interferenceOffsets[station + 1]; e++) {
+			int neighbourPair = this.pair(this.interferenceNeighbour[e]);
+			violationsDelta += (this.interfere(newPair, neighbourPair, this.interferenceDelta[e]) ? 1 : 0)
+				- (this.interfere(oldPair, neighbourPair, this.interferenceDelta[e]) ? 1 : 0);
+		}
+		for (int e = this.connectionOffsets[station]; e < this.connectionOffsets[station + 1]; e++) {
+			int neighbourPair = this.pair(this.connectionNeighbour[e]);
+			violationsDelta += (this.disconnected(newPair, neighbourPair) ? 1 : 0)
+				- (this.disconnected(oldPair, neighbourPair) ? 1 : 0);
+		}
+
+		/* The frequency counts are updated, read and restored */
+		int regionViolationsBefore = this.regionViolations;
+		int distinctBefore = this.distinct;
+		int spanBefore = this.span();
+		long sumBefore = this.sum;
+		long squaredCountsBefore = this.squaredCounts;
+		this.countPair(station, oldPair, -1);
+		this.countPair(station, newPair, 1);
+
+		this.moveViolationsDelta = violationsDelta + this.regionViolations - regionViolationsBefore;
+		this.moveDistinctDelta = this.distinct - distinctBefore;
+		this.moveSpanDelta = this.span() - spanBefore;
+		this.moveSumDelta = this.sum - sumBefore;
+		this.moveSquaredCountsDelta = this.squaredCounts - squaredCountsBefore;
+
+		this.countPair(station, newPair, -1);
+		this.countPair(station, oldPair, 1);
+	}
+
+	public int moveViolationsDelta() {
+		return this.moveViolationsDelta;
+	}
+
+	public int moveDistinctDelta() {
+		return this.moveDistinctDelta;
+	}
+
+	public long moveSumDelta() {
+		return this.moveSumDelta;
+	}
+
+	public int moveSpanDelta() {
+		return this.moveSpanDelta;
+	}
+
+	public long moveSquaredCountsDelta() {
+		return this.moveSquaredCountsDelta;
+	}
+
+	/**
+	 * Move a station to another pair and update the violations.
+	 * 
+	 * @param station the station.
+	 * @param k       the new pair index, relative to the offset of the station.
+	 */
+	public void move(int station, int k) {
+		int oldPair = this.pair(station);
+		int newPair = this.pairOffsets[station] + k;
+		int violations = this.stationViolations[station] + this.forbiddenUses(newPair) - this.forbiddenUses(oldPair);
+
+		for (int e = this.interferenceOffsets[station]; e < this.interferenceOffsets[station + 1]; e++) {
+			int neighbour = this.interferenceNeighbour[e];
+			int change = (this.interfere(newPair, this.pair(neighbour), this.interferenceDelta[e]) ? 1 : 0)
+				- (this.interfere(oldPair, this.pair(neighbour), this.interferenceDelta[e]) ? 1 : 0);
+			violations += change;
+			this.binaryViolations += change;
+			this.setStationViolations(neighbour, this.stationViolations[neighbour] + change);
+		}
+		for (int e = this.connectionOffsets[station]; e < this.connectionOffsets[station + 1]; e++) {
+			int neighbour = this.connectionNeighbour[e];
+			int change = (this.disconnected(newPair, this.pair(neighbour)) ? 1 : 0)
+				- (this.disconnected(oldPair, this.pair(neighbour)) ? 1 : 0);
+			violations += change;
+			this.binaryViolations += change;
+			this.setStationViolations(neighbour, this.stationViolations[neighbour] + change);
+		}
+		this.setStationViolations(station, violations);
+
+		this.countPair(station, oldPair, -1);
+		this.countPair(station, newPair, 1);
+		this.assignment[station] = k;
+	}
+
+	/**
+	 * Forbid a frequency: its uses become violations, until the next assign().
+	 * 
+	 * @param f the frequency index.
+	 */
+	public void forbid(int f) {
+		if (this.forbidden[f]) {
+			return;
+		}
+		this.forbidden[f] = true;
+		this.forbiddenUses += this.frequencyCount[f];
+
+		for (int s = 0; s < this.stationsNumber; s++) {
+			int p = this.pair(s);
+			int uses = (this.pairT[p] == f ? 1 : 0) + (this.pairR[p] == f ? 1 : 0);
+			if (uses > 0) {
+				this.setStationViolations(s, this.stationViolations[s] + uses);
+			}
+		}
+	}
+
+	/**
+	 * @param station the station.
+	 * @return the pair index of the station, relative to its offset.
+	 */
+	public int assignment(int station) {
+		return this.assignment[station];
+	}
+
+	/**
+	 * @return a copy of the current assignment.
+	 */
+	public int[] assignment() {
+		return this.assignment.clone();
+	}
+
+	/**
+	 * @return the number of violations of the current assignment.
+	 */
+	public int violations() {
+		return this.binaryViolations + this.regionViolations + this.forbiddenUses;
+	}
+
+	/**
+	 * @param station the station.
+	 * @return the number of violated interferences and connections, and of forbidden uses, of the station.
+	 */
+	public int stationViolations(int station) {
+		return this.stationViolations[station];
+	}
+
+	public int violatedStationsNumber() {
+		return this.violatedStationsNumber;
+	}
+
+	/**
+	 * @param i an index lower than violatedStationsNumber().
+	 * @return the i-th station with violations, in no particular order.
+	 */
+	public int violatedStation(int i) {
+		return this.violatedStations[i];
+	}
+
+	public int regionViolations() {
+		return this.regionViolations;
+	}
+
+	/**
+	 * @param region the region.
+	 * @return the number of different frequencies used in the region, above its limit.
+	 */
+	public int regionExcess(int region) {
+		return Math.max(0, this.regionDistinct[region] - this.regionLimit[region]);
+	}
+
+	/**
+	 * @return the objective of m1: the number of different frequencies.
+	 */
+	public int distinct() {
+		return this.distinct;
+	}
+
+	/**
+	 * @return the objective of m2: the sum of the frequencies.
+	 */
+	public long sum() {
+		return this.sum;
+	}
+
+	/**
+	 * @return the objective of m3: the gap between the lowest and the highest frequency.
+	 */
+	public int span() {
+		if (this.distinct == 0) {
+			return 0;
+		}
+		return this.frequencies[this.maxFrequencyIndex()] - this.frequencies[this.minFrequencyIndex()];
+	}
+
+	/**
+	 * @return the index of the lowest used frequency.
+	 */
+	public int minFrequencyIndex() {
+		while (this.frequencyCount[this.minFrequency] == 0) {
+			this.minFrequency++;
+		}
+		return this.minFrequency;
+	}
+
+	/**
+	 * @return the index of the highest used frequency.
+	 */
+	public int maxFrequencyIndex() {
+		while (this.frequencyCount[this.maxFrequency] == 0) {
+			this.maxFrequency--;
+		}
+		return this.maxFrequency;
+	}
+
+	/**
+	 * @return the sum of the squares of the frequency counts, higher when the uses are concentrated.
+	 */
+	public long squaredCounts() {
+		return this.squaredCounts;
+	}
+
+	public int frequenciesNumber() {
+		return this.frequenciesNumber;
+	}
+
+	/**
+	 * @param f the frequency index.
+	 * @return the number of uses of the frequency.
+	 */
+	public int frequencyCount(int f) {
+		return this.frequencyCount[f];
+	}
+
+	/**
+	 * Print an assignment as an XCSP3 instantiation, in the same form as choco.
+	 * 
+	 * The evaluator is left on the assignment.
+	 * 
+	 * @param solution the pair index of each station.
+	 * @param model    the model variant (m1, m2, m3) whose objective variable is printed, or null.
+	 * @param out      the output stream.
+	 */
+	public void printInstantiation(int[] solution, String model, PrintStream out) {
+		StringBuilder list = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+
+		for (int s = 0; s < this.stationsNumber; s++) {
+			list.append("T[").append(s).append("] ");
+			values.append(this.transmitter(s, solution[s])).append(' ');
+		}
+		for (int s = 0; s < this.stationsNumber; s++) {
+			list.append("R[").append(s).append("] ");
+			values.append(this.receiver(s, solution[s])).append(' ');
+		}
+
+		/* The objective variables of the models 1 and 3 */
+		if ("m1".equals(model) || "m3".equals(model)) {
+			this.assign(solution);
+			list.append("m1".equals(model) ? "nFrequencies " : "span ");
+			values.append("m1".equals(model) ? this.distinct() : this.span()).append(' ');
+		}
+
+		out.println("v <instantiation>");
+		out.println("v \t<list>" + list + "</list>");
+		out.println("v \t<values>" + values + "</values>");
+		out.println("v </instantiation>");
+	}
+}
@@ -0,0 +1,310 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A generator of random instances like the bundled ones, at any scale, in
+ * the JSON schema of data/wcsp and data/cop.
+ * 
+ * The instances are named celar_n_regions_interferences_connections_density_seed,
+ * as the bundled ones, whose statistics give the other parameters:
+ * - the frequencies are the multiples of 14 from 14 to 728, each of them
+ *   being in a domain (transmitter or receiver) with a probability of 0.885;
+ * - the stations share a delta of 14 times 11, 13, 17, 19 or 23;
+ * - each station is in a random region, and the limit of a region is
+ *   between density and 1 times twice its number of stations;
+ * - there are 1.3 interferences and 0.18 connections per station on average,
+ *   between random stations, with at most the given numbers per station, a
+ *   Delta of 20, 30, 40 or 50, and 70% of the connections inside a region.
+ * 
+ * The instance is written while it is generated: only the regions and the
+ * degrees of the stations are kept in memory, the connections being written
+ * in a temporary file appended after the interferences. The same parameters
+ * give the same instance.
+ * 
+ * Usage: FrequencyAllocationGenerator [-output=dir] stations regions interferences connections density seed...
+ *   writes an instance for each seed, to be modeled like the bundled ones
+ *   (for example by FrequencyAllocationBatch).
+ */
+public class FrequencyAllocationGenerator {
+
+	private static final int FREQUENCY_STEP = 14;
+	private static final int FREQUENCIES_NUMBER = 52;
+	private static final double FREQUENCY_PROBABILITY = 0.885;
+	private static final int[] DELTA_FACTORS = { 11, 13, 17, 19, 23 };
+	private static final int[] INTERFERENCE_DELTAS = { 20, 30, 40, 50 };
+	private static final double INTERFERENCES_PER_STATION = 1.3;
+	private static final double CONNECTIONS_PER_STATION = 0.18;
+	private static final double CONNECTIONS_IN_REGION = 0.7;
+
+	/* The number of draws of a neighbour before giving up, when the stations reach their maximum degree */
+	private static final int MAX_DRAWS = 8;
+
+	private final int stationsNumber, regionsNumber, maxInterferences, maxConnections;
+	private final double density;
+	private final long seed;
+
+	/**
+	 * @param stationsNumber   the number of stations.
+	 * @param regionsNumber    the number of regions.
+	 * @param maxInterferences the maximum number of interferences of a station.
+	 * @param maxConnections   the maximum number of connections of a station.
+	 * @param density          the lowest ratio of the limit of a region to the number of frequencies of its stations.
+	 * @param seed             the seed of the random choices.
+	 */
+	public FrequencyAllocationGenerator(int stationsNumber, int regionsNumber, int maxInterferences, int maxConnections, double density, long seed) {
+		this.stationsNumber = stationsNumber;
+		this.regionsNumber = regionsNumber;
+		this.maxInterferences = maxInterferences;
+		this.maxConnections = maxConnections;
+		this.density = density;
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the name of the instance, without extension.
+	 */
+	public String name() {
+		return String.format(Locale.ROOT, "celar_%d_%d_%d_%d_%f_%d", this.stationsNumber, this.regionsNumber,
+			this.maxInterferences, this.maxConnections, this.density, this.seed);
+	}
+
+	/**
+	 * Draw a number of a Poisson distribution (Knuth), for the small means of the degrees.
+	 */
+	private static int poisson(Random random, double mean) {
+		double limit = Math.exp(-mean), product = random.nextDouble();
+		int number = 0;
+		while (product > limit) {
+			product *= random.nextDouble();
+			number++;
+		}
+		return number;
+	}
+
+	private static void writeDomain(Writer writer, Random random) throws IOException {
+		writer.write("[");
+		boolean first = true;
+		for (int f = 1; f <= FREQUENCIES_NUMBER; f++) {
+			if (random.nextDouble() < FREQUENCY_PROBABILITY) {
+				writer.write(first ? " " : ", ");
+				writer.write(Integer.toString(f * FREQUENCY_STEP));
+				first = false;
+			}
+		}
+		writer.write("]");
+	}
+
+	/**
+	 * Write the instance.
+	 * 
+	 * @param file the JSON file.
+	 * @throws IOException
+	 */
+	public void generate(File file) throws IOException {
+		Random random = new Random(this.seed);
+		int delta = FREQUENCY_STEP * DELTA_FACTORS[random.nextInt(DELTA_FACTORS.length)];
+
+		/* The stations of each region, in increasing order, to draw the connections inside the regions */
+		int[] region = new int[this.stationsNumber];
+		int[] regionOffsets = new int[this.regionsNumber + 1];
+		for (int s = 0; s < this.stationsNumber; s++) {
+			region[s] = random.nextInt(this.regionsNumber);
+			regionOffsets[region[s] + 1]++;
+		}
+		for (int r = 0; r < this.regionsNumber; r++) {
+			regionOffsets[r + 1] += regionOffsets[r];
+		}
+		int[] regionStations = new int[this.stationsNumber];
+		int[] fill = Arrays.copyOf(regionOffsets, this.regionsNumber);
+		for (int s = 0; s < this.stationsNumber; s++) {
+			regionStations[fill[region[s]]++] = s;
+		}
+
+		File connectionsFile = File.createTempFile(file.getName(), ".connections", file.getAbsoluteFile().getParentFile());
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("{\n\t\"stations\": [\n");
+			for (int s = 0; s < this.stationsNumber; s++) {
+				writer.write("\t\t\t{ \"num\": " + s + ", \"region\": " + region[s] + ", \"delta\": " + delta + ", \"transmitter\": ");
+				writeDomain(writer, random);
+				writer.write(", \"receiver\": ");
+				writeDomain(writer, random);
+				writer.write(s + 1 < this.stationsNumber ? " },\n" : " }\n");
+			}
+
+			writer.write("\t],\n\t\"regions\": [");
+			for (int r = 0; r < this.regionsNumber; r++) {
+				int frequencies = 2 * (regionOffsets[r + 1] - regionOffsets[r]);
+				int limit = Math.max(1, (int) Math.round(frequencies * (this.density + (1 - this.density) * random.nextDouble())));
+				writer.write((r == 0 ? " " : ", ") + limit);
+			}
+			writer.write("],\n\t\"interferences\": [\n");
+
+			this.writeEdges(writer, connectionsFile, random, region, regionOffsets, regionStations);
+
+			writer.write("\t],\n\t\"connection\": [\n");
+			try (Reader reader = Files.newBufferedReader(connectionsFile.toPath(), StandardCharsets.UTF_8)) {
+				char[] buffer = new char[1 << 16];
+				for (int length = reader.read(buffer); length > 0; length = reader.read(buffer)) {
+					writer.write(buffer, 0, length);
+				}
+			}
+			writer.write("\t]\n}\n");
+		} finally {
+			Files.deleteIfExists(connectionsFile.toPath());
+		}
+	}
+
+	/**
+	 * Write the interferences, and the connections in their temporary file.
+	 * 
+	 * The edges of a station s go to stations after it, so that the edges
+	 * of s are all drawn at the same time, and kept apart without a set of
+	 * all the edges. The degrees are counted on both ends.
+	 */
+	private void writeEdges(Writer writer, File connectionsFile, Random random, int[] region, int[] regionOffsets, int[] regionStations) throws IOException {
+		int[] interferenceDegree = new int[this.stationsNumber];
+		int[] connectionDegree = new int[this.stationsNumber];
+		int[] neighbours = new int[this.maxInterferences + this.maxConnections];
+		boolean firstInterference = true, firstConnection = true;
+
+		try (BufferedWriter connections = Files.newBufferedWriter(connectionsFile.toPath(), StandardCharsets.UTF_8)) {
+			for (int s = 0; s + 1 < this.stationsNumber; s++) {
+				int neighboursNumber = 0;
+
+				int interferencesNumber = poisson(random, INTERFERENCES_PER_STATION);
+				for (int i = 0; i < interferencesNumber && interferenceDegree[s] < this.maxInterferences; i++) {
+					int y = this.drawNeighbour(random, s, interferenceDegree, this.maxInterferences, neighbours, neighboursNumber, -1, region, regionOffsets, regionStations);
+					if (y < 0) {
+						continue;
+					}
+					neighbours[neighboursNumber++] = y;
+					interferenceDegree[s]++;
+					interferenceDegree[y]++;
+					writer.write((firstInterference ? "" : " },\n") + "\t\t\t{ \"x\": " + s + ", \"y\": " + y
+						+ ", \"Delta\": " + INTERFERENCE_DELTAS[random.nextInt(INTERFERENCE_DELTAS.length)]);
+					firstInterference = false;
+				}
+
+				int connectionsNumber = poisson(random, CONNECTIONS_PER_STATION);
+				for (int c = 0; c < connectionsNumber && connectionDegree[s] < this.maxConnections; c++) {
+					int inRegion = random.nextDouble() < CONNECTIONS_IN_REGION ? region[s] : -1;
+					int y = this.drawNeighbour(random, s, connectionDegree, this.maxConnections, neighbours, neighboursNumber, inRegion, region, regionOffsets, regionStations);
+					if (y < 0) {
+						continue;
+					}
+					neighbours[neighboursNumber++] = y;
+					connectionDegree[s]++;
+					connectionDegree[y]++;
+					connections.write((firstConnection ? "" : " },\n") + "\t\t\t{ \"x\": " + s + ", \"y\": " + y);
+					firstConnection = false;
+				}
+			}
+
+			if (!firstConnection) {
+				connections.write(" }\n");
+			}
+		}
+
+		if (!firstInterference) {
+			writer.write(" }\n");
+		}
+	}
+
+	/**
+	 * Draw a station after s, in a region or among all the stations, below
+	 * its maximum degree and not yet a neighbour of s.
+	 * 
+	 * @return the station, or -1 if none was found.
+	 */
+	private int drawNeighbour(Random random, int s, int[] degree, int maxDegree, int[] neighbours, int neighboursNumber, int inRegion,
+			int[] region, int[] regionOffsets, int[] regionStations) {
+		int from = s + 1, to = this.stationsNumber;
+		if (inRegion >= 0) {
+			/* The stations of the region after s */
+			from = Arrays.binarySearch(regionStations, regionOffsets[inRegion], regionOffsets[inRegion + 1], s) + 1;
+			to = regionOffsets[inRegion + 1];
+		}
+		if (from >= to) {
+			return -1;
+		}
+
+		for (int draw = 0; draw < MAX_DRAWS; draw++) {
+			int index = from + random.nextInt(to - from);
+			int y = inRegion >= 0 ? regionStations[index] : index;
+			boolean neighbour = false;
+			for (int n = 0; n < neighboursNumber && !neighbour; n++) {
+				neighbour = neighbours[n] == y;
+			}
+			if (!neighbour && degree[y] < maxDegree) {
+				return y;
+			}
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File outputDirectory = new File(".");
+		int argsOffset = 0;
+		if (args.length > 0 && args[0].startsWith("-output=")) {
+			outputDirectory = new File(args[0].substring("-output=".length()));
+			argsOffset = 1;
+		}
+
+		if (args.length - argsOffset < 6) {
+			System.err.println("Usage: FrequencyAllocationGenerator [-output=dir] stations regions interferences connections density seed...");
+			return;
+		}
+
+		int stationsNumber = Integer.parseInt(args[argsOffset]);
+		int regionsNumber = Integer.parseInt(args[argsOffset + 1]);
+		int maxInterferences = Integer.parseInt(args[argsOffset + 2]);
+		int maxConnections = Integer.parseInt(args[argsOffset + 3]);
+		double density = Double.parseDouble(args[argsOffset + 4]);
+
+		outputDirectory.mkdirs();
+		for (int i = argsOffset + 5; i < args.length; i++) {
+			FrequencyAllocationGenerator generator = new FrequencyAllocationGenerator(stationsNumber, regionsNumber, maxInterferences, maxConnections,
+				density, Long.parseLong(args[i]));
+			File file = new File(outputDirectory, generator.name() + ".json");
+			long start = System.nanoTime();
+			generator.generate(file);
+			System.out.println(file + " generated in " + (System.nanoTime() - start) / 1000000 + " ms");
+		}
+	}
+}
@@ -0,0 +1,450 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A greedy construction of an assignment, in the order of DSATUR, followed
+ * by a short repair, to give an initial upper bound and a solution hint to
+ * the solvers in a few milliseconds.
+ * 
+ * The stations are assigned one by one: the next one is the station with
+ * the fewest pairs left without conflict with the assigned stations (its
+ * saturation), the most constrained one on ties. It takes the pair with
+ * the fewest conflicts and region excesses, then the best for the objective
+ * of the model variant. The conflicts of the pairs of the unassigned
+ * stations are updated after each assignment, along the interferences and
+ * the connections of the assigned station, and the unassigned stations are
+ * kept in a heap ordered by their free pairs, so that each step takes a
+ * logarithmic time in the number of stations.
+ * 
+ * The repair then moves the violated stations to their best pair (min-conflicts),
+ * with a short tabu tenure, through a FrequencyAllocationEvaluator, and keeps
+ * the assignment with the fewest violations.
+ */
+public class FrequencyAllocationGreedy {
+
+	/* The default number of repair moves per station */
+	private static final int REPAIR_MOVES_PER_STATION = 20;
+
+	/**
+	 * The unassigned stations, in a binary heap ordered by their free pairs,
+	 * then by decreasing degree, then by index. The free pairs of a station
+	 * only decrease, after which the station is moved up.
+	 */
+	private static class StationHeap {
+		private final int[] free, degree;
+		private final int[] heap, position;
+		private int size;
+
+		StationHeap(int[] free, int[] degree) {
+			this.free = free;
+			this.degree = degree;
+			this.size = free.length;
+			this.heap = new int[this.size];
+			this.position = new int[this.size];
+			for (int s = 0; s < this.size; s++) {
+				this.heap[s] = s;
+				this.position[s] = s;
+			}
+			for (int i = this.size / 2 - 1; i >= 0; i--) {
+				this.down(i);
+			}
+		}
+
+		private boolean before(int s, int o) {
+			if (this.free[s] != this.free[o]) {
+				return this.free[s] < this.free[o];
+			}
+			if (this.degree[s] != this.degree[o]) {
+				return this.degree[s] > this.degree[o];
+			}
+			return s < o;
+		}
+
+		private void place(int i, int s) {
+			this.heap[i] = s;
+			this.position[s] = i;
+		}
+
+		private void up(int i) {
+			int s = this.heap[i];
+			while (i > 0 && this.before(s, this.heap[(i - 1) / 2])) {
+				this.place(i, this.heap[(i - 1) / 2]);
+				i = (i - 1) / 2;
+			}
+			this.place(i, s);
+		}
+
+		private void down(int i) {
+			int s = this.heap[i];
+			while (2 * i + 1 < this.size) {
+				int child = 2 * i + 1;
+				if (child + 1 < this.size && this.before(this.heap[child + 1], this.heap[child])) {
+					child++;
+				}
+				if (!this.before(this.heap[child], s)) {
+					break;
+				}
+				this.place(i, this.heap[child]);
+				i = child;
+			}
+			this.place(i, s);
+		}
+
+		/**
+		 * @return the first station, removed from the heap.
+		 */
+		int poll() {
+			int first = this.heap[0];
+			this.size--;
+			if (this.size > 0) {
+				this.place(0, this.heap[this.size]);
+				this.down(0);
+			}
+			return first;
+		}
+
+		/**
+		 * Move up a station whose free pairs decreased.
+		 */
+		void decreased(int s) {
+			this.up(this.position[s]);
+		}
+	}
+
+	private final FrequencyAllocationEvaluator evaluator;
+	private final String model;
+	private final Random random;
+
+	/**
+	 * @param instance the instance.
+	 * @param model    the model variant (m1, m2, m3), or null to only reduce the violations.
+	 * @param seed     the seed of the random choices of the repair.
+	 */
+	public FrequencyAllocationGreedy(FrequencyAllocationInstance instance, String model, long seed) {
+		this.evaluator = new FrequencyAllocationEvaluator(instance);
+		this.model = model;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return true if every station has at least one pair of frequencies.
+	 */
+	public boolean hasPairs() {
+		return this.evaluator.hasPairs();
+	}
+
+	/**
+	 * @return the evaluator, to read the violations and the objectives of an assignment after assign().
+	 */
+	public FrequencyAllocationEvaluator evaluator() {
+		return this.evaluator;
+	}
+
+	/**
+	 * The objective cost of a pair of a station, for the ties between the
+	 * pairs with the same violations: the new frequencies for m1, the sum
+	 * for m2, the widening of the band for m3.
+	 */
+	private long pairObjective(int p, int[] frequencyUses, int minFrequency, int maxFrequency) {
+		FrequencyAllocationEvaluator evaluator = this.evaluator;
+		int t = evaluator.pairT[p], r = evaluator.pairR[p];
+
+		if ("m1".equals(this.model)) {
+			return (frequencyUses[t] == 0 ? 1 : 0) + (frequencyUses[r] == 0 && r != t ? 1 : 0);
+		}
+		if ("m2".equals(this.model)) {
+			return (long) evaluator.frequencies[t] + evaluator.frequencies[r];
+		}
+		if ("m3".equals(this.model)) {
+			if (minFrequency > maxFrequency) {
+				return Math.abs(evaluator.frequencies[t] - evaluator.frequencies[r]);
+			}
+			int low = Math.min(minFrequency, Math.min(t, r));
+			int high = Math.max(maxFrequency, Math.max(t, r));
+			return evaluator.frequencies[high] - evaluator.frequencies[low];
+		}
+		return 0;
+	}
+
+	/**
+	 * Assign the stations in the order of DSATUR.
+	 * 
+	 * @return the pair index of each station, relative to its offset.
+	 */
+	public int[] construct() {
+		FrequencyAllocationEvaluator evaluator = this.evaluator;
+		int stationsNumber = evaluator.stationsNumber();
+		int frequenciesNumber = evaluator.frequenciesNumber();
+
+		int[] assignment = new int[stationsNumber];
+		Arrays.fill(assignment, -1);
+
+		/* The conflicts of each pair with the assigned stations, and the number of pairs without conflicts of each station */
+		int[] conflicts = new int[evaluator.pairT.length];
+		int[] free = new int[stationsNumber];
+		int[] degree = new int[stationsNumber];
+		for (int s = 0; s < stationsNumber; s++) {
+			free[s] = evaluator.pairsNumber(s);
+			degree[s] = evaluator.interferenceOffsets[s + 1] - evaluator.interferenceOffsets[s]
+				+ evaluator.connectionOffsets[s + 1] - evaluator.connectionOffsets[s];
+		}
+		StationHeap unassigned = new StationHeap(free, degree);
+
+		/* The uses of the frequencies, globally and in each region */
+		int[] frequencyUses = new int[frequenciesNumber];
+		int[] regionUses = new int[evaluator.regionsNumber * frequenciesNumber];
+		int[] regionDistinct = new int[evaluator.regionsNumber];
+		int minFrequency = frequenciesNumber, maxFrequency = -1;
+
+		for (int step = 0; step < stationsNumber; step++) {
+			/* The unassigned station with the fewest free pairs, then the highest degree */
+			int station = unassigned.poll();
+
+			/* The pair with the fewest conflicts and region excesses, then the best objective */
+			int region = evaluator.stationRegion[station];
+			int offset = evaluator.pairOffsets[station];
+			int bestK = -1, bestViolations = 0;
+			long bestObjective = 0;
+			for (int k = 0; k < evaluator.pairsNumber(station); k++) {
+				int p = offset + k;
+				int t = evaluator.pairT[p], r = evaluator.pairR[p];
+				int newFrequencies = (regionUses[region * frequenciesNumber + t] == 0 ? 1 : 0)
+					+ (regionUses[region * frequenciesNumber + r] == 0 && r != t ? 1 : 0);
+				int excess = Math.max(0, regionDistinct[region] + newFrequencies - evaluator.regionLimit[region])
+					- Math.max(0, regionDistinct[region] - evaluator.regionLimit[region]);
+				int violations = conflicts[p] + excess;
+				long objective = this.pairObjective(p, frequencyUses, minFrequency, maxFrequency);
+
+				if (bestK == -1 || violations < bestViolations || (violations == bestViolations && objective < bestObjective)) {
+					bestK = k;
+					bestViolations = violations;
+					bestObjective = objective;
+				}
+			}
+
+			int q = offset + bestK;
+			assignment[station] = bestK;
+			for (int f : new int[] { evaluator.pairT[q], evaluator.pairR[q] }) {
+				if (regionUses[region * frequenciesNumber + f]++ == 0) {
+					regionDistinct[region]++;
+				}
+				frequencyUses[f]++;
+				minFrequency = Math.min(minFrequency, f);
+				maxFrequency = Math.max(maxFrequency, f);
+			}
+
+			/* The pairs of the unassigned neighbours in conflict with the chosen pair */
+			for (int e = evaluator.interferenceOffsets[station]; e < evaluator.interferenceOffsets[station + 1]; e++) {
+				int neighbour = evaluator.interferenceNeighbour[e];
+				if (assignment[neighbour] != -1) {
+					continue;
+				}
+				for (int p = evaluator.pairOffsets[neighbour]; p < evaluator.pairOffsets[neighbour + 1]; p++) {
+					if (evaluator.interfere(p, q, evaluator.interferenceDelta[e]) && conflicts[p]++ == 0) {
+						free[neighbour]--;
+						unassigned.decreased(neighbour);
+					}
+				}
+			}
+			for (int e = evaluator.connectionOffsets[station]; e < evaluator.connectionOffsets[station + 1]; e++) {
+				int neighbour = evaluator.connectionNeighbour[e];
+				if (assignment[neighbour] != -1) {
+					continue;
+				}
+				for (int p = evaluator.pairOffsets[neighbour]; p < evaluator.pairOffsets[neighbour + 1]; p++) {
+					if (evaluator.disconnected(p, q) && conflicts[p]++ == 0) {
+						free[neighbour]--;
+						unassigned.decreased(neighbour);
+					}
+				}
+			}
+		}
+
+		return assignment;
+	}
+
+	/**
+	 * @return the station to repair: a violated one, or a station of a region over its limit.
+	 */
+	private int chooseStation() {
+		FrequencyAllocationEvaluator evaluator = this.evaluator;
+
+		if (evaluator.violatedStationsNumber() > 0) {
+			return evaluator.violatedStation(this.random.nextInt(evaluator.violatedStationsNumber()));
+		}
+
+		int r = this.random.nextInt(evaluator.regionsNumber);
+		while (evaluator.regionExcess(r) == 0) {
+			r = (r + 1) % evaluator.regionsNumber;
+		}
+		int size = evaluator.regionStationOffsets[r + 1] - evaluator.regionStationOffsets[r];
+		return evaluator.regionStations[evaluator.regionStationOffsets[r] + this.random.nextInt(size)];
+	}
+
+	/**
+	 * Repair an assignment by min-conflicts moves.
+	 * 
+	 * @param assignment the pair index of each station.
+	 * @param movesNumber the maximum number of moves.
+	 * @return the assignment with the fewest violations.
+	 */
+	public int[] repair(int[] assignment, long movesNumber) {
+		FrequencyAllocationEvaluator evaluator = this.evaluator;
+		long[] tabuUntil = new long[evaluator.pairT.length];
+
+		evaluator.assign(assignment);
+		int[] best = evaluator.assignment();
+		int bestViolations = evaluator.violations();
+
+		for (long move = 0; move < movesNumber && evaluator.violations() > 0; move++) {
+			int station = this.chooseStation();
+			int offset = evaluator.pairOffsets[station];
+			int current = evaluator.assignment(station);
+			int bestK = -1, bestDelta = 0, ties = 0;
+
+			for (int k = 0; k < evaluator.pairsNumber(station); k++) {
+				if (k == current) {
+					continue;
+				}
+				evaluator.evaluateMove(station, k);
+				int delta = evaluator.moveViolationsDelta();
+				/* A tabu pair is only taken back if it gives a new best assignment */
+				if (tabuUntil[offset + k] > move && evaluator.violations() + delta >= bestViolations) {
+					continue;
+				}
+
+				if (bestK == -1 || delta < bestDelta) {
+					bestK = k;
+					bestDelta = delta;
+					ties = 1;
+				} else if (delta == bestDelta && this.random.nextInt(++ties) == 0) {
+					/* Reservoir sampling among the equivalent moves */
+					bestK = k;
+				}
+			}
+
+			if (bestK != -1) {
+				tabuUntil[offset + current] = move + 5 + this.random.nextInt(5);
+				evaluator.move(station, bestK);
+				if (evaluator.violations() < bestViolations) {
+					bestViolations = evaluator.violations();
+					best = evaluator.assignment();
+				}
+			}
+		}
+
+		evaluator.assign(best);
+		return best;
+	}
+
+	/**
+	 * Construct and repair an assignment, with the default number of moves.
+	 * The evaluator is left on the assignment.
+	 * 
+	 * @return the pair index of each station, relative to its offset.
+	 */
+	public int[] solve() {
+		return this.repair(this.construct(), (long) REPAIR_MOVES_PER_STATION * this.evaluator.stationsNumber());
+	}
+
+	/**
+	 * Write an assignment in the solution format of toulbar2 (the value
+	 * indexes of the variables on a line), which toulbar2 reads back as an
+	 * initial solution from a file ending in .sol. The pair indexes are the
+	 * value indexes of the WCSP variables of the stations.
+	 * 
+	 * @param values the value index of each variable.
+	 * @param file   the solution file.
+	 * @throws IOException
+	 */
+	public static void writeSolution(int[] values, File file) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int value : values) {
+			line.append(value).append(' ');
+		}
+
+		try (PrintStream out = new PrintStream(file, "US-ASCII")) {
+			out.println(line);
+		}
+	}
+
+	/**
+	 * Usage: FrequencyAllocationGreedy [-model=m1|m2|m3] [-seed=n] [-sol=file.sol] data.json
+	 */
+	public static void main(String[] args) throws IOException {
+		String model = null;
+		long seed = 0;
+		File solutionFile = null;
+		String dataFileName = null;
+
+		for (String arg : args) {
+			if (arg.startsWith("-model=")) {
+				model = arg.substring("-model=".length());
+			} else if (arg.startsWith("-seed=")) {
+				seed = Long.parseLong(arg.substring("-seed=".length()));
+			} else if (arg.startsWith("-sol=")) {
+				solutionFile = new File(arg.substring("-sol=".length()));
+			} else {
+				dataFileName = arg;
+			}
+		}
+
+		if (dataFileName == null) {
+			System.err.println("Usage: FrequencyAllocationGreedy [-model=m1|m2|m3] [-seed=n] [-sol=file.sol] data.json");
+			return;
+		}
+
+		FrequencyAllocationGreedy greedy = new FrequencyAllocationGreedy(FrequencyAllocationInstance.load(dataFileName), model, seed);
+		System.out.println("c [" + String.join(", ", args) + "]");
+		if (!greedy.hasPairs()) {
+			System.out.println("s UNSATISFIABLE");
+			return;
+		}
+
+		long start = System.nanoTime();
+		int[] solution = greedy.solve();
+		FrequencyAllocationEvaluator evaluator = greedy.evaluator();
+		System.out.println("c " + evaluator.violations() + " violations (" + evaluator.regionViolations() + " in the regions), "
+			+ evaluator.distinct() + " frequencies, sum " + evaluator.sum() + ", span " + evaluator.span()
+			+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		if (solutionFile != null) {
+			writeSolution(solution, solutionFile);
+		}
+
+		/* The instantiation is the XCSP3 hint, in the same form as choco */
+		System.out.println(evaluator.violations() == 0 ? "s SATISFIABLE" : "s UNKNOWN");
+		evaluator.printInstantiation(solution, model, System.out);
+	}
+}
@@ -0,0 +1,402 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Incremental regeneration of a WCSP file after a few stations of the
+ * network have changed.
+ * 
+ * Next to the WCSP file, a manifest keeps the length and the CRC-32 of the
+ * file, a hash and the domain size of each station, and the byte segment of
+ * each cost function in the file, keyed by its stations (and Delta for the
+ * interferences). The previous file is only reused if its length and its
+ * CRC-32 are the ones of the manifest, otherwise the file is generated
+ * fully. On the next
+ * generation, the cost functions whose stations haven't changed are
+ * copied from the previous file, by runs of contiguous segments, and
+ * only the others are computed, with the SpacedStation of their stations.
+ * The new file is written next to the previous one, then moved over it.
+ * 
+ * Only the plain generation is incremental: the preprocessing, the merged
+ * connections, the regions and the compression change the cost functions
+ * globally, and the greedy bound the whole header, so they aren't supported.
+ * The WCSP file is always the same as the one of a full generation.
+ * 
+ * Usage: FrequencyAllocationIncremental data.json output.wcsp
+ */
+public class FrequencyAllocationIncremental {
+
+	private static final String MANIFEST_HEADER = "FrequencyAllocationIncremental 2";
+
+	/* The previous cost functions, by key, as their offset and length in the previous file */
+	private final Map<String, long[]> previousSegments;
+	private long[] previousHashes;
+	private int[] previousDomainSizes;
+	private String previousFormat;
+	private long previousLength, previousChecksum;
+
+	/* The statistics of the last generation */
+	private int changedStationsNumber, copiedNumber, computedNumber;
+
+	public FrequencyAllocationIncremental() {
+		this.previousSegments = new HashMap<>();
+	}
+
+	/**
+	 * @return the format of the output, which must be the same as the previous one to reuse it.
+	 */
+	private static String format(WCSPOptions options) {
+		return (options.binaryOutput ? "binary" : "text") + " complement=" + options.complementTables;
+	}
+
+	/**
+	 * @return the hash of the frequencies of a station, which are all that its cost functions depend on.
+	 */
+	private static long hash(FrequencyAllocationWCSP.Station station) {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ station.delta) * 0x100000001b3L;
+		hash = (hash ^ station.transmitter.length) * 0x100000001b3L;
+		for (int frequency : station.transmitter) {
+			hash = (hash ^ frequency) * 0x100000001b3L;
+		}
+		hash = (hash ^ station.receiver.length) * 0x100000001b3L;
+		for (int frequency : station.receiver) {
+			hash = (hash ^ frequency) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the CRC-32 of a file.
+	 */
+	private static long checksum(Path file) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * @return true if the previous file is still the one described by the manifest.
+	 */
+	private boolean matchesManifest(Path result) throws IOException {
+		return Files.size(result) == this.previousLength && checksum(result) == this.previousChecksum;
+	}
+
+	private static String key(FrequencyAllocationWCSP.Interference interference) {
+		return "I " + interference.x + " " + interference.y + " " + interference.Delta;
+	}
+
+	private static String key(FrequencyAllocationWCSP.Connection connection) {
+		return "C " + connection.x + " " + connection.y;
+	}
+
+	/**
+	 * Read the manifest of the previous generation, if there is one.
+	 * 
+	 * @param manifest the manifest file.
+	 * @return false if there is no usable manifest.
+	 * @throws IOException
+	 */
+	private boolean readManifest(Path manifest) throws IOException {
+		this.previousSegments.clear();
+		if (!Files.exists(manifest)) {
+			return false;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.US_ASCII)) {
+			if (!MANIFEST_HEADER.equals(reader.readLine())) {
+				return false;
+			}
+			this.previousFormat = reader.readLine();
+			String[] file = reader.readLine().split(" ");
+			this.previousLength = Long.parseLong(file[0]);
+			this.previousChecksum = Long.parseLong(file[1], 16);
+
+			int stationsNumber = Integer.parseInt(reader.readLine());
+			this.previousHashes = new long[stationsNumber];
+			this.previousDomainSizes = new int[stationsNumber];
+			for (int i = 0; i < stationsNumber; i++) {
+				String[] fields = reader.readLine().split(" ");
+				this.previousHashes[i] = Long.parseUnsignedLong(fields[0], 16);
+				this.previousDomainSizes[i] = Integer.parseInt(fields[1]);
+			}
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				int lengthStart = line.lastIndexOf(' ');
+				int offsetStart = line.lastIndexOf(' ', lengthStart - 1);
+				this.previousSegments.put(line.substring(0, offsetStart), new long[] {
+					Long.parseLong(line.substring(offsetStart + 1, lengthStart)), Long.parseLong(line.substring(lengthStart + 1)) });
+			}
+		} catch (RuntimeException e) {
+			/* A truncated or altered manifest only forces a full generation */
+			this.previousSegments.clear();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The state of the writing of the new file: the run of previous
+	 * segments waiting to be copied, and the manifest being built.
+	 */
+	private class Generation {
+		final WCSPOutput writer;
+		final FileChannel previousFile;
+		final StringBuilder manifest;
+		long copyFrom, copyLength;
+
+		Generation(WCSPOutput writer, FileChannel previousFile, StringBuilder manifest) {
+			this.writer = writer;
+			this.previousFile = previousFile;
+			this.manifest = manifest;
+			this.copyLength = 0;
+		}
+
+		/**
+		 * @return the offset in the new file of the next cost function.
+		 */
+		long offset() {
+			return this.writer.offset() + this.copyLength;
+		}
+
+		/**
+		 * Copy a previous segment, merged with the run of segments if it follows it.
+		 */
+		void copy(String key, long[] segment) throws IOException {
+			this.manifest.append(key).append(' ').append(this.offset()).append(' ').append(segment[1]).append('\n');
+			if (this.copyLength > 0 && this.copyFrom + this.copyLength == segment[0]) {
+				this.copyLength += segment[1];
+			} else {
+				this.flushCopy();
+				this.copyFrom = segment[0];
+				this.copyLength = segment[1];
+			}
+			FrequencyAllocationIncremental.this.copiedNumber++;
+		}
+
+		/**
+		 * Record the segment of a cost function which has just been computed.
+		 */
+		void computed(String key, long offset) {
+			this.manifest.append(key).append(' ').append(offset).append(' ').append(this.writer.offset() - offset).append('\n');
+			FrequencyAllocationIncremental.this.computedNumber++;
+		}
+
+		void flushCopy() throws IOException {
+			if (this.copyLength > 0) {
+				this.writer.transferFrom(this.previousFile, this.copyFrom, this.copyLength);
+				this.copyLength = 0;
+			}
+		}
+	}
+
+	/**
+	 * Generate the WCSP file of a problem, reusing the cost functions of
+	 * the previous file and its manifest when they exist.
+	 * 
+	 * @param problem        the problem.
+	 * @param resultFileName the name of the WCSP file, whose manifest is named after it.
+	 * @param options        the generation options.
+	 * @throws IOException
+	 */
+	public void generate(FrequencyAllocationWCSP problem, String resultFileName, WCSPOptions options) throws IOException {
+		if (options.preprocessing != WCSPOptions.Preprocessing.NONE || options.mergeConnections
+				|| options.regions != WCSPOptions.Regions.NONE || options.compressOutput || options.greedyBound) {
+			throw new IllegalArgumentException("The incremental generation only supports the plain text and binary outputs");
+		}
+
+		Path result = Paths.get(resultFileName);
+		Path manifest = Paths.get(resultFileName + ".manifest");
+		Path temporaryResult = Paths.get(resultFileName + ".tmp");
+		Path temporaryManifest = Paths.get(resultFileName + ".manifest.tmp");
+		int stationsNumber = problem.stations.length;
+
+		/* The previous file is only reused with the same stations and format, if it hasn't been replaced since its manifest */
+		boolean reuse = Files.exists(result) && this.readManifest(manifest)
+			&& this.previousHashes.length == stationsNumber && format(options).equals(this.previousFormat)
+			&& this.matchesManifest(result);
+
+		FrequencyAllocationWCSP.SpacedStation[] spacedStations = new FrequencyAllocationWCSP.SpacedStation[stationsNumber];
+		boolean[] changed = new boolean[stationsNumber];
+		long[] hashes = new long[stationsNumber];
+		int[] domainSizes = new int[stationsNumber];
+		this.changedStationsNumber = 0;
+		this.copiedNumber = 0;
+		this.computedNumber = 0;
+		for (int i = 0; i < stationsNumber; i++) {
+			hashes[i] = hash(problem.stations[i]);
+			if (reuse && hashes[i] == this.previousHashes[i]) {
+				domainSizes[i] = this.previousDomainSizes[i];
+			} else {
+				/* Only the changed stations need their tuples */
+				changed[i] = true;
+				spacedStations[i] = problem.new SpacedStation(problem.stations[i]);
+				domainSizes[i] = spacedStations[i].tuplesNumber;
+				this.changedStationsNumber++;
+			}
+		}
+
+		/* The header of the manifest, with the length and the CRC-32 of the file, is written once the file is */
+		StringBuilder manifestContent = new StringBuilder().append(stationsNumber).append('\n');
+		for (int i = 0; i < stationsNumber; i++) {
+			manifestContent.append(Long.toHexString(hashes[i])).append(' ').append(domainSizes[i]).append('\n');
+		}
+
+		boolean generated = false;
+		try {
+			this.write(problem, result, temporaryResult, reuse, changed, spacedStations, domainSizes, manifestContent, options);
+
+			/* The manifest is written last, so that a manifest always describes its file */
+			Files.deleteIfExists(manifest);
+			Files.move(temporaryResult, result, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			try (BufferedWriter manifestWriter = Files.newBufferedWriter(temporaryManifest, StandardCharsets.US_ASCII)) {
+				manifestWriter.append(MANIFEST_HEADER).append('\n').append(format(options)).append('\n')
+					.append(Long.toString(Files.size(result))).append(' ').append(Long.toHexString(checksum(result))).append('\n')
+					.append(manifestContent);
+			}
+			Files.move(temporaryManifest, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			generated = true;
+		} finally {
+			if (!generated) {
+				Files.deleteIfExists(temporaryResult);
+				Files.deleteIfExists(temporaryManifest);
+			}
+		}
+	}
+
+	/**
+	 * Write the new file, copying the unchanged cost functions from the previous one.
+	 */
+	private void write(FrequencyAllocationWCSP problem, Path result, Path temporaryResult, boolean reuse, boolean[] changed,
+			FrequencyAllocationWCSP.SpacedStation[] spacedStations, int[] domainSizes, StringBuilder manifestContent, WCSPOptions options)
+			throws IOException {
+		WCSPOutput writer = options.binaryOutput ? new WCSPBinaryWriter(temporaryResult.toString(), false) : new WCSPWriter(temporaryResult.toString());
+		try (FileChannel previousFile = reuse ? FileChannel.open(result, StandardOpenOption.READ) : null) {
+			Generation generation = new Generation(writer, previousFile, manifestContent);
+
+			problem.computeHeader(new FrequencyAllocationWCSP.RegionFrequencies[0], null, writer, options);
+			writer.writeDomainSizes(domainSizes);
+
+			for (FrequencyAllocationWCSP.Interference interference : problem.interferences) {
+				String key = key(interference);
+				long[] segment = !changed[interference.x] && !changed[interference.y] ? this.previousSegments.get(key) : null;
+				if (segment != null) {
+					generation.copy(key, segment);
+					continue;
+				}
+
+				generation.flushCopy();
+				this.ensureSpacedStation(problem, spacedStations, interference.x);
+				this.ensureSpacedStation(problem, spacedStations, interference.y);
+				long offset = writer.offset();
+				problem.computeInterferenceConstraintIteration(interference, spacedStations, writer, options);
+				generation.computed(key, offset);
+			}
+
+			for (FrequencyAllocationWCSP.Connection connection : problem.connection) {
+				String key = key(connection);
+				long[] segment = !changed[connection.x] && !changed[connection.y] ? this.previousSegments.get(key) : null;
+				if (segment != null) {
+					generation.copy(key, segment);
+					continue;
+				}
+
+				generation.flushCopy();
+				this.ensureSpacedStation(problem, spacedStations, connection.x);
+				this.ensureSpacedStation(problem, spacedStations, connection.y);
+				long offset = writer.offset();
+				problem.computeConnectionConstraintIteration(connection, spacedStations, writer);
+				generation.computed(key, offset);
+			}
+
+			generation.flushCopy();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Compute the SpacedStation of an unchanged station whose cost
+	 * functions must be computed, because of a changed or new neighbour.
+	 */
+	private void ensureSpacedStation(FrequencyAllocationWCSP problem, FrequencyAllocationWCSP.SpacedStation[] spacedStations, int station) {
+		if (spacedStations[station] == null) {
+			spacedStations[station] = problem.new SpacedStation(problem.stations[station]);
+		}
+	}
+
+	public int changedStationsNumber() {
+		return this.changedStationsNumber;
+	}
+
+	public int copiedNumber() {
+		return this.copiedNumber;
+	}
+
+	public int computedNumber() {
+		return this.computedNumber;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: FrequencyAllocationIncremental data.json output.wcsp");
+			return;
+		}
+
+		long start = System.nanoTime();
+		FrequencyAllocationWCSP problem = FrequencyAllocationWCSP.fromInstance(FrequencyAllocationInstance.load(args[0]));
+		FrequencyAllocationIncremental incremental = new FrequencyAllocationIncremental();
+		incremental.generate(problem, new File(args[1]).getPath(), WCSPOptions.fromSystemProperties());
+
+		System.out.println(incremental.changedStationsNumber() + " stations changed, " + incremental.copiedNumber() + " cost functions copied, "
+			+ incremental.computedNumber() + " computed in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
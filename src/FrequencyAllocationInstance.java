@@ -0,0 +1,648 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An instance of the frequency allocation problem, stored
+ * in flat arrays of primitive integers.
+ * 
+ * It is loaded from the JSON files of data/wcsp and data/cop, without
+ * the XCSP3 compiler, so that the modelers can be run in-process.
+ * 
+ * The frequencies of the station i are stored in
+ * transmitters[transmitterOffsets[i]] .. transmitters[transmitterOffsets[i + 1] - 1],
+ * and likewise for the receivers. The interferences and the connections
+ * are edge lists, whose adjacency is given in the same form by Adjacency.
+ */
+public class FrequencyAllocationInstance {
+
+	int stationsNumber;
+	int[] num, region, delta;
+	int[] transmitterOffsets, transmitters;
+	int[] receiverOffsets, receivers;
+
+	int interferencesNumber;
+	int[] interferenceX, interferenceY, interferenceDelta;
+
+	int connectionsNumber;
+	int[] connectionX, connectionY;
+
+	/* The maximum number of different frequencies of each region */
+	int[] regions;
+
+	/* The adjacency of the interferences and of the connections, computed on demand */
+	private Adjacency interferenceAdjacency, connectionAdjacency;
+
+	/**
+	 * The edges of each station in compressed sparse row form: the indexes
+	 * of the edges of the station s are edges[offsets[s]] .. edges[offsets[s + 1] - 1],
+	 * in increasing order.
+	 */
+	static class Adjacency {
+		final int[] offsets, edges;
+
+		Adjacency(int stationsNumber, int[] x, int[] y, int edgesNumber) {
+			this.offsets = new int[stationsNumber + 1];
+			for (int e = 0; e < edgesNumber; e++) {
+				this.offsets[x[e] + 1]++;
+				this.offsets[y[e] + 1]++;
+			}
+			for (int s = 0; s < stationsNumber; s++) {
+				this.offsets[s + 1] += this.offsets[s];
+			}
+
+			this.edges = new int[2 * edgesNumber];
+			int[] fill = Arrays.copyOf(this.offsets, stationsNumber);
+			for (int e = 0; e < edgesNumber; e++) {
+				this.edges[fill[x[e]]++] = e;
+				this.edges[fill[y[e]]++] = e;
+			}
+		}
+	}
+
+	/**
+	 * @param station the station index.
+	 * @return the transmitter frequencies of the station.
+	 */
+	public int[] transmitter(int station) {
+		return Arrays.copyOfRange(this.transmitters, this.transmitterOffsets[station], this.transmitterOffsets[station + 1]);
+	}
+
+	/**
+	 * @param station the station index.
+	 * @return the receiver frequencies of the station.
+	 */
+	public int[] receiver(int station) {
+		return Arrays.copyOfRange(this.receivers, this.receiverOffsets[station], this.receiverOffsets[station + 1]);
+	}
+
+	/**
+	 * @return the interferences of each station.
+	 */
+	Adjacency interferenceAdjacency() {
+		if (this.interferenceAdjacency == null) {
+			this.interferenceAdjacency = new Adjacency(this.stationsNumber, this.interferenceX, this.interferenceY, this.interferencesNumber);
+		}
+		return this.interferenceAdjacency;
+	}
+
+	/**
+	 * @return the connections of each station.
+	 */
+	Adjacency connectionAdjacency() {
+		if (this.connectionAdjacency == null) {
+			this.connectionAdjacency = new Adjacency(this.stationsNumber, this.connectionX, this.connectionY, this.connectionsNumber);
+		}
+		return this.connectionAdjacency;
+	}
+
+	/**
+	 * Create an instance from the arrays of a problem whose data has
+	 * been bound by the XCSP3 compiler.
+	 * 
+	 * @param num          the number of each station.
+	 * @param region       the region of each station.
+	 * @param delta        the gap between the frequencies of each station.
+	 * @param transmitter  the transmitter frequencies of each station.
+	 * @param receiver     the receiver frequencies of each station.
+	 * @param interference the x, y and Delta of each interference.
+	 * @param connection   the x and y of each connection.
+	 * @param regions      the maximum number of different frequencies of each region.
+	 * @return the instance.
+	 */
+	static FrequencyAllocationInstance of(int[] num, int[] region, int[] delta, int[][] transmitter, int[][] receiver,
+			int[][] interference, int[][] connection, int[] regions) {
+		FrequencyAllocationInstance instance = new FrequencyAllocationInstance();
+
+		instance.stationsNumber = num.length;
+		instance.num = num;
+		instance.region = region;
+		instance.delta = delta;
+		IntList transmitterOffsets = new IntList(), transmitters = new IntList();
+		IntList receiverOffsets = new IntList(), receivers = new IntList();
+		for (int i = 0; i < num.length; i++) {
+			transmitterOffsets.add(transmitters.size());
+			receiverOffsets.add(receivers.size());
+			for (int frequency : transmitter[i]) {
+				transmitters.add(frequency);
+			}
+			for (int frequency : receiver[i]) {
+				receivers.add(frequency);
+			}
+		}
+		transmitterOffsets.add(transmitters.size());
+		receiverOffsets.add(receivers.size());
+		instance.transmitterOffsets = transmitterOffsets.toArray();
+		instance.transmitters = transmitters.toArray();
+		instance.receiverOffsets = receiverOffsets.toArray();
+		instance.receivers = receivers.toArray();
+
+		instance.interferencesNumber = interference.length;
+		instance.interferenceX = new int[interference.length];
+		instance.interferenceY = new int[interference.length];
+		instance.interferenceDelta = new int[interference.length];
+		for (int i = 0; i < interference.length; i++) {
+			instance.interferenceX[i] = interference[i][0];
+			instance.interferenceY[i] = interference[i][1];
+			instance.interferenceDelta[i] = interference[i][2];
+		}
+
+		instance.connectionsNumber = connection.length;
+		instance.connectionX = new int[connection.length];
+		instance.connectionY = new int[connection.length];
+		for (int i = 0; i < connection.length; i++) {
+			instance.connectionX[i] = connection[i][0];
+			instance.connectionY[i] = connection[i][1];
+		}
+
+		instance.regions = regions;
+
+		return instance;
+	}
+
+	/**
+	 * Load an instance from a JSON file with the stations, regions,
+	 * interferences and connection arrays. The file is mapped in memory
+	 * and scanned in place, so that only the arrays of the instance are
+	 * allocated.
+	 * 
+	 * @param fileName the name of the JSON file.
+	 * @return the instance.
+	 * @throws IOException if the file can't be read or doesn't follow the schema.
+	 */
+	public static FrequencyAllocationInstance load(String fileName) throws IOException {
+		try (FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			return read(new JsonScanner(file, fileName));
+		}
+	}
+
+	/**
+	 * Load an instance from a JSON stream, read through a small buffer,
+	 * for the inputs which can't be mapped (standard input, pipes, archives).
+	 * 
+	 * @param input the JSON stream, which isn't closed.
+	 * @param name  the name of the input, for the error messages.
+	 * @return the instance.
+	 * @throws IOException if the stream can't be read or doesn't follow the schema.
+	 */
+	public static FrequencyAllocationInstance load(InputStream input, String name) throws IOException {
+		return read(new JsonScanner(Channels.newChannel(input), name));
+	}
+
+	private static FrequencyAllocationInstance read(JsonScanner scanner) throws IOException {
+		FrequencyAllocationInstance instance = new FrequencyAllocationInstance();
+
+		scanner.expect('{');
+		while (!scanner.tryConsume('}')) {
+			String key = scanner.readKey();
+			switch (key) {
+			case "stations":
+				instance.readStations(scanner);
+				break;
+			case "regions":
+				instance.regions = scanner.readIntArray(new IntList()).toArray();
+				break;
+			case "interferences":
+				instance.readInterferences(scanner);
+				break;
+			case "connection":
+				instance.readConnections(scanner);
+				break;
+			default:
+				scanner.skipValue();
+			}
+			scanner.tryConsume(',');
+		}
+
+		if (instance.num == null || instance.regions == null || instance.interferenceX == null || instance.connectionX == null) {
+			throw scanner.error("missing stations, regions, interferences or connection");
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Save the instance as a JSON file, in the form of the files of data/wcsp and data/cop.
+	 * 
+	 * @param fileName the name of the JSON file.
+	 * @throws IOException
+	 */
+	public void save(String fileName) throws IOException {
+		StringBuilder json = new StringBuilder("{\n\t\"stations\": [\n");
+		for (int i = 0; i < this.stationsNumber; i++) {
+			json.append("\t\t\t{ \"num\": ").append(this.num[i])
+				.append(", \"region\": ").append(this.region[i])
+				.append(", \"delta\": ").append(this.delta[i])
+				.append(", \"transmitter\": ");
+			appendIntArray(json, this.transmitters, this.transmitterOffsets[i], this.transmitterOffsets[i + 1]);
+			json.append(", \"receiver\": ");
+			appendIntArray(json, this.receivers, this.receiverOffsets[i], this.receiverOffsets[i + 1]);
+			json.append(i + 1 < this.stationsNumber ? " },\n" : " }\n");
+		}
+
+		json.append("\t],\n\t\"regions\": ");
+		appendIntArray(json, this.regions, 0, this.regions.length);
+
+		json.append(",\n\t\"interferences\": [\n");
+		for (int i = 0; i < this.interferencesNumber; i++) {
+			json.append("\t\t\t{ \"x\": ").append(this.interferenceX[i])
+				.append(", \"y\": ").append(this.interferenceY[i])
+				.append(", \"Delta\": ").append(this.interferenceDelta[i])
+				.append(i + 1 < this.interferencesNumber ? " },\n" : " }\n");
+		}
+
+		json.append("\t],\n\t\"connection\": [\n");
+		for (int i = 0; i < this.connectionsNumber; i++) {
+			json.append("\t\t\t{ \"x\": ").append(this.connectionX[i])
+				.append(", \"y\": ").append(this.connectionY[i])
+				.append(i + 1 < this.connectionsNumber ? " },\n" : " }\n");
+		}
+		json.append("\t]\n}\n");
+
+		Files.write(Paths.get(fileName), json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void appendIntArray(StringBuilder json, int[] values, int from, int to) {
+		json.append("[");
+		for (int i = from; i < to; i++) {
+			json.append(i > from ? ", " : " ").append(values[i]);
+		}
+		json.append("]");
+	}
+
+	private void readStations(JsonScanner scanner) throws IOException {
+		IntList num = new IntList(), region = new IntList(), delta = new IntList();
+		IntList transmitterOffsets = new IntList(), transmitters = new IntList();
+		IntList receiverOffsets = new IntList(), receivers = new IntList();
+
+		scanner.expect('[');
+		while (!scanner.tryConsume(']')) {
+			scanner.expect('{');
+			transmitterOffsets.add(transmitters.size());
+			receiverOffsets.add(receivers.size());
+			while (!scanner.tryConsume('}')) {
+				String key = scanner.readKey();
+				switch (key) {
+				case "num":
+					num.add(scanner.readInt());
+					break;
+				case "region":
+					region.add(scanner.readInt());
+					break;
+				case "delta":
+					delta.add(scanner.readInt());
+					break;
+				case "transmitter":
+					scanner.readIntArray(transmitters);
+					break;
+				case "receiver":
+					scanner.readIntArray(receivers);
+					break;
+				default:
+					scanner.skipValue();
+				}
+				scanner.tryConsume(',');
+			}
+			scanner.tryConsume(',');
+
+			if (num.size() != transmitterOffsets.size() || region.size() != num.size() || delta.size() != num.size()) {
+				throw scanner.error("station without num, region or delta");
+			}
+		}
+		transmitterOffsets.add(transmitters.size());
+		receiverOffsets.add(receivers.size());
+
+		this.stationsNumber = num.size();
+		this.num = num.toArray();
+		this.region = region.toArray();
+		this.delta = delta.toArray();
+		this.transmitterOffsets = transmitterOffsets.toArray();
+		this.transmitters = transmitters.toArray();
+		this.receiverOffsets = receiverOffsets.toArray();
+		this.receivers = receivers.toArray();
+	}
+
+	private void readInterferences(JsonScanner scanner) throws IOException {
+		IntList x = new IntList(), y = new IntList(), Delta = new IntList();
+
+		scanner.expect('[');
+		while (!scanner.tryConsume(']')) {
+			scanner.expect('{');
+			while (!scanner.tryConsume('}')) {
+				String key = scanner.readKey();
+				switch (key) {
+				case "x":
+					x.add(scanner.readInt());
+					break;
+				case "y":
+					y.add(scanner.readInt());
+					break;
+				case "Delta":
+					Delta.add(scanner.readInt());
+					break;
+				default:
+					scanner.skipValue();
+				}
+				scanner.tryConsume(',');
+			}
+			scanner.tryConsume(',');
+
+			if (x.size() != y.size() || x.size() != Delta.size()) {
+				throw scanner.error("interference without x, y or Delta");
+			}
+		}
+
+		this.interferencesNumber = x.size();
+		this.interferenceX = x.toArray();
+		this.interferenceY = y.toArray();
+		this.interferenceDelta = Delta.toArray();
+	}
+
+	private void readConnections(JsonScanner scanner) throws IOException {
+		IntList x = new IntList(), y = new IntList();
+
+		scanner.expect('[');
+		while (!scanner.tryConsume(']')) {
+			scanner.expect('{');
+			while (!scanner.tryConsume('}')) {
+				String key = scanner.readKey();
+				switch (key) {
+				case "x":
+					x.add(scanner.readInt());
+					break;
+				case "y":
+					y.add(scanner.readInt());
+					break;
+				default:
+					scanner.skipValue();
+				}
+				scanner.tryConsume(',');
+			}
+			scanner.tryConsume(',');
+
+			if (x.size() != y.size()) {
+				throw scanner.error("connection without x or y");
+			}
+		}
+
+		this.connectionsNumber = x.size();
+		this.connectionX = x.toArray();
+		this.connectionY = y.toArray();
+	}
+
+	/**
+	 * A growable array of primitive integers.
+	 */
+	static class IntList {
+		private int[] values = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, 2 * this.size);
+			}
+			this.values[this.size++] = value;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		int get(int index) {
+			return this.values[index];
+		}
+
+		void truncate(int size) {
+			this.size = size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(this.values, this.size);
+		}
+	}
+
+	/**
+	 * A minimal streaming scanner of the JSON syntax used by the instance files.
+	 * 
+	 * The bytes are read through a ByteBuffer: either segments of the file
+	 * mapped in memory one after the other, or a small buffer refilled from
+	 * a channel. Only the current segment or buffer is referenced, so the
+	 * content of the file is never copied in the heap.
+	 */
+	private static class JsonScanner {
+		/* The size of the segments of a mapped file, and of the buffer of a streamed input */
+		private static final long MAPPED_SEGMENT_SIZE = 1L << 30;
+		private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+		private final FileChannel file;
+		private final ReadableByteChannel stream;
+		private final String fileName;
+		private ByteBuffer buffer;
+		/* The offset in the input of the beginning of the buffer */
+		private long bufferOffset;
+
+		/**
+		 * Scan a file by mapping it in memory.
+		 */
+		JsonScanner(FileChannel file, String fileName) {
+			this.file = file;
+			this.stream = null;
+			this.fileName = fileName;
+			this.buffer = ByteBuffer.allocate(0);
+			this.bufferOffset = 0;
+		}
+
+		/**
+		 * Scan an input by reading it through a small buffer.
+		 */
+		JsonScanner(ReadableByteChannel stream, String fileName) {
+			this.file = null;
+			this.stream = stream;
+			this.fileName = fileName;
+			this.buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+			this.buffer.flip();
+			this.bufferOffset = 0;
+		}
+
+		IOException error(String message) {
+			return new IOException(this.fileName + " at offset " + (this.bufferOffset + this.buffer.position()) + ": " + message);
+		}
+
+		/**
+		 * Replace the buffer by the next bytes of the input.
+		 * 
+		 * @return false at the end of the input.
+		 */
+		private boolean refill() throws IOException {
+			long offset = this.bufferOffset + this.buffer.limit();
+
+			if (this.file != null) {
+				long size = this.file.size();
+				if (offset >= size) {
+					return false;
+				}
+				this.buffer = this.file.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAPPED_SEGMENT_SIZE, size - offset));
+				this.bufferOffset = offset;
+				return true;
+			}
+
+			this.buffer.clear();
+			int read;
+			do {
+				read = this.stream.read(this.buffer);
+			} while (read == 0);
+			this.buffer.flip();
+			this.bufferOffset = offset;
+			return read > 0;
+		}
+
+		/**
+		 * @return the next byte, without consuming it, or -1 at the end of the input.
+		 */
+		private int peek() throws IOException {
+			if (!this.buffer.hasRemaining() && !this.refill()) {
+				return -1;
+			}
+			return this.buffer.get(this.buffer.position()) & 0xFF;
+		}
+
+		private void skip() {
+			this.buffer.position(this.buffer.position() + 1);
+		}
+
+		private void skipWhitespaces() throws IOException {
+			for (int c = this.peek(); c == ' ' || c == '\t' || c == '\n' || c == '\r'; c = this.peek()) {
+				this.skip();
+			}
+		}
+
+		void expect(char c) throws IOException {
+			if (!this.tryConsume(c)) {
+				throw this.error("'" + c + "' expected");
+			}
+		}
+
+		boolean tryConsume(char c) throws IOException {
+			this.skipWhitespaces();
+			if (this.peek() == c) {
+				this.skip();
+				return true;
+			}
+			return false;
+		}
+
+		String readKey() throws IOException {
+			this.expect('"');
+			StringBuilder key = new StringBuilder();
+			for (int c = this.peek(); c != '"'; c = this.peek()) {
+				if (c == -1) {
+					throw this.error("unterminated string");
+				}
+				key.append((char) c);
+				this.skip();
+			}
+			this.skip();
+			this.expect(':');
+			return key.toString();
+		}
+
+		int readInt() throws IOException {
+			this.skipWhitespaces();
+			boolean negative = this.peek() == '-';
+			if (negative) {
+				this.skip();
+			}
+
+			boolean digits = false;
+			long value = 0;
+			for (int c = this.peek(); c >= '0' && c <= '9'; c = this.peek()) {
+				value = 10 * value + (c - '0');
+				if (value > Integer.MAX_VALUE + 1L) {
+					throw this.error("integer too large");
+				}
+				digits = true;
+				this.skip();
+			}
+			if (!digits) {
+				throw this.error("integer expected");
+			}
+
+			return (int) (negative ? -value : value);
+		}
+
+		IntList readIntArray(IntList values) throws IOException {
+			this.expect('[');
+			while (!this.tryConsume(']')) {
+				values.add(this.readInt());
+				this.tryConsume(',');
+			}
+			return values;
+		}
+
+		void skipValue() throws IOException {
+			this.skipWhitespaces();
+			int depth = 0;
+			boolean inString = false;
+			for (int c = this.peek(); c != -1; c = this.peek()) {
+				if (inString) {
+					if (c == '\\') {
+						this.skip();
+						if (this.peek() == -1) {
+							return;
+						}
+					} else if (c == '"') {
+						inString = false;
+					}
+				} else if (c == '"') {
+					inString = true;
+				} else if (c == '[' || c == '{') {
+					depth++;
+				} else if (c == ']' || c == '}') {
+					if (depth == 0) {
+						return;
+					}
+					depth--;
+				} else if (c == ',' && depth == 0) {
+					return;
+				}
+				this.skip();
+			}
+		}
+	}
+}
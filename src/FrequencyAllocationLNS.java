@@ -0,0 +1,821 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xcsp.modeler.Compiler;
+
+/**
+ * A large neighbourhood search on an incumbent assignment: a neighbourhood
+ * of stations is freed, the other stations are fixed, and the sub-instance
+ * of the free stations is solved with a short time limit. Its solution
+ * replaces the incumbent if the whole assignment is better, on the
+ * violations first, then on the objective of the model variant.
+ * 
+ * The neighbourhoods are:
+ * - region: the stations of random regions
+ * - cluster: a breadth-first search from a random station, along the
+ *   interferences and the connections
+ * - walk: random walks along the interferences, restarted at random stations
+ * and they are completed with the stations connected to their stations,
+ * whose frequencies would be fixed by the connections otherwise.
+ * 
+ * In the sub-instance, the fixed neighbours of the free stations remove the
+ * frequencies interfering with theirs from the domains, and a connection
+ * with a fixed station fixes the frequencies. The fixed stations of the
+ * regions of the free stations are kept with their frequencies as domains,
+ * so that the limits of the regions are exact. The sub-instance is solved by:
+ * - local: FrequencyAllocationLocalSearch, in-process
+ * - choco: the XCSP3 model solved by choco, compiled by a child JVM in
+ *   the work directory, so that the generated files stay there and the
+ *   workers don't share the static state of the XCSP3 compiler
+ * - toulbar2: the WCSP model with hard regions, solved by toulbar2, which
+ *   minimizes the violations only, so without model variant
+ * the solutions of the solvers being read by FrequencyAllocationVerifier.
+ * The sub-objective of m2 is the one of the whole instance up to a constant,
+ * while the sub-objectives of m1 and m3 ignore the other fixed stations.
+ * 
+ * The neighbourhoods are solved by several workers, each from the incumbent
+ * of its start: a solution is merged into the current incumbent, and is
+ * rejected if the stations changed meanwhile make it worse. The size of each
+ * kind of neighbourhood is adapted to its success rate over its last
+ * attempts: it grows while the kind rarely improves the incumbent, and
+ * shrinks while the kind often does, its sub-instances being then solved
+ * faster. The kinds are drawn in proportion to their success rates.
+ * 
+ * The search ends at its time limit, or when the incumbent reaches the lower
+ * bound of FrequencyAllocationAnalysis (m1, m3), or has no violations without
+ * model variant. The output is the one of FrequencyAllocationLocalSearch.
+ * 
+ * Usage: FrequencyAllocationLNS [-model=m1|m2|m3] [-solver=local|choco|toulbar2] [-tl=milliseconds]
+ *   [-subTl=milliseconds] [-workers=n] [-size=n] [-seed=n] [-work=dir] [-toulbar2=command] [-choco=command] data.json
+ */
+public class FrequencyAllocationLNS {
+
+	/* The number of last attempts giving the success rate of a kind of neighbourhood */
+	private static final int WINDOW = 20;
+
+	/* The success rates below which the size grows, and above which it shrinks */
+	private static final double LOW_SUCCESS_RATE = 0.1, HIGH_SUCCESS_RATE = 0.3;
+	private static final double GROWTH = 1.2, SHRINKING = 0.9;
+	private static final int MIN_SIZE = 5;
+
+	/* The probability of a walk to restart at a random station at each step */
+	private static final double RESTART_PROBABILITY = 0.1;
+
+	/* The time given to a solver to stop by itself after its time limit, before it is killed */
+	private static final long GRACE_MILLISECONDS = 5000;
+
+	private enum Neighbourhood {
+		REGION, CLUSTER, WALK
+	}
+
+	/**
+	 * The size and the last results of a kind of neighbourhood.
+	 */
+	private static class Statistics {
+		double size;
+		final boolean[] window = new boolean[WINDOW];
+		int windowFilled, windowNext, windowSuccesses;
+		long attempts, improvements;
+
+		Statistics(double size) {
+			this.size = size;
+		}
+
+		double successRate() {
+			return (this.windowSuccesses + 1.0) / (this.windowFilled + 2.0);
+		}
+
+		void record(boolean success, int maxSize) {
+			this.attempts++;
+			this.improvements += success ? 1 : 0;
+			if (this.windowFilled == WINDOW) {
+				this.windowSuccesses -= this.window[this.windowNext] ? 1 : 0;
+			} else {
+				this.windowFilled++;
+			}
+			this.window[this.windowNext] = success;
+			this.windowSuccesses += success ? 1 : 0;
+			this.windowNext = (this.windowNext + 1) % WINDOW;
+
+			/* The size is adapted once half of the window is known */
+			if (this.windowFilled >= WINDOW / 2) {
+				double rate = (double) this.windowSuccesses / this.windowFilled;
+				if (rate < LOW_SUCCESS_RATE) {
+					this.size = Math.min(maxSize, this.size * GROWTH);
+				} else if (rate > HIGH_SUCCESS_RATE) {
+					this.size = Math.max(MIN_SIZE, this.size * SHRINKING);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The sub-instance of a neighbourhood: its station i is the station
+	 * stations[i] of the instance, the first freeNumber ones being free.
+	 */
+	private static class SubInstance {
+		final FrequencyAllocationInstance instance;
+		final int[] stations;
+		final int freeNumber;
+
+		SubInstance(FrequencyAllocationInstance instance, int[] stations, int freeNumber) {
+			this.instance = instance;
+			this.stations = stations;
+			this.freeNumber = freeNumber;
+		}
+	}
+
+	private final FrequencyAllocationInstance instance;
+	private final String basename, model, solver;
+	private final long subTimeLimit;
+	private final int workersNumber;
+	private final File workDirectory;
+	private final String[] toulbar2, choco;
+
+	private final FrequencyAllocationInstance.Adjacency interferences, connections;
+
+	/* The stations of each region */
+	private final int[] regionOffsets, regionStations;
+
+	/* The incumbent, on which the evaluator is left, and its violations and objective */
+	private final FrequencyAllocationEvaluator evaluator;
+	private int[] incumbent;
+	private int incumbentViolations;
+	private long incumbentObjective;
+	private final long lowerBound;
+
+	private final Statistics[] statistics = new Statistics[Neighbourhood.values().length];
+	private final AtomicInteger attemptsNumber = new AtomicInteger();
+
+	/**
+	 * @param instance      the instance.
+	 * @param basename      the name of the instance, for the files of the sub-instances.
+	 * @param model         the model variant (m1, m2, m3), or null to only satisfy the constraints.
+	 * @param solver        the solver of the sub-instances: local, choco or toulbar2.
+	 * @param subTimeLimit  the time limit of each sub-instance, in milliseconds.
+	 * @param workersNumber the number of sub-instances solved at the same time.
+	 * @param size          the initial number of free stations.
+	 * @param workDirectory the directory of the files of the sub-instances.
+	 * @param toulbar2      the command of toulbar2.
+	 * @param choco         the command of choco.
+	 */
+	public FrequencyAllocationLNS(FrequencyAllocationInstance instance, String basename, String model, String solver, long subTimeLimit,
+			int workersNumber, int size, File workDirectory, String toulbar2, String choco) {
+		if (solver.equals("toulbar2") && model != null) {
+			throw new IllegalArgumentException("The WCSP model of toulbar2 has no objective " + model);
+		}
+		if (solver.equals("choco") && model == null) {
+			throw new IllegalArgumentException("The XCSP3 model of choco needs a model variant");
+		}
+		if (!solver.equals("local") && !solver.equals("choco") && !solver.equals("toulbar2")) {
+			throw new IllegalArgumentException("Unknown solver " + solver);
+		}
+
+		this.instance = instance;
+		this.basename = basename;
+		this.model = model;
+		this.solver = solver;
+		this.subTimeLimit = subTimeLimit;
+		this.workersNumber = workersNumber;
+		this.workDirectory = workDirectory;
+		this.toulbar2 = toulbar2.trim().split("\\s+");
+		this.choco = choco.trim().split("\\s+");
+		this.interferences = instance.interferenceAdjacency();
+		this.connections = instance.connectionAdjacency();
+
+		this.regionOffsets = new int[instance.regions.length + 1];
+		for (int s = 0; s < instance.stationsNumber; s++) {
+			this.regionOffsets[instance.region[s] + 1]++;
+		}
+		for (int r = 0; r < instance.regions.length; r++) {
+			this.regionOffsets[r + 1] += this.regionOffsets[r];
+		}
+		this.regionStations = new int[instance.stationsNumber];
+		int[] fill = Arrays.copyOf(this.regionOffsets, instance.regions.length);
+		for (int s = 0; s < instance.stationsNumber; s++) {
+			this.regionStations[fill[instance.region[s]]++] = s;
+		}
+
+		this.evaluator = new FrequencyAllocationEvaluator(instance);
+		FrequencyAllocationAnalysis analysis = new FrequencyAllocationAnalysis(instance);
+		this.lowerBound = "m1".equals(model) ? analysis.minFrequencies() : "m3".equals(model) ? analysis.minSpan() : Long.MIN_VALUE;
+		for (int k = 0; k < this.statistics.length; k++) {
+			this.statistics[k] = new Statistics(Math.max(MIN_SIZE, Math.min(size, instance.stationsNumber)));
+		}
+	}
+
+	/**
+	 * @return the objective of the assignment of the evaluator.
+	 */
+	private long objective() {
+		if ("m1".equals(this.model)) {
+			return this.evaluator.distinct();
+		}
+		if ("m2".equals(this.model)) {
+			return this.evaluator.sum();
+		}
+		if ("m3".equals(this.model)) {
+			return this.evaluator.span();
+		}
+		return 0;
+	}
+
+	private synchronized boolean isOver() {
+		return this.incumbentViolations == 0 && (this.model == null || this.incumbentObjective <= this.lowerBound);
+	}
+
+	/**
+	 * Add a station and the stations connected to it to a neighbourhood.
+	 */
+	private void addConnected(int station, boolean[] free, FrequencyAllocationInstance.IntList neighbourhood) {
+		if (free[station]) {
+			return;
+		}
+		free[station] = true;
+		neighbourhood.add(station);
+		for (int i = neighbourhood.size() - 1; i < neighbourhood.size(); i++) {
+			int s = neighbourhood.get(i);
+			for (int e = this.connections.offsets[s]; e < this.connections.offsets[s + 1]; e++) {
+				int connection = this.connections.edges[e];
+				int other = this.instance.connectionX[connection] == s ? this.instance.connectionY[connection] : this.instance.connectionX[connection];
+				if (!free[other]) {
+					free[other] = true;
+					neighbourhood.add(other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draw the free stations of a neighbourhood.
+	 * 
+	 * @return the free stations, in increasing order.
+	 */
+	private int[] neighbourhood(Neighbourhood kind, int size, Random random) {
+		int stationsNumber = this.instance.stationsNumber;
+		boolean[] free = new boolean[stationsNumber];
+		FrequencyAllocationInstance.IntList neighbourhood = new FrequencyAllocationInstance.IntList();
+		size = Math.min(size, stationsNumber);
+
+		switch (kind) {
+		case REGION:
+			while (neighbourhood.size() < size) {
+				/* The region of a random station, the regions without stations being never drawn */
+				int region = this.instance.region[random.nextInt(stationsNumber)];
+				int[] stations = Arrays.copyOfRange(this.regionStations, this.regionOffsets[region], this.regionOffsets[region + 1]);
+				for (int i = stations.length - 1; i > 0; i--) {
+					int j = random.nextInt(i + 1), swap = stations[i];
+					stations[i] = stations[j];
+					stations[j] = swap;
+				}
+				for (int i = 0; i < stations.length && neighbourhood.size() < size; i++) {
+					this.addConnected(stations[i], free, neighbourhood);
+				}
+			}
+			break;
+		case CLUSTER:
+			for (int head = 0; neighbourhood.size() < size; ) {
+				while (head == neighbourhood.size()) {
+					/* The component is exhausted, the search restarts from another station */
+					this.addConnected(random.nextInt(stationsNumber), free, neighbourhood);
+				}
+				int s = neighbourhood.get(head++);
+				for (int e = this.interferences.offsets[s]; e < this.interferences.offsets[s + 1] && neighbourhood.size() < size; e++) {
+					int interference = this.interferences.edges[e];
+					this.addConnected(this.instance.interferenceX[interference] == s ? this.instance.interferenceY[interference]
+						: this.instance.interferenceX[interference], free, neighbourhood);
+				}
+			}
+			break;
+		case WALK:
+			int current = random.nextInt(stationsNumber);
+			this.addConnected(current, free, neighbourhood);
+			for (long step = 0; neighbourhood.size() < size && step < 20L * size; step++) {
+				int degree = this.interferences.offsets[current + 1] - this.interferences.offsets[current];
+				if (degree == 0 || random.nextDouble() < RESTART_PROBABILITY) {
+					current = random.nextInt(stationsNumber);
+				} else {
+					int interference = this.interferences.edges[this.interferences.offsets[current] + random.nextInt(degree)];
+					current = this.instance.interferenceX[interference] == current ? this.instance.interferenceY[interference]
+						: this.instance.interferenceX[interference];
+				}
+				this.addConnected(current, free, neighbourhood);
+			}
+			break;
+		}
+
+		int[] stations = neighbourhood.toArray();
+		Arrays.sort(stations);
+		return stations;
+	}
+
+	/**
+	 * Build the sub-instance of the free stations, the other stations being
+	 * fixed to the frequencies of an assignment.
+	 * 
+	 * @param freeStations the free stations.
+	 * @param transmitter  the transmitter frequency of each station.
+	 * @param receiver     the receiver frequency of each station.
+	 * @return the sub-instance, or null if a free station has no frequency left.
+	 */
+	private SubInstance subInstance(int[] freeStations, int[] transmitter, int[] receiver) {
+		int stationsNumber = this.instance.stationsNumber;
+		int[] localIndex = new int[stationsNumber];
+		Arrays.fill(localIndex, -1);
+		boolean[] regionTouched = new boolean[this.instance.regions.length];
+		for (int i = 0; i < freeStations.length; i++) {
+			localIndex[freeStations[i]] = i;
+			regionTouched[this.instance.region[freeStations[i]]] = true;
+		}
+
+		/* The fixed stations of the regions of the free stations */
+		FrequencyAllocationInstance.IntList stations = new FrequencyAllocationInstance.IntList();
+		for (int s : freeStations) {
+			stations.add(s);
+		}
+		for (int r = 0; r < regionTouched.length; r++) {
+			for (int i = this.regionOffsets[r]; regionTouched[r] && i < this.regionOffsets[r + 1]; i++) {
+				if (localIndex[this.regionStations[i]] == -1) {
+					localIndex[this.regionStations[i]] = stations.size();
+					stations.add(this.regionStations[i]);
+				}
+			}
+		}
+
+		int size = stations.size();
+		int[] num = new int[size], region = new int[size], delta = new int[size];
+		int[][] transmitters = new int[size][], receivers = new int[size][];
+		List<int[]> interference = new ArrayList<>();
+		List<int[]> connection = new ArrayList<>();
+
+		for (int i = 0; i < size; i++) {
+			int s = stations.get(i);
+			num[i] = this.instance.num[s];
+			region[i] = this.instance.region[s];
+			delta[i] = this.instance.delta[s];
+			if (i >= freeStations.length) {
+				transmitters[i] = new int[] { transmitter[s] };
+				receivers[i] = new int[] { receiver[s] };
+				continue;
+			}
+
+			int[] transmitterValues = this.instance.transmitter(s);
+			int[] receiverValues = this.instance.receiver(s);
+			boolean[] transmitterRemoved = new boolean[transmitterValues.length];
+			boolean[] receiverRemoved = new boolean[receiverValues.length];
+
+			for (int e = this.interferences.offsets[s]; e < this.interferences.offsets[s + 1]; e++) {
+				int edge = this.interferences.edges[e];
+				if (e > this.interferences.offsets[s] && this.interferences.edges[e - 1] == edge) {
+					/* The second end of an interference of the station with itself */
+					continue;
+				}
+				int x = this.instance.interferenceX[edge], y = this.instance.interferenceY[edge], Delta = this.instance.interferenceDelta[edge];
+				int other = x == s ? y : x;
+				if (other != s && localIndex[other] >= 0 && localIndex[other] < freeStations.length) {
+					/* Between two free stations, the interference is kept once, from its first station */
+					if (x == s) {
+						interference.add(new int[] { i, localIndex[y], Delta });
+					}
+					continue;
+				}
+				if (other == s) {
+					interference.add(new int[] { i, i, Delta });
+					continue;
+				}
+
+				/* The four gaps with a fixed station are unary */
+				for (int v = 0; v < transmitterValues.length; v++) {
+					transmitterRemoved[v] |= Math.abs(transmitterValues[v] - receiver[other]) < Delta || Math.abs(transmitterValues[v] - transmitter[other]) < Delta;
+				}
+				for (int v = 0; v < receiverValues.length; v++) {
+					receiverRemoved[v] |= Math.abs(receiverValues[v] - transmitter[other]) < Delta || Math.abs(receiverValues[v] - receiver[other]) < Delta;
+				}
+			}
+
+			for (int e = this.connections.offsets[s]; e < this.connections.offsets[s + 1]; e++) {
+				int edge = this.connections.edges[e];
+				if (e > this.connections.offsets[s] && this.connections.edges[e - 1] == edge) {
+					continue;
+				}
+				int x = this.instance.connectionX[edge], y = this.instance.connectionY[edge];
+				int other = x == s ? y : x;
+				if (localIndex[other] >= 0 && localIndex[other] < freeStations.length) {
+					if (x == s) {
+						connection.add(new int[] { i, localIndex[y] });
+					}
+					continue;
+				}
+
+				/* The stations connected to a free station are free, except for the connections to itself */
+				for (int v = 0; v < transmitterValues.length; v++) {
+					transmitterRemoved[v] |= transmitterValues[v] != receiver[other];
+				}
+				for (int v = 0; v < receiverValues.length; v++) {
+					receiverRemoved[v] |= receiverValues[v] != transmitter[other];
+				}
+			}
+
+			transmitters[i] = keep(transmitterValues, transmitterRemoved);
+			receivers[i] = keep(receiverValues, receiverRemoved);
+			if (transmitters[i].length == 0 || receivers[i].length == 0) {
+				return null;
+			}
+		}
+
+		FrequencyAllocationInstance subInstance = FrequencyAllocationInstance.of(num, region, delta, transmitters, receivers,
+			interference.toArray(new int[0][]), connection.toArray(new int[0][]), this.instance.regions.clone());
+		return new SubInstance(subInstance, stations.toArray(), freeStations.length);
+	}
+
+	private static int[] keep(int[] values, boolean[] removed) {
+		FrequencyAllocationInstance.IntList kept = new FrequencyAllocationInstance.IntList();
+		for (int v = 0; v < values.length; v++) {
+			if (!removed[v]) {
+				kept.add(values[v]);
+			}
+		}
+		return kept.toArray();
+	}
+
+	/**
+	 * Solve a sub-instance.
+	 * 
+	 * @return the transmitter and receiver frequencies of the stations of
+	 *         the sub-instance, or null if no solution was found.
+	 */
+	private int[][] solve(SubInstance sub, String name, long seed) throws IOException, InterruptedException {
+		if (this.solver.equals("local")) {
+			FrequencyAllocationLocalSearch search = new FrequencyAllocationLocalSearch(sub.instance, this.model, seed);
+			if (!search.hasPairs()) {
+				return null;
+			}
+			int[] pairs = search.solve(this.subTimeLimit, new PrintStream(new FrequencyAllocationDecomposition.NullOutputStream()));
+			if (pairs == null) {
+				return null;
+			}
+			FrequencyAllocationEvaluator subEvaluator = new FrequencyAllocationEvaluator(sub.instance);
+			int[][] frequencies = new int[2][pairs.length];
+			for (int i = 0; i < pairs.length; i++) {
+				frequencies[0][i] = subEvaluator.transmitter(i, pairs[i]);
+				frequencies[1][i] = subEvaluator.receiver(i, pairs[i]);
+			}
+			return frequencies;
+		}
+
+		File dataFile = new File(this.workDirectory, name + ".json");
+		List<File> files = new ArrayList<>();
+		files.add(dataFile);
+		try {
+			/* The regions of the WCSP model, also given to the verifier of its solutions */
+			WCSPOptions options = new WCSPOptions();
+			options.regions = WCSPOptions.Regions.HARD;
+			File outputFile;
+			List<String> command;
+			if (this.solver.equals("toulbar2")) {
+				File wcspFile = new File(this.workDirectory, "FrequencyAllocationWCSP_" + name + options.resultFileExtension());
+				File solutionFile = new File(this.workDirectory, "FrequencyAllocationWCSP_" + name + ".sol");
+				outputFile = new File(this.workDirectory, "FrequencyAllocationWCSP_" + name + ".log");
+				files.addAll(Arrays.asList(wcspFile, solutionFile, outputFile));
+				sub.instance.save(dataFile.getPath());
+				FrequencyAllocationWCSP.fromInstance(sub.instance).generate(wcspFile.getPath(), options);
+
+				command = new ArrayList<>(Arrays.asList(this.toulbar2));
+				command.add(wcspFile.getPath());
+				command.add("-timer=" + Math.max(1, (this.subTimeLimit + 999) / 1000));
+				command.add("-w=" + solutionFile.getPath());
+				this.run(command, outputFile);
+				outputFile = solutionFile;
+			} else {
+				File xmlFile = new File(this.workDirectory, "FrequencyAllocationXCSP3-" + this.model + "-" + name + ".xml");
+				File compilerOutputFile = new File(this.workDirectory, "FrequencyAllocationXCSP3-" + this.model + "-" + name + ".log");
+				outputFile = new File(this.workDirectory, "FrequencyAllocationXCSP3-" + this.model + "-" + name + ".txt_choco");
+				files.addAll(Arrays.asList(xmlFile, compilerOutputFile, outputFile));
+				sub.instance.save(dataFile.getPath());
+				this.compileXCSP3(dataFile, compilerOutputFile);
+				if (!xmlFile.exists()) {
+					throw new IOException("The XCSP3 compiler didn't produce " + xmlFile + ", see " + compilerOutputFile);
+				}
+				files.remove(compilerOutputFile);
+				Files.deleteIfExists(compilerOutputFile.toPath());
+
+				command = new ArrayList<>(Arrays.asList(this.choco));
+				command.add("-tl=" + this.subTimeLimit);
+				command.add(xmlFile.getPath());
+				this.run(command, outputFile);
+			}
+
+			FrequencyAllocationVerifier.Verification verification = new FrequencyAllocationVerifier(1, options).verify(outputFile, this.workDirectory);
+			if (verification == null || verification.error != null || verification.transmitter == null
+					|| (this.model != null && verification.hasViolations())) {
+				return null;
+			}
+			return new int[][] { verification.transmitter, verification.receiver };
+		} finally {
+			for (File file : files) {
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Run a solver, its output being written in a file.
+	 */
+	private void run(List<String> command, File outputFile) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(outputFile).start();
+		try {
+			if (!process.waitFor(this.subTimeLimit + GRACE_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+				process.destroyForcibly();
+				process.waitFor();
+			}
+		} finally {
+			process.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Compile the XCSP3 model of a sub-instance in a child JVM running in the
+	 * work directory, where the compiler reads the data and writes the instance.
+	 */
+	private void compileXCSP3(File dataFile, File outputFile) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Compiler.class.getName());
+		command.add(FrequencyAllocationXCSP3.class.getName());
+		command.add("-data=" + dataFile.getName());
+		command.add("-model=" + this.model);
+
+		Process process = new ProcessBuilder(command).directory(this.workDirectory).redirectErrorStream(true)
+			.redirectOutput(outputFile).start();
+		try {
+			if (process.waitFor() != 0) {
+				throw new IOException("The XCSP3 compiler failed on " + dataFile + ", see " + outputFile);
+			}
+		} finally {
+			process.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Merge the frequencies of the free stations into the incumbent, and keep
+	 * them if the whole assignment is better.
+	 * 
+	 * @return true if the incumbent was improved.
+	 */
+	private synchronized boolean merge(SubInstance sub, int[][] frequencies, PrintStream out) {
+		int[] pairs = new int[sub.freeNumber];
+		for (int i = 0; i < sub.freeNumber; i++) {
+			int s = sub.stations[i];
+			pairs[i] = -1;
+			for (int k = 0; k < this.evaluator.pairsNumber(s) && pairs[i] == -1; k++) {
+				if (this.evaluator.transmitter(s, k) == frequencies[0][i] && this.evaluator.receiver(s, k) == frequencies[1][i]) {
+					pairs[i] = k;
+				}
+			}
+			if (pairs[i] == -1) {
+				return false;
+			}
+		}
+
+		for (int i = 0; i < sub.freeNumber; i++) {
+			this.evaluator.move(sub.stations[i], pairs[i]);
+		}
+		int violations = this.evaluator.violations();
+		long objective = this.objective();
+		if (violations < this.incumbentViolations || violations == this.incumbentViolations && objective < this.incumbentObjective) {
+			this.incumbent = this.evaluator.assignment();
+			this.incumbentViolations = violations;
+			this.incumbentObjective = objective;
+			out.println(violations == 0 ? "o " + objective + " " : "c " + violations + " violations");
+			return true;
+		}
+
+		/* Back to the incumbent */
+		for (int i = 0; i < sub.freeNumber; i++) {
+			this.evaluator.move(sub.stations[i], this.incumbent[sub.stations[i]]);
+		}
+		return false;
+	}
+
+	/**
+	 * Draw a kind of neighbourhood in proportion to the success rates.
+	 */
+	private synchronized Neighbourhood chooseNeighbourhood(Random random) {
+		double total = 0;
+		for (Statistics kind : this.statistics) {
+			total += kind.successRate();
+		}
+		double draw = random.nextDouble() * total;
+		for (int k = 0; k < this.statistics.length; k++) {
+			draw -= this.statistics[k].successRate();
+			if (draw < 0) {
+				return Neighbourhood.values()[k];
+			}
+		}
+		return Neighbourhood.values()[this.statistics.length - 1];
+	}
+
+	private synchronized int size(Neighbourhood kind) {
+		return (int) Math.round(this.statistics[kind.ordinal()].size);
+	}
+
+	private synchronized void record(Neighbourhood kind, boolean success) {
+		this.statistics[kind.ordinal()].record(success, this.instance.stationsNumber);
+	}
+
+	/**
+	 * @return the frequencies of the stations in the incumbent.
+	 */
+	private synchronized int[][] incumbentFrequencies() {
+		int[][] frequencies = new int[2][this.instance.stationsNumber];
+		for (int s = 0; s < this.instance.stationsNumber; s++) {
+			frequencies[0][s] = this.evaluator.transmitter(s, this.incumbent[s]);
+			frequencies[1][s] = this.evaluator.receiver(s, this.incumbent[s]);
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Improve the neighbourhoods of the incumbent until the time limit.
+	 */
+	private void work(long deadline, long seed, PrintStream out) throws IOException, InterruptedException {
+		Random random = new Random(seed);
+		while (System.currentTimeMillis() < deadline && !this.isOver()) {
+			Neighbourhood kind = this.chooseNeighbourhood(random);
+			int[] freeStations = this.neighbourhood(kind, this.size(kind), random);
+			int[][] frequencies = this.incumbentFrequencies();
+			SubInstance sub = this.subInstance(freeStations, frequencies[0], frequencies[1]);
+			int[][] solution = null;
+			if (sub != null) {
+				String name = this.basename + "_lns" + this.attemptsNumber.getAndIncrement();
+				solution = this.solve(sub, name, random.nextLong());
+			}
+			this.record(kind, solution != null && this.merge(sub, solution, out));
+		}
+	}
+
+	/**
+	 * Search from an initial assignment.
+	 * 
+	 * @param initial   the pair index of each station.
+	 * @param timeLimit the time limit, in milliseconds.
+	 * @param seed      the seed of the random choices.
+	 * @param out       the stream receiving the progress.
+	 * @return the best assignment.
+	 * @throws IOException
+	 */
+	public int[] solve(int[] initial, long timeLimit, long seed, PrintStream out) throws IOException {
+		long deadline = System.currentTimeMillis() + timeLimit;
+		synchronized (this) {
+			this.evaluator.assign(initial);
+			this.incumbent = initial.clone();
+			this.incumbentViolations = this.evaluator.violations();
+			this.incumbentObjective = this.objective();
+			out.println(this.incumbentViolations == 0 ? "o " + this.incumbentObjective + " " : "c " + this.incumbentViolations + " violations");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.workersNumber);
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for (int w = 0; w < this.workersNumber; w++) {
+				long workerSeed = seed + w;
+				workers.add(executor.submit(() -> {
+					this.work(deadline, workerSeed, out);
+					return null;
+				}));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while solving the neighbourhoods", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to solve a neighbourhood", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		synchronized (this) {
+			return this.incumbent.clone();
+		}
+	}
+
+	/**
+	 * Print the attempts, the improvements and the final size of each kind of neighbourhood.
+	 */
+	public synchronized void printStatistics(PrintStream out) {
+		for (Neighbourhood kind : Neighbourhood.values()) {
+			Statistics statistics = this.statistics[kind.ordinal()];
+			out.println(String.format("c %s: %d attempts, %d improvements, size %d", kind.name().toLowerCase(),
+				statistics.attempts, statistics.improvements, Math.round(statistics.size)));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String model = null, solver = "local";
+		long timeLimit = 60000, subTimeLimit = 2000, seed = 0;
+		int workersNumber = Runtime.getRuntime().availableProcessors(), size = 30;
+		File workDirectory = new File(System.getProperty("java.io.tmpdir"));
+		String toulbar2 = FrequencyAllocationPortfolio.DEFAULT_TOULBAR2, choco = FrequencyAllocationPortfolio.DEFAULT_CHOCO;
+		String dataFileName = null;
+
+		for (String arg : args) {
+			if (arg.startsWith("-model=")) {
+				model = arg.substring("-model=".length());
+			} else if (arg.startsWith("-solver=")) {
+				solver = arg.substring("-solver=".length());
+			} else if (arg.startsWith("-tl=")) {
+				timeLimit = Long.parseLong(arg.substring("-tl=".length()));
+			} else if (arg.startsWith("-subTl=")) {
+				subTimeLimit = Long.parseLong(arg.substring("-subTl=".length()));
+			} else if (arg.startsWith("-workers=")) {
+				workersNumber = Integer.parseInt(arg.substring("-workers=".length()));
+			} else if (arg.startsWith("-size=")) {
+				size = Integer.parseInt(arg.substring("-size=".length()));
+			} else if (arg.startsWith("-seed=")) {
+				seed = Long.parseLong(arg.substring("-seed=".length()));
+			} else if (arg.startsWith("-work=")) {
+				workDirectory = new File(arg.substring("-work=".length()));
+			} else if (arg.startsWith("-toulbar2=")) {
+				toulbar2 = arg.substring("-toulbar2=".length());
+			} else if (arg.startsWith("-choco=")) {
+				choco = arg.substring("-choco=".length());
+			} else {
+				dataFileName = arg;
+			}
+		}
+
+		if (dataFileName == null || workersNumber < 1) {
+			System.err.println("Usage: FrequencyAllocationLNS [-model=m1|m2|m3] [-solver=local|choco|toulbar2] [-tl=milliseconds]"
+				+ " [-subTl=milliseconds] [-workers=n] [-size=n] [-seed=n] [-work=dir] [-toulbar2=command] [-choco=command] data.json");
+			return;
+		}
+
+		FrequencyAllocationInstance instance = FrequencyAllocationInstance.load(dataFileName);
+		FrequencyAllocationGreedy greedy = new FrequencyAllocationGreedy(instance, model, seed);
+		if (!greedy.hasPairs()) {
+			System.out.println("s UNSATISFIABLE");
+			return;
+		}
+
+		workDirectory.mkdirs();
+		FrequencyAllocationLNS search = new FrequencyAllocationLNS(instance, new File(dataFileName).getName().replaceFirst("\\.json$", ""),
+			model, solver, subTimeLimit, workersNumber, size, workDirectory, toulbar2, choco);
+		System.out.println("c [" + String.join(", ", args) + "]");
+		int[] solution = search.solve(greedy.solve(), timeLimit, seed, System.out);
+		search.printStatistics(System.out);
+
+		FrequencyAllocationEvaluator evaluator = new FrequencyAllocationEvaluator(instance);
+		evaluator.assign(solution);
+		if (evaluator.violations() > 0) {
+			System.out.println("s UNKNOWN");
+			return;
+		}
+		System.out.println(search.isOver() && model != null ? "s OPTIMUM FOUND" : "s SATISFIABLE");
+		evaluator.printInstantiation(solution, model, System.out);
+	}
+}
@@ -0,0 +1,512 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A transformation of an instance where the stations linked by connections
+ * share a single variable.
+ * 
+ * A connection between x and y forces Tx = Ry and Ty = Rx (constraint 4),
+ * so the pair of a station determines the pairs of all the stations it is
+ * connected to, directly or not. Each group of connected stations becomes
+ * a link variable, whose values are the pairs (t, r) of its root (its
+ * lowest station) such that every station of the group has its implied
+ * pair: (t, r) for the stations at an even distance of the root, (r, t)
+ * for the others. A group without any such pair (different deltas, a cycle
+ * of odd length, ...) is left as separate stations and connections.
+ * 
+ * The interferences are then rewritten against the link variables: an
+ * interference inside a group becomes a unary cost function. The links
+ * give the frequencies of each station from the values of the variables,
+ * to decode the solutions.
+ * 
+ * The connections become hard, so the WCSP optimum is kept only if an
+ * optimal assignment satisfies all the merged connections, as it does
+ * when the optimum is 0.
+ * 
+ * Usage:
+ * FrequencyAllocationLinks -output=file.wcsp data.json
+ *   generates the merged WCSP, with the options of the system properties (see WCSPOptions).
+ * FrequencyAllocationLinks -decode data.json solution
+ *   decodes a toulbar2 solution of the merged WCSP, or an instantiation of the merged
+ *   XCSP3 model, as the instantiation of the T and R variables of all the stations.
+ *   The WCSP solutions must be decoded with the same preprocessing as their generation.
+ */
+public class FrequencyAllocationLinks {
+
+	private final FrequencyAllocationInstance instance;
+
+	/* The variable of each station, and 1 if the station takes the pairs of its variable in reverse */
+	private final int[] variableOf, parity;
+
+	/* The root station of each variable, and its values as the frequencies (t, r) of the root */
+	private final int variablesNumber;
+	private final int[] root, size;
+	private final int[][] valueT, valueR;
+
+	/* The indexes of the connections between two variables, kept as constraints */
+	private final int[] keptConnections;
+
+	/**
+	 * @param instance the instance.
+	 */
+	public FrequencyAllocationLinks(FrequencyAllocationInstance instance) {
+		int stationsNumber = instance.stationsNumber;
+		this.instance = instance;
+
+		FrequencyAllocationInstance.Adjacency connections = instance.connectionAdjacency();
+
+		this.variableOf = new int[stationsNumber];
+		this.parity = new int[stationsNumber];
+		Arrays.fill(this.variableOf, -1);
+		int[] root = new int[stationsNumber];
+		int[][] valueT = new int[stationsNumber][];
+		int[][] valueR = new int[stationsNumber][];
+		int variablesNumber = 0;
+		int[] group = new int[stationsNumber];
+
+		for (int s = 0; s < stationsNumber; s++) {
+			if (this.variableOf[s] != -1) {
+				continue;
+			}
+
+			/* Walk the group of s, which is its lowest station, and give the parities */
+			int groupSize = 0;
+			boolean oddCycle = false;
+			group[groupSize++] = s;
+			this.variableOf[s] = variablesNumber;
+			this.parity[s] = 0;
+			for (int g = 0; g < groupSize; g++) {
+				int station = group[g];
+				for (int e = connections.offsets[station]; e < connections.offsets[station + 1]; e++) {
+					int connection = connections.edges[e];
+					int neighbour = instance.connectionX[connection] == station ? instance.connectionY[connection] : instance.connectionX[connection];
+					if (this.variableOf[neighbour] == -1) {
+						this.variableOf[neighbour] = variablesNumber;
+						this.parity[neighbour] = 1 - this.parity[station];
+						group[groupSize++] = neighbour;
+					} else if (this.parity[neighbour] == this.parity[station]) {
+						oddCycle = true;
+					}
+				}
+			}
+
+			int[][] values = oddCycle ? new int[2][0] : this.computeGroupValues(s, group, groupSize);
+			if (groupSize > 1 && values[0].length == 0) {
+				/* The group can't be merged, its stations are left as they are */
+				Arrays.sort(group, 0, groupSize);
+				for (int g = 0; g < groupSize; g++) {
+					int station = group[g];
+					this.variableOf[station] = variablesNumber;
+					this.parity[station] = 0;
+					int[] single = { station };
+					int[][] stationValues = this.computeGroupValues(station, single, 1);
+					root[variablesNumber] = station;
+					valueT[variablesNumber] = stationValues[0];
+					valueR[variablesNumber] = stationValues[1];
+					variablesNumber++;
+				}
+				continue;
+			}
+
+			root[variablesNumber] = s;
+			valueT[variablesNumber] = values[0];
+			valueR[variablesNumber] = values[1];
+			variablesNumber++;
+		}
+
+		this.variablesNumber = variablesNumber;
+		this.root = Arrays.copyOf(root, variablesNumber);
+		this.valueT = Arrays.copyOf(valueT, variablesNumber);
+		this.valueR = Arrays.copyOf(valueR, variablesNumber);
+		this.size = new int[variablesNumber];
+		for (int s = 0; s < stationsNumber; s++) {
+			this.size[this.variableOf[s]]++;
+		}
+
+		FrequencyAllocationInstance.IntList keptConnections = new FrequencyAllocationInstance.IntList();
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			if (this.variableOf[instance.connectionX[i]] != this.variableOf[instance.connectionY[i]]) {
+				keptConnections.add(i);
+			}
+		}
+		this.keptConnections = keptConnections.toArray();
+	}
+
+	/**
+	 * Compute the values of the variable of a group: the pairs of its root,
+	 * in the order of SpacedStation, whose implied pair is a pair of each
+	 * station of the group.
+	 * 
+	 * @param rootStation the root of the group.
+	 * @param group       the stations of the group.
+	 * @param groupSize   the number of stations of the group.
+	 * @return the transmitter and the receiver frequencies of the values.
+	 */
+	private int[][] computeGroupValues(int rootStation, int[] group, int groupSize) {
+		FrequencyAllocationInstance.IntList valueT = new FrequencyAllocationInstance.IntList();
+		FrequencyAllocationInstance.IntList valueR = new FrequencyAllocationInstance.IntList();
+		int[][] sortedTransmitters = new int[groupSize][];
+		int[][] sortedReceivers = new int[groupSize][];
+		for (int g = 0; g < groupSize; g++) {
+			sortedTransmitters[g] = this.instance.transmitter(group[g]);
+			sortedReceivers[g] = this.instance.receiver(group[g]);
+			Arrays.sort(sortedTransmitters[g]);
+			Arrays.sort(sortedReceivers[g]);
+		}
+
+		for (int t : this.instance.transmitter(rootStation)) {
+			for (int r : this.instance.receiver(rootStation)) {
+				if (Math.abs(t - r) != this.instance.delta[rootStation]) {
+					continue;
+				}
+
+				boolean valid = true;
+				for (int g = 1; g < groupSize && valid; g++) {
+					int station = group[g];
+					int tm = this.parity[station] == 0 ? t : r;
+					int rm = this.parity[station] == 0 ? r : t;
+					valid = Math.abs(tm - rm) == this.instance.delta[station]
+						&& Arrays.binarySearch(sortedTransmitters[g], tm) >= 0
+						&& Arrays.binarySearch(sortedReceivers[g], rm) >= 0;
+				}
+				if (valid) {
+					valueT.add(t);
+					valueR.add(r);
+				}
+			}
+		}
+
+		return new int[][] { valueT.toArray(), valueR.toArray() };
+	}
+
+	/**
+	 * @return the number of variables, one per group of linked stations.
+	 */
+	public int variablesNumber() {
+		return this.variablesNumber;
+	}
+
+	/**
+	 * @param station the station.
+	 * @return the variable of the station.
+	 */
+	public int variableOf(int station) {
+		return this.variableOf[station];
+	}
+
+	/**
+	 * @param station the station.
+	 * @return true if the station takes the pairs of its variable in reverse:
+	 *         its transmitter is the receiver of the root of its variable.
+	 */
+	public boolean isReversed(int station) {
+		return this.parity[station] == 1;
+	}
+
+	/**
+	 * @param variable the variable.
+	 * @return the station whose pairs are the values of the variable.
+	 */
+	public int root(int variable) {
+		return this.root[variable];
+	}
+
+	/**
+	 * @param variable the variable.
+	 * @return the number of stations sharing the variable.
+	 */
+	public int size(int variable) {
+		return this.size[variable];
+	}
+
+	/**
+	 * @param variable the variable.
+	 * @return the pairs (t, r) of the root of the variable which are its values.
+	 */
+	public int[][] values(int variable) {
+		int[][] values = new int[this.valueT[variable].length][];
+		for (int k = 0; k < values.length; k++) {
+			values[k] = new int[] { this.valueT[variable][k], this.valueR[variable][k] };
+		}
+		return values;
+	}
+
+	/**
+	 * @param station the station.
+	 * @param value   the value index of the variable of the station.
+	 * @return the transmitter frequency of the station.
+	 */
+	public int transmitter(int station, int value) {
+		int variable = this.variableOf[station];
+		return this.parity[station] == 0 ? this.valueT[variable][value] : this.valueR[variable][value];
+	}
+
+	/**
+	 * @param station the station.
+	 * @param value   the value index of the variable of the station.
+	 * @return the receiver frequency of the station.
+	 */
+	public int receiver(int station, int value) {
+		int variable = this.variableOf[station];
+		return this.parity[station] == 0 ? this.valueR[variable][value] : this.valueT[variable][value];
+	}
+
+	/**
+	 * @return the indexes of the connections between two different variables.
+	 */
+	public int[] keptConnections() {
+		return this.keptConnections.clone();
+	}
+
+	private boolean interfere(int a, int va, int b, int vb, int Delta) {
+		int ta = this.transmitter(a, va), ra = this.receiver(a, va);
+		int tb = this.transmitter(b, vb), rb = this.receiver(b, vb);
+		return Math.abs(ta - rb) < Delta || Math.abs(tb - ra) < Delta ||
+			Math.abs(tb - ta) < Delta || Math.abs(rb - ra) < Delta;
+	}
+
+	/**
+	 * Write the cost function of an interference. Inside a link variable,
+	 * it is a unary cost function listing the values of the variable
+	 * violating it, otherwise a binary one listing its allowed tuples,
+	 * or its forbidden ones if the complement tables are enabled and there
+	 * are fewer of them.
+	 */
+	private void computeInterferenceConstraint(int interference, WCSPOutput writer, WCSPOptions options) throws IOException {
+		int a = this.instance.interferenceX[interference];
+		int b = this.instance.interferenceY[interference];
+		int Delta = this.instance.interferenceDelta[interference];
+		int x = this.variableOf[a], y = this.variableOf[b];
+		int xSize = this.valueT[x].length, ySize = this.valueT[y].length;
+
+		if (x == y) {
+			writer.beginUnaryCostFunction(x, 0);
+			for (int i = 0; i < xSize; i++) {
+				if (this.interfere(a, i, b, i, Delta)) {
+					writer.writeUnaryTuple(i, 1);
+				}
+			}
+			writer.endCostFunction();
+			return;
+		}
+
+		boolean complement = false;
+		if (options.complementTables) {
+			long forbiddenTuplesNumber = 0;
+			for (int i = 0; i < xSize; i++) {
+				for (int j = 0; j < ySize; j++) {
+					forbiddenTuplesNumber += this.interfere(a, i, b, j, Delta) ? 1 : 0;
+				}
+			}
+			complement = forbiddenTuplesNumber < (long) xSize * ySize - forbiddenTuplesNumber;
+		}
+
+		writer.beginCostFunction(x, y, complement ? 0 : 1);
+		for (int i = 0; i < xSize; i++) {
+			for (int j = 0; j < ySize; j++) {
+				if (this.interfere(a, i, b, j, Delta) == complement) {
+					writer.writeTuple(i, j, complement ? 1 : 0);
+				}
+			}
+		}
+		writer.endCostFunction();
+	}
+
+	/**
+	 * Write the cost function of a connection between two variables, listing its allowed tuples.
+	 */
+	private void computeConnectionConstraint(int connection, WCSPOutput writer) throws IOException {
+		int a = this.instance.connectionX[connection];
+		int b = this.instance.connectionY[connection];
+		int x = this.variableOf[a], y = this.variableOf[b];
+
+		writer.beginCostFunction(x, y, 1);
+		for (int i = 0; i < this.valueT[x].length; i++) {
+			for (int j = 0; j < this.valueT[y].length; j++) {
+				if (this.transmitter(a, i) == this.receiver(b, j) && this.transmitter(b, j) == this.receiver(a, i)) {
+					writer.writeTuple(i, j, 0);
+				}
+			}
+		}
+		writer.endCostFunction();
+	}
+
+	/**
+	 * Generate the WCSP file of the merged problem, whose variables
+	 * are the link variables, in the format chosen in the options.
+	 * 
+	 * @param resultFileName the name of the output file.
+	 * @param options        the generation options.
+	 * @throws IOException
+	 */
+	public void generate(String resultFileName, WCSPOptions options) throws IOException {
+		if (options.regions != WCSPOptions.Regions.NONE) {
+			throw new IllegalArgumentException("The regions can't be modeled with the merged connections");
+		}
+
+		WCSPOutput writer = options.binaryOutput ? new WCSPBinaryWriter(resultFileName, options.compressOutput) : new WCSPWriter(resultFileName);
+
+		try {
+			int[] domainSizes = new int[this.variablesNumber];
+			int maxDomainSize = 0;
+			for (int v = 0; v < this.variablesNumber; v++) {
+				domainSizes[v] = this.valueT[v].length;
+				maxDomainSize = Math.max(maxDomainSize, domainSizes[v]);
+			}
+			int costFunctionsNumber = this.instance.interferencesNumber + this.keptConnections.length;
+
+			writer.writeHeader("FrequencyAllocationProblem", this.variablesNumber, maxDomainSize, costFunctionsNumber, costFunctionsNumber + 1);
+			writer.writeDomainSizes(domainSizes);
+
+			for (int i = 0; i < this.instance.interferencesNumber; i++) {
+				this.computeInterferenceConstraint(i, writer, options);
+			}
+			for (int i : this.keptConnections) {
+				this.computeConnectionConstraint(i, writer);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Decode the values of the link variables.
+	 * 
+	 * @param values the value index of each variable.
+	 * @return the transmitter frequencies of the stations, followed by their receiver frequencies.
+	 */
+	public int[] decode(int[] values) {
+		int stationsNumber = this.instance.stationsNumber;
+		int[] frequencies = new int[2 * stationsNumber];
+		for (int s = 0; s < stationsNumber; s++) {
+			frequencies[s] = this.transmitter(s, values[this.variableOf[s]]);
+			frequencies[stationsNumber + s] = this.receiver(s, values[this.variableOf[s]]);
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Decode an instantiation of the merged XCSP3 model, where the T and R
+	 * variables of the stations are only defined for the roots.
+	 * 
+	 * @param assignment the values of the variables, by name.
+	 * @return the transmitter frequencies of the stations, followed by their receiver frequencies.
+	 */
+	public int[] decode(Map<String, Integer> assignment) {
+		int stationsNumber = this.instance.stationsNumber;
+		int[] frequencies = new int[2 * stationsNumber];
+		for (int s = 0; s < stationsNumber; s++) {
+			int r = this.root[this.variableOf[s]];
+			frequencies[s] = assignment.get((this.parity[s] == 0 ? "T[" : "R[") + r + "]");
+			frequencies[stationsNumber + s] = assignment.get((this.parity[s] == 0 ? "R[" : "T[") + r + "]");
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Print the frequencies of the stations as an XCSP3 instantiation,
+	 * in the same form as choco.
+	 */
+	private static void printInstantiation(int[] frequencies, PrintStream out) {
+		int stationsNumber = frequencies.length / 2;
+		StringBuilder list = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < frequencies.length; i++) {
+			list.append(i < stationsNumber ? "T[" : "R[").append(i % stationsNumber).append("] ");
+			values.append(frequencies[i]).append(' ');
+		}
+
+		out.println("v <instantiation>");
+		out.println("v \t<list>" + list + "</list>");
+		out.println("v \t<values>" + values + "</values>");
+		out.println("v </instantiation>");
+	}
+
+	public static void main(String[] args) throws IOException {
+		String outputFileName = null;
+		boolean decode = false;
+		String[] files = new String[2];
+		int filesNumber = 0;
+
+		for (String arg : args) {
+			if (arg.startsWith("-output=")) {
+				outputFileName = arg.substring("-output=".length());
+			} else if (arg.equals("-decode")) {
+				decode = true;
+			} else if (filesNumber < files.length) {
+				files[filesNumber++] = arg;
+			}
+		}
+
+		if (decode ? filesNumber != 2 : outputFileName == null || filesNumber != 1) {
+			System.err.println("Usage: FrequencyAllocationLinks -output=file.wcsp data.json");
+			System.err.println("       FrequencyAllocationLinks -decode data.json solution");
+			return;
+		}
+
+		/* The instance is preprocessed as in the generation, so that the value indexes are the same */
+		WCSPOptions options = WCSPOptions.fromSystemProperties();
+		FrequencyAllocationInstance instance = FrequencyAllocationInstance.load(files[0]);
+		FrequencyAllocationLinks links = new FrequencyAllocationLinks(FrequencyAllocationPreprocessor.preprocess(instance, options.preprocessing));
+
+		if (!decode) {
+			links.generate(outputFileName, options);
+			System.out.println(links.instance.stationsNumber + " stations merged in " + links.variablesNumber + " variables");
+			return;
+		}
+
+		String solution = new String(Files.readAllBytes(Paths.get(files[1])), StandardCharsets.UTF_8);
+		Matcher list = Pattern.compile("<list>(.*?)</list>").matcher(solution);
+		Matcher values = Pattern.compile("<values>(.*?)</values>").matcher(solution);
+		if (list.find() && values.find()) {
+			/* An XCSP3 instantiation */
+			String[] names = list.group(1).trim().split("\\s+");
+			String[] numbers = values.group(1).trim().split("\\s+");
+			Map<String, Integer> assignment = new HashMap<>();
+			for (int i = 0; i < names.length; i++) {
+				assignment.put(names[i], Integer.parseInt(numbers[i]));
+			}
+			printInstantiation(links.decode(assignment), System.out);
+		} else {
+			/* A toulbar2 solution: the value index of each variable */
+			int[] indexes = Arrays.stream(solution.trim().split("\\s+")).mapToInt(Integer::parseInt).toArray();
+			printInstantiation(links.decode(indexes), System.out);
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * An anytime tabu search for the frequency allocation problem, run directly
+ * on the instance instead of going through the XCSP3 model and choco.
+ * 
+ * Each station is assigned a pair (transmitter, receiver) whose gap is its
+ * delta, and a move changes the pair of one station. The violations and
+ * the objectives are maintained by a FrequencyAllocationEvaluator, so that
+ * the cost of a move is proportional to the degree of the station.
+ * Moves are compared on the violations first, then on the objective of
+ * the model variant:
+ * - m1: the number of different frequencies
+ * - m2: the sum of the frequencies
+ * - m3: the gap between the lowest and the highest frequency
+ * 
+ * Since a single move rarely changes the objectives of m1 and m3, each
+ * feasible assignment is followed by forbidding a frequency (the least used
+ * one for m1, the least used of the lowest and highest ones for m3), whose
+ * uses count as violations to repair. For m2, a move is scored by the
+ * sum plus the violations times a weight, which grows while the assignment
+ * is infeasible and shrinks while it is feasible, so that the search goes
+ * back and forth across the boundary of the feasible assignments.
+ * 
+ * The solutions are printed in the same form as choco: a "o" line for
+ * each improvement, then the best solution as an XCSP3 instantiation.
+ */
+public class FrequencyAllocationLocalSearch {
+
+	/* The initial weight of a violation against the sum of m2 */
+	private static final long INITIAL_PENALTY_WEIGHT = 10;
+
+	private final FrequencyAllocationEvaluator evaluator;
+
+	private final String model;
+	private final Random random;
+
+	/* The tabu list: the iteration until which a station can't go back to a pair */
+	private final long[] tabuUntil;
+
+	/**
+	 * @param instance the instance.
+	 * @param model    the model variant (m1, m2, m3), or null to only satisfy the constraints.
+	 * @param seed     the seed of the random choices.
+	 */
+	public FrequencyAllocationLocalSearch(FrequencyAllocationInstance instance, String model, long seed) {
+		this.evaluator = new FrequencyAllocationEvaluator(instance);
+		this.model = model;
+		this.random = new Random(seed);
+		this.tabuUntil = new long[this.evaluator.pairT.length];
+	}
+
+	/**
+	 * @return true if every station has at least one pair of frequencies.
+	 */
+	public boolean hasPairs() {
+		return this.evaluator.hasPairs();
+	}
+
+	/**
+	 * @return the objective of the current assignment.
+	 */
+	private long objective() {
+		if ("m1".equals(this.model)) {
+			return this.evaluator.distinct();
+		}
+		if ("m2".equals(this.model)) {
+			return this.evaluator.sum();
+		}
+		if ("m3".equals(this.model)) {
+			return this.evaluator.span();
+		}
+		return 0;
+	}
+
+	/**
+	 * @param solution the pair index of each station.
+	 * @return the objective of the solution.
+	 */
+	public long objective(int[] solution) {
+		this.evaluator.assign(solution);
+		return this.objective();
+	}
+
+	/**
+	 * @return the objective delta of the move evaluated last.
+	 */
+	private long moveObjectiveDelta() {
+		if ("m1".equals(this.model)) {
+			return this.evaluator.moveDistinctDelta();
+		}
+		if ("m2".equals(this.model)) {
+			return this.evaluator.moveSumDelta();
+		}
+		if ("m3".equals(this.model)) {
+			return this.evaluator.moveSpanDelta();
+		}
+		return 0;
+	}
+
+	/**
+	 * Forbid the frequency whose removal should improve the objective
+	 * of the next feasible assignment.
+	 */
+	private void forbidNextFrequency() {
+		if ("m1".equals(this.model)) {
+			int leastUsed = -1;
+			for (int f = 0; f < this.evaluator.frequenciesNumber(); f++) {
+				int count = this.evaluator.frequencyCount(f);
+				if (count > 0 && (leastUsed == -1 || count < this.evaluator.frequencyCount(leastUsed))) {
+					leastUsed = f;
+				}
+			}
+			this.evaluator.forbid(leastUsed);
+		} else if ("m3".equals(this.model)) {
+			int min = this.evaluator.minFrequencyIndex();
+			int max = this.evaluator.maxFrequencyIndex();
+			this.evaluator.forbid(this.evaluator.frequencyCount(min) <= this.evaluator.frequencyCount(max) ? min : max);
+		}
+	}
+
+	/**
+	 * Assign a random pair to each station.
+	 */
+	private void initialize() {
+		int[] pairs = new int[this.evaluator.stationsNumber()];
+		for (int s = 0; s < pairs.length; s++) {
+			pairs[s] = this.random.nextInt(this.evaluator.pairsNumber(s));
+		}
+		this.evaluator.assign(pairs);
+	}
+
+	/**
+	 * @return the station to move: a violated one if there are some,
+	 *         a station of a region over its limit, or a random one.
+	 */
+	private int chooseStation() {
+		FrequencyAllocationEvaluator evaluator = this.evaluator;
+
+		/* The stations using forbidden frequencies are in the violated ones */
+		if (evaluator.violatedStationsNumber() > 0) {
+			return evaluator.violatedStation(this.random.nextInt(evaluator.violatedStationsNumber()));
+		}
+
+		if (evaluator.regionViolations() > 0) {
+			int r = this.random.nextInt(evaluator.regionsNumber);
+			while (evaluator.regionExcess(r) == 0) {
+				r = (r + 1) % evaluator.regionsNumber;
+			}
+			int size = evaluator.regionStationOffsets[r + 1] - evaluator.regionStationOffsets[r];
+			return evaluator.regionStations[evaluator.regionStationOffsets[r] + this.random.nextInt(size)];
+		}
+
+		return this.random.nextInt(evaluator.stationsNumber());
+	}
+
+	/**
+	 * Compare the move evaluated last with the best move of the iteration.
+	 * 
+	 * @param infeasible             true if the current assignment has violations.
+	 * @param penaltyWeight          the weight of the violations for m2.
+	 * @param bestViolationsDelta    the violations delta of the best move.
+	 * @param bestObjectiveDelta     the objective delta of the best move.
+	 * @param bestSquaredCountsDelta the squared counts delta of the best move.
+	 * @return a negative number if the evaluated move is better, 0 if they are equivalent.
+	 */
+	private int compareMove(boolean infeasible, long penaltyWeight, int bestViolationsDelta, long bestObjectiveDelta, long bestSquaredCountsDelta) {
+		int moveViolationsDelta = this.evaluator.moveViolationsDelta();
+		long moveObjectiveDelta = this.moveObjectiveDelta();
+
+		if ("m2".equals(this.model)) {
+			return Long.compare(penaltyWeight * moveViolationsDelta + moveObjectiveDelta,
+				penaltyWeight * bestViolationsDelta + bestObjectiveDelta);
+		}
+
+		if (moveViolationsDelta != bestViolationsDelta) {
+			return Integer.compare(moveViolationsDelta, bestViolationsDelta);
+		}
+
+		/* The objective only matters once the assignment is feasible */
+		if (infeasible) {
+			return 0;
+		}
+		if (moveObjectiveDelta != bestObjectiveDelta) {
+			return Long.compare(moveObjectiveDelta, bestObjectiveDelta);
+		}
+
+		/* For m1, prefer the moves concentrating the uses on fewer frequencies */
+		return "m1".equals(this.model) ? Long.compare(bestSquaredCountsDelta, this.evaluator.moveSquaredCountsDelta()) : 0;
+	}
+
+	/**
+	 * Run the tabu search until the time limit.
+	 * 
+	 * @param timeLimit the time limit, in milliseconds.
+	 * @param out       the stream receiving the progress and the solution.
+	 * @return the best feasible assignment (the pair index of each station), or null.
+	 */
+	public int[] solve(long timeLimit, PrintStream out) {
+		FrequencyAllocationEvaluator evaluator = this.evaluator;
+		long deadline = System.currentTimeMillis() + timeLimit;
+		int[] best = null;
+		long bestObjective = Long.MAX_VALUE;
+		long penaltyWeight = INITIAL_PENALTY_WEIGHT;
+
+		this.initialize();
+
+		for (long iteration = 0; ; iteration++) {
+			if ((iteration & 0xFF) == 0 && System.currentTimeMillis() >= deadline) {
+				break;
+			}
+
+			int violations = evaluator.violations();
+			long objective = this.objective();
+			if (violations == 0) {
+				if (this.model == null) {
+					best = evaluator.assignment();
+					break;
+				}
+				if (objective < bestObjective) {
+					bestObjective = objective;
+					best = evaluator.assignment();
+					out.println("o " + objective + " ");
+				}
+				if (evaluator.distinct() > 1) {
+					this.forbidNextFrequency();
+					violations = evaluator.violations();
+				}
+			}
+
+			/* The weight of the violations of m2 oscillates around the feasibility */
+			if (violations > 0) {
+				penaltyWeight++;
+			} else if (penaltyWeight > 1) {
+				penaltyWeight--;
+			}
+
+			int station = this.chooseStation();
+			int offset = evaluator.pairOffsets[station];
+			int size = evaluator.pairsNumber(station);
+			int current = evaluator.assignment(station);
+			int bestK = -1, bestViolationsDelta = 1 << 20, ties = 0;
+			long bestObjectiveDelta = 1L << 40, bestSquaredCountsDelta = Long.MIN_VALUE;
+
+			for (int k = 0; k < size; k++) {
+				if (k == current) {
+					continue;
+				}
+
+				evaluator.evaluateMove(station, k);
+				boolean aspiration = violations + evaluator.moveViolationsDelta() == 0 && objective + this.moveObjectiveDelta() < bestObjective;
+				if (this.tabuUntil[offset + k] > iteration && !aspiration) {
+					continue;
+				}
+
+				int compare = this.compareMove(violations > 0, penaltyWeight, bestViolationsDelta, bestObjectiveDelta, bestSquaredCountsDelta);
+				if (compare < 0) {
+					bestK = k;
+					bestViolationsDelta = evaluator.moveViolationsDelta();
+					bestObjectiveDelta = this.moveObjectiveDelta();
+					bestSquaredCountsDelta = evaluator.moveSquaredCountsDelta();
+					ties = 1;
+				} else if (compare == 0 && this.random.nextInt(++ties) == 0) {
+					/* Reservoir sampling among the equivalent moves */
+					bestK = k;
+				}
+			}
+
+			if (bestK != -1) {
+				this.tabuUntil[offset + current] = iteration + 10 + this.random.nextInt(10);
+				evaluator.move(station, bestK);
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Print an assignment as an XCSP3 instantiation, in the same form as choco.
+	 * 
+	 * @param solution the pair index of each station.
+	 * @param out      the output stream.
+	 */
+	public void printInstantiation(int[] solution, PrintStream out) {
+		/* The search is over, its evaluator can be reused */
+		this.evaluator.printInstantiation(solution, this.model, out);
+	}
+
+	/**
+	 * Usage: FrequencyAllocationLocalSearch [-model=m1|m2|m3] [-tl=milliseconds] [-seed=n] data.json
+	 */
+	public static void main(String[] args) throws IOException {
+		String model = null;
+		long timeLimit = 10000;
+		long seed = 0;
+		String dataFileName = null;
+
+		for (String arg : args) {
+			if (arg.startsWith("-model=")) {
+				model = arg.substring("-model=".length());
+			} else if (arg.startsWith("-tl=")) {
+				timeLimit = Long.parseLong(arg.substring("-tl=".length()));
+			} else if (arg.startsWith("-seed=")) {
+				seed = Long.parseLong(arg.substring("-seed=".length()));
+			} else {
+				dataFileName = arg;
+			}
+		}
+
+		if (dataFileName == null) {
+			System.err.println("Usage: FrequencyAllocationLocalSearch [-model=m1|m2|m3] [-tl=milliseconds] [-seed=n] data.json");
+			return;
+		}
+
+		FrequencyAllocationLocalSearch search = new FrequencyAllocationLocalSearch(FrequencyAllocationInstance.load(dataFileName), model, seed);
+		System.out.println("c [" + String.join(", ", args) + "]");
+		if (!search.hasPairs()) {
+			System.out.println("s UNSATISFIABLE");
+			return;
+		}
+
+		int[] solution = search.solve(timeLimit, System.out);
+		if (solution == null) {
+			System.out.println("s UNKNOWN");
+			return;
+		}
+
+		System.out.println("s SATISFIABLE");
+		search.printInstantiation(solution, System.out);
+	}
+}
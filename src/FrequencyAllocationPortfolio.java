@@ -0,0 +1,461 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+
+/**
+ * Solve the WCSP and XCSP3 instances with several configurations of toulbar2
+ * and choco at the same time, on a bounded pool of solver processes.
+ * 
+ * Each instance file is a race between the configurations of its solver:
+ * toulbar2 for the .wcsp files, choco for the .xml files (one race per model
+ * variant, since their objectives differ). The outputs are read line by line
+ * while the solvers run: the "New solution" lines of toulbar2 and the "o"
+ * lines of choco give the incumbents, and "Optimum" or "s OPTIMUM FOUND"
+ * (or the proof that there is no solution) ends the race, the other
+ * configurations being killed or never started. The commands must start
+ * the solvers themselves (or exec them), a child of a killed wrapper
+ * keeping its output open.
+ * 
+ * The output of the configuration with the proof, or else with the best
+ * incumbent, is kept under the names of solve_wcsp_toulbar2.sh and
+ * solve_xcsp3.sh (the choco ones with their "real" time), so that they can
+ * be read by FrequencyAllocationVerifier. The .sol file written next to
+ * a WCSP instance with -Dwcsp.greedyBound=true is given to toulbar2 as its
+ * initial solution.
+ * 
+ * Usage: FrequencyAllocationPortfolio [-output=results] [-workers=n] [-tl=seconds]
+ *   [-toulbar2=command] [-toulbar2Configurations="|-A"] [-choco=command] [-chocoConfigurations="-p=1|-p=1 -f"]
+ *   (file.wcsp | file.xml | dir)...
+ * The configurations are separated by '|', and their options by spaces.
+ */
+public class FrequencyAllocationPortfolio {
+
+	static final String DEFAULT_TOULBAR2 = "toulbar2";
+	static final String DEFAULT_CHOCO = "java -server -Xmx500m -cp solvers/choco-2017/choco-parsers.jar org.chocosolver.parser.xcsp.ChocoXCSP";
+	private static final String DEFAULT_TOULBAR2_CONFIGURATIONS = "|-A";
+	private static final String DEFAULT_CHOCO_CONFIGURATIONS = "-p=1|-p=1 -f";
+
+	/* The time given to a solver to stop by itself after its time limit, before it is killed */
+	private static final long GRACE_SECONDS = 30;
+
+	/**
+	 * The race of the configurations of a solver on an instance.
+	 */
+	static class Race {
+		final File instanceFile, resultFile;
+		final boolean toulbar2;
+		final String[] configurations;
+		final long startTime = System.nanoTime();
+
+		/* The processes of the running configurations, to kill them when the race is over */
+		private final Process[] processes;
+		private final AtomicInteger remaining;
+		private boolean over;
+
+		/* The best incumbent and its configuration, and the configuration with the proof, or -1 */
+		long best = Long.MAX_VALUE;
+		int bestConfiguration = -1, provedConfiguration = -1;
+		double provedTime = Double.NaN;
+
+		Race(File instanceFile, File resultFile, boolean toulbar2, String[] configurations) {
+			this.instanceFile = instanceFile;
+			this.resultFile = resultFile;
+			this.toulbar2 = toulbar2;
+			this.configurations = configurations;
+			this.processes = new Process[configurations.length];
+			this.remaining = new AtomicInteger(configurations.length);
+		}
+
+		/**
+		 * @return the temporary output of a configuration.
+		 */
+		File outputFile(int configuration) {
+			return new File(this.resultFile.getPath() + "." + configuration + ".tmp");
+		}
+
+		/**
+		 * Register the process of a configuration, unless the race is over.
+		 * 
+		 * @return false if the race is over, the process being killed.
+		 */
+		synchronized boolean start(int configuration, Process process) {
+			if (this.over) {
+				process.destroyForcibly();
+				return false;
+			}
+			this.processes[configuration] = process;
+			return true;
+		}
+
+		synchronized boolean isOver() {
+			return this.over;
+		}
+
+		synchronized void offer(int configuration, long objective) {
+			if (objective < this.best) {
+				this.best = objective;
+				this.bestConfiguration = configuration;
+			}
+		}
+
+		/**
+		 * End the race with the proof of a configuration, and kill the others.
+		 */
+		synchronized void prove(int configuration) {
+			if (this.over) {
+				return;
+			}
+			this.over = true;
+			this.provedConfiguration = configuration;
+			this.provedTime = (System.nanoTime() - this.startTime) / 1e9;
+			for (int c = 0; c < this.processes.length; c++) {
+				if (c != configuration && this.processes[c] != null) {
+					this.processes[c].destroyForcibly();
+				}
+			}
+		}
+
+		/**
+		 * @return the configuration whose output is kept.
+		 */
+		synchronized int winner() {
+			return this.provedConfiguration >= 0 ? this.provedConfiguration : Math.max(this.bestConfiguration, 0);
+		}
+
+		/**
+		 * @return true if this configuration was the last one of the race.
+		 */
+		boolean finish() {
+			return this.remaining.decrementAndGet() == 0;
+		}
+	}
+
+	private final File outputDirectory;
+	private final int workersNumber;
+	private final long timeLimit;
+	private final String[] toulbar2, choco;
+	private final String[] toulbar2Configurations, chocoConfigurations;
+
+	/**
+	 * @param outputDirectory        the directory of the results, with a toulbar2 and a choco-2017 directory.
+	 * @param workersNumber          the number of solver processes run at the same time.
+	 * @param timeLimit              the time limit of each configuration, in seconds.
+	 * @param toulbar2               the command of toulbar2.
+	 * @param toulbar2Configurations the options of each configuration of toulbar2.
+	 * @param choco                  the command of choco.
+	 * @param chocoConfigurations    the options of each configuration of choco.
+	 */
+	public FrequencyAllocationPortfolio(File outputDirectory, int workersNumber, long timeLimit,
+			String toulbar2, String[] toulbar2Configurations, String choco, String[] chocoConfigurations) {
+		this.outputDirectory = outputDirectory;
+		this.workersNumber = workersNumber;
+		this.timeLimit = timeLimit;
+		this.toulbar2 = toulbar2.trim().split("\\s+");
+		this.toulbar2Configurations = toulbar2Configurations;
+		this.choco = choco.trim().split("\\s+");
+		this.chocoConfigurations = chocoConfigurations;
+	}
+
+	/**
+	 * @return the command line of a configuration on an instance.
+	 */
+	private List<String> command(Race race, int configuration) {
+		List<String> command = new ArrayList<>(Arrays.asList(race.toulbar2 ? this.toulbar2 : this.choco));
+		String name = race.instanceFile.getPath();
+		if (race.toulbar2) {
+			command.add(name);
+			File hint = new File(name.replaceFirst("\\.wcsp$", ".sol"));
+			if (hint.exists()) {
+				command.add(hint.getPath());
+			}
+			command.add("-timer=" + this.timeLimit);
+			command.add("-w=" + race.outputFile(configuration).getPath().replaceFirst("\\.tmp$", ".sol.tmp"));
+		} else {
+			command.add("-tl=" + this.timeLimit * 1000);
+		}
+		for (String option : race.configurations[configuration].trim().split("\\s+")) {
+			if (!option.isEmpty()) {
+				command.add(option);
+			}
+		}
+		if (!race.toulbar2) {
+			command.add(name);
+		}
+		return command;
+	}
+
+	/**
+	 * Run a configuration of a race, reading its incumbents and its proof while it runs.
+	 */
+	private void run(Race race, int configuration) throws IOException, InterruptedException {
+		if (race.isOver()) {
+			return;
+		}
+
+		File outputFile = race.outputFile(configuration);
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(this.command(race, configuration)).redirectErrorStream(true).start();
+		if (!race.start(configuration, process)) {
+			return;
+		}
+
+		/* The solver is killed if it doesn't stop by itself after its time limit */
+		Thread watchdog = new Thread(() -> {
+			try {
+				if (!process.waitFor(this.timeLimit + GRACE_SECONDS, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+			}
+		});
+		watchdog.setDaemon(true);
+		watchdog.start();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.ISO_8859_1));
+				PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outputFile.toPath(), StandardCharsets.ISO_8859_1))) {
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					writer.println(line);
+					this.read(race, configuration, line);
+				}
+			} catch (IOException e) {
+				/* The stream is closed when the process is killed */
+			}
+			process.waitFor();
+
+			if (!race.toulbar2) {
+				/* The times of solve_xcsp3.sh, from "time -p" */
+				writer.println(String.format("real %.2f", (System.nanoTime() - start) / 1e9));
+			}
+		}
+	}
+
+	/**
+	 * Read an output line of a configuration.
+	 */
+	private void read(Race race, int configuration, String line) {
+		if (race.toulbar2) {
+			Matcher solution = FrequencyAllocationVerifier.TOULBAR2_SOLUTION.matcher(line);
+			Matcher optimum = FrequencyAllocationVerifier.TOULBAR2_OPTIMUM.matcher(line);
+			if (solution.find()) {
+				race.offer(configuration, Long.parseLong(solution.group(1)));
+			} else if (optimum.find()) {
+				race.offer(configuration, Long.parseLong(optimum.group(1)));
+				race.prove(configuration);
+			} else if (line.startsWith("No solution")) {
+				race.prove(configuration);
+			}
+		} else {
+			if (line.startsWith("o ")) {
+				race.offer(configuration, Long.parseLong(line.substring(2).trim()));
+			} else if (line.startsWith("s OPTIMUM") || line.startsWith("s UNSATISFIABLE")) {
+				race.prove(configuration);
+			}
+		}
+	}
+
+	/**
+	 * Keep the output of the winner of a race, and delete the others.
+	 */
+	private void close(Race race) throws IOException {
+		int winner = race.winner();
+		for (int c = 0; c < race.configurations.length; c++) {
+			File outputFile = race.outputFile(c);
+			File solutionFile = new File(outputFile.getPath().replaceFirst("\\.tmp$", ".sol.tmp"));
+			if (c == winner && outputFile.exists()) {
+				Files.move(outputFile.toPath(), race.resultFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				if (solutionFile.exists()) {
+					File resultSolutionFile = new File(race.resultFile.getPath().replaceFirst("\\.log$", ".sol"));
+					Files.move(solutionFile.toPath(), resultSolutionFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} else {
+				Files.deleteIfExists(outputFile.toPath());
+				Files.deleteIfExists(solutionFile.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Create the race of an instance file.
+	 * 
+	 * @return the race, or null if the file isn't an instance.
+	 */
+	private Race race(File instanceFile) {
+		String name = instanceFile.getName();
+		if (name.endsWith(".wcsp")) {
+			File resultFile = new File(new File(this.outputDirectory, "toulbar2"), name.replaceFirst("\\.wcsp$", ".log"));
+			return new Race(instanceFile, resultFile, true, this.toulbar2Configurations);
+		} else if (name.endsWith(".xml")) {
+			File resultFile = new File(new File(this.outputDirectory, "choco-2017"), name.replaceFirst("\\.xml$", ".txt_choco"));
+			return new Race(instanceFile, resultFile, false, this.chocoConfigurations);
+		}
+		return null;
+	}
+
+	/**
+	 * Solve all the instance files.
+	 * 
+	 * @param instanceFiles the .wcsp and .xml files.
+	 * @return the races, in the order of the files.
+	 * @throws InterruptedException
+	 */
+	public List<Race> run(List<File> instanceFiles) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(this.workersNumber);
+		List<Race> races = new ArrayList<>();
+		List<Future<?>> jobs = new ArrayList<>();
+		List<String> jobNames = new ArrayList<>();
+
+		for (File instanceFile : instanceFiles) {
+			Race race = this.race(instanceFile);
+			if (race == null) {
+				continue;
+			}
+			race.resultFile.getParentFile().mkdirs();
+			races.add(race);
+
+			for (int c = 0; c < race.configurations.length; c++) {
+				int configuration = c;
+				jobNames.add(instanceFile.getName() + " [" + race.configurations[c] + "]");
+				jobs.add(executor.submit(() -> {
+					try {
+						this.run(race, configuration);
+					} finally {
+						if (race.finish()) {
+							this.close(race);
+						}
+					}
+					return null;
+				}));
+			}
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		for (int i = 0; i < jobs.size(); i++) {
+			try {
+				jobs.get(i).get();
+			} catch (ExecutionException e) {
+				System.err.println("Failed to run " + jobNames.get(i) + ":");
+				e.getCause().printStackTrace();
+			}
+		}
+
+		return races;
+	}
+
+	/**
+	 * Resolve the instance files given on the command line,
+	 * the directories being replaced by their .wcsp and .xml files.
+	 */
+	private static List<File> resolveInstanceFiles(List<String> paths) {
+		List<File> instanceFiles = new ArrayList<>();
+
+		for (String path : paths) {
+			File file = new File(path);
+			if (file.isDirectory()) {
+				File[] children = file.listFiles((directory, name) -> name.endsWith(".wcsp") || name.endsWith(".xml"));
+				if (children != null) {
+					Arrays.sort(children);
+					instanceFiles.addAll(Arrays.asList(children));
+				}
+			} else {
+				instanceFiles.add(file);
+			}
+		}
+
+		return instanceFiles;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		File outputDirectory = new File("results");
+		int workersNumber = Runtime.getRuntime().availableProcessors();
+		long timeLimit = 600;
+		String toulbar2 = DEFAULT_TOULBAR2, choco = DEFAULT_CHOCO;
+		String toulbar2Configurations = DEFAULT_TOULBAR2_CONFIGURATIONS, chocoConfigurations = DEFAULT_CHOCO_CONFIGURATIONS;
+		List<String> paths = new ArrayList<>();
+
+		for (String arg : args) {
+			if (arg.startsWith("-output=")) {
+				outputDirectory = new File(arg.substring("-output=".length()));
+			} else if (arg.startsWith("-workers=")) {
+				workersNumber = Integer.parseInt(arg.substring("-workers=".length()));
+			} else if (arg.startsWith("-tl=")) {
+				timeLimit = Long.parseLong(arg.substring("-tl=".length()));
+			} else if (arg.startsWith("-toulbar2=")) {
+				toulbar2 = arg.substring("-toulbar2=".length());
+			} else if (arg.startsWith("-toulbar2Configurations=")) {
+				toulbar2Configurations = arg.substring("-toulbar2Configurations=".length());
+			} else if (arg.startsWith("-choco=")) {
+				choco = arg.substring("-choco=".length());
+			} else if (arg.startsWith("-chocoConfigurations=")) {
+				chocoConfigurations = arg.substring("-chocoConfigurations=".length());
+			} else {
+				paths.add(arg);
+			}
+		}
+
+		if (paths.isEmpty() || workersNumber < 1 || timeLimit < 1) {
+			System.err.println("Usage: FrequencyAllocationPortfolio [-output=results] [-workers=n] [-tl=seconds]"
+				+ " [-toulbar2=command] [-toulbar2Configurations=\"|-A\"] [-choco=command] [-chocoConfigurations=\"-p=1|-p=1 -f\"]"
+				+ " (file.wcsp | file.xml | dir)...");
+			return;
+		}
+
+		long start = System.nanoTime();
+		List<Race> races = new FrequencyAllocationPortfolio(outputDirectory, workersNumber, timeLimit,
+			toulbar2, toulbar2Configurations.split("\\|", -1), choco, chocoConfigurations.split("\\|", -1)).run(resolveInstanceFiles(paths));
+
+		for (Race race : races) {
+			int winner = race.winner();
+			System.out.println(String.format("%s: %s, best %s with [%s]%s", race.instanceFile.getName(),
+				race.provedConfiguration >= 0 ? "proved" : "not proved", race.best == Long.MAX_VALUE ? "-" : Long.toString(race.best),
+				race.configurations[winner], Double.isNaN(race.provedTime) ? "" : String.format(" in %.2f s", race.provedTime)));
+		}
+		System.out.println(races.size() + " instances solved in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,519 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A preprocessing of an instance, run before its WCSP or XCSP3 model
+ * is generated, so that the solvers get smaller domains and fewer
+ * constraints to parse.
+ * 
+ * The domain of a station is the list of its pairs (transmitter, receiver)
+ * whose gap is its delta, in the order of SpacedStation, and is stored as a
+ * bitset. For each direction of an interference or a connection, the
+ * values of the other station compatible with each pair are precomputed
+ * as a bitset too, so that looking for a support is a loop on a few words,
+ * starting with the last support found (AC-3 with residues).
+ * 
+ * Two reductions are available:
+ * - with hard constraints, the arc consistency is enforced on the
+ *   interferences and the connections, which also propagates the stations
+ *   left with a single pair, then the entailed constraints are removed
+ * - otherwise, only the entailed constraints are removed, that is the ones
+ *   satisfied by all the pairs of their two stations. The domains are kept,
+ *   since a value without support is still allowed by the soft cost
+ *   functions of the WCSP model.
+ * 
+ * The reduced instance keeps all the stations, so that the solutions
+ * are still indexed by the stations of the original instance. Its domains
+ * are the transmitters and the receivers of the remaining pairs, whose
+ * combinations can give back pairs removed by the arc consistency: the
+ * domains are closed under these combinations before the entailed
+ * constraints are looked for, so that an entailed constraint is satisfied
+ * by all the pairs of the reduced instance.
+ * 
+ * Usage: FrequencyAllocationPreprocessor [-entailed] data.json...
+ * reports the reduction of each instance, without generating anything.
+ */
+public class FrequencyAllocationPreprocessor {
+
+	private final FrequencyAllocationInstance instance;
+	private final boolean hard;
+	private final int stationsNumber;
+
+	/* The pairs of station s are (pairT[s][k], pairR[s][k]), as frequencies */
+	private final int[][] pairT, pairR;
+
+	/* The remaining pairs of each station, and their number */
+	private final long[][] domains;
+	private final int[] domainSizes;
+
+	/* The constraints: the interferences, then the connections */
+	private final int constraintsNumber;
+	private final int[] constraintX, constraintY;
+	private final boolean[] entailed;
+
+	/**
+	 * The arc 2c revises the domain of x of the constraint c against y,
+	 * the arc 2c + 1 the domain of y against x: supports[arc][a] is the
+	 * bitset of the pairs of the other station compatible with the pair a,
+	 * and residues[arc][a] the word of its last support found.
+	 */
+	private long[][][] supports;
+	private int[][] residues;
+
+	/* The arcs to revise when the domain of station s changes, from arcOffsets[s] */
+	private final int[] arcOffsets, arcs;
+
+	private boolean consistent = true;
+	private long elapsedTime;
+
+	/**
+	 * @param instance the instance.
+	 * @param hard     true if the constraints are hard, as in the XCSP3 model.
+	 */
+	public FrequencyAllocationPreprocessor(FrequencyAllocationInstance instance, boolean hard) {
+		this.instance = instance;
+		this.hard = hard;
+		this.stationsNumber = instance.stationsNumber;
+
+		this.pairT = new int[this.stationsNumber][];
+		this.pairR = new int[this.stationsNumber][];
+		this.domains = new long[this.stationsNumber][];
+		this.domainSizes = new int[this.stationsNumber];
+		for (int s = 0; s < this.stationsNumber; s++) {
+			FrequencyAllocationInstance.IntList pairT = new FrequencyAllocationInstance.IntList();
+			FrequencyAllocationInstance.IntList pairR = new FrequencyAllocationInstance.IntList();
+			for (int i = instance.transmitterOffsets[s]; i < instance.transmitterOffsets[s + 1]; i++) {
+				for (int j = instance.receiverOffsets[s]; j < instance.receiverOffsets[s + 1]; j++) {
+					if (Math.abs(instance.transmitters[i] - instance.receivers[j]) == instance.delta[s]) {
+						pairT.add(instance.transmitters[i]);
+						pairR.add(instance.receivers[j]);
+					}
+				}
+			}
+			this.pairT[s] = pairT.toArray();
+			this.pairR[s] = pairR.toArray();
+			this.domainSizes[s] = this.pairT[s].length;
+			this.domains[s] = new long[(this.domainSizes[s] + 63) >>> 6];
+			for (int k = 0; k < this.domainSizes[s]; k++) {
+				this.domains[s][k >>> 6] |= 1L << k;
+			}
+		}
+
+		this.constraintsNumber = instance.interferencesNumber + instance.connectionsNumber;
+		this.constraintX = new int[this.constraintsNumber];
+		this.constraintY = new int[this.constraintsNumber];
+		System.arraycopy(instance.interferenceX, 0, this.constraintX, 0, instance.interferencesNumber);
+		System.arraycopy(instance.interferenceY, 0, this.constraintY, 0, instance.interferencesNumber);
+		System.arraycopy(instance.connectionX, 0, this.constraintX, instance.interferencesNumber, instance.connectionsNumber);
+		System.arraycopy(instance.connectionY, 0, this.constraintY, instance.interferencesNumber, instance.connectionsNumber);
+		this.entailed = new boolean[this.constraintsNumber];
+
+		/* An arc is revised when the domain of its other station changes */
+		this.arcOffsets = new int[this.stationsNumber + 1];
+		for (int arc = 0; arc < 2 * this.constraintsNumber; arc++) {
+			this.arcOffsets[this.otherStation(arc) + 1]++;
+		}
+		for (int s = 0; s < this.stationsNumber; s++) {
+			this.arcOffsets[s + 1] += this.arcOffsets[s];
+		}
+		this.arcs = new int[2 * this.constraintsNumber];
+		int[] arcFill = Arrays.copyOf(this.arcOffsets, this.stationsNumber);
+		for (int arc = 0; arc < 2 * this.constraintsNumber; arc++) {
+			this.arcs[arcFill[this.otherStation(arc)]++] = arc;
+		}
+	}
+
+	private int revisedStation(int arc) {
+		return (arc & 1) == 0 ? this.constraintX[arc >> 1] : this.constraintY[arc >> 1];
+	}
+
+	private int otherStation(int arc) {
+		return (arc & 1) == 0 ? this.constraintY[arc >> 1] : this.constraintX[arc >> 1];
+	}
+
+	/**
+	 * @return true if the pair a of x and the pair b of y satisfy the constraint c.
+	 */
+	private boolean compatible(int c, int a, int b) {
+		int x = this.constraintX[c], y = this.constraintY[c];
+		int tx = this.pairT[x][a], rx = this.pairR[x][a];
+		int ty = this.pairT[y][b], ry = this.pairR[y][b];
+
+		if (c < this.instance.interferencesNumber) {
+			int Delta = this.instance.interferenceDelta[c];
+			return Math.abs(tx - ry) >= Delta && Math.abs(ty - rx) >= Delta &&
+				Math.abs(ty - tx) >= Delta && Math.abs(ry - rx) >= Delta;
+		}
+
+		return tx == ry && ty == rx;
+	}
+
+	/**
+	 * Compute the support bitsets of the two arcs of each constraint.
+	 */
+	private void computeSupports() {
+		this.supports = new long[2 * this.constraintsNumber][][];
+		this.residues = new int[2 * this.constraintsNumber][];
+
+		for (int c = 0; c < this.constraintsNumber; c++) {
+			int x = this.constraintX[c], y = this.constraintY[c];
+			long[][] xSupports = new long[this.pairT[x].length][this.domains[y].length];
+			long[][] ySupports = new long[this.pairT[y].length][this.domains[x].length];
+
+			for (int a = 0; a < xSupports.length; a++) {
+				for (int b = 0; b < ySupports.length; b++) {
+					if (this.compatible(c, a, b)) {
+						xSupports[a][b >>> 6] |= 1L << b;
+						ySupports[b][a >>> 6] |= 1L << a;
+					}
+				}
+			}
+
+			this.supports[2 * c] = xSupports;
+			this.supports[2 * c + 1] = ySupports;
+			this.residues[2 * c] = new int[xSupports.length];
+			this.residues[2 * c + 1] = new int[ySupports.length];
+		}
+	}
+
+	/**
+	 * Remove the pairs of the revised station of an arc
+	 * which have no support in the domain of the other one.
+	 * 
+	 * @param arc the arc.
+	 * @return true if pairs were removed.
+	 */
+	private boolean revise(int arc) {
+		int x = this.revisedStation(arc);
+		long[] domain = this.domains[x];
+		long[] otherDomain = this.domains[this.otherStation(arc)];
+		long[][] supports = this.supports[arc];
+		int[] residues = this.residues[arc];
+		boolean removed = false;
+
+		for (int w = 0; w < domain.length; w++) {
+			for (long bits = domain[w]; bits != 0; bits &= bits - 1) {
+				int a = (w << 6) + Long.numberOfTrailingZeros(bits);
+				long[] support = supports[a];
+				if ((support[residues[a]] & otherDomain[residues[a]]) != 0) {
+					continue;
+				}
+
+				int v = 0;
+				while (v < otherDomain.length && (support[v] & otherDomain[v]) == 0) {
+					v++;
+				}
+				if (v < otherDomain.length) {
+					residues[a] = v;
+				} else {
+					domain[w] &= ~(1L << a);
+					this.domainSizes[x]--;
+					removed = true;
+				}
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Enforce the arc consistency on all the constraints. The
+	 * stations whose domain changed are queued, so that the
+	 * arcs depending on them are revised again.
+	 */
+	private void enforceArcConsistency() {
+		int[] queue = new int[this.stationsNumber];
+		boolean[] queued = new boolean[this.stationsNumber];
+		int head = 0, size = 0;
+
+		for (int s = 0; s < this.stationsNumber; s++) {
+			if (this.domainSizes[s] == 0) {
+				this.consistent = false;
+				return;
+			}
+			queue[s] = s;
+			queued[s] = true;
+		}
+		size = this.stationsNumber;
+
+		while (size > 0) {
+			int s = queue[head];
+			head = (head + 1) % this.stationsNumber;
+			size--;
+			queued[s] = false;
+
+			for (int e = this.arcOffsets[s]; e < this.arcOffsets[s + 1]; e++) {
+				int arc = this.arcs[e];
+				if (!this.revise(arc)) {
+					continue;
+				}
+
+				int x = this.revisedStation(arc);
+				if (this.domainSizes[x] == 0) {
+					this.consistent = false;
+					return;
+				}
+				if (!queued[x]) {
+					queue[(head + size) % this.stationsNumber] = x;
+					queued[x] = true;
+					size++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Put back the pairs whose transmitter and receiver are both used by
+	 * remaining pairs, which the reduced instance can't tell apart from them.
+	 */
+	private void closeDomains() {
+		for (int s = 0; s < this.stationsNumber; s++) {
+			int[] transmitters = project(this.instance.transmitter(s), this.pairT[s], this.domains[s]);
+			int[] receivers = project(this.instance.receiver(s), this.pairR[s], this.domains[s]);
+			for (int k = 0; k < this.pairT[s].length; k++) {
+				if ((this.domains[s][k >>> 6] & (1L << k)) == 0 && contains(transmitters, this.pairT[s][k]) && contains(receivers, this.pairR[s][k])) {
+					this.domains[s][k >>> 6] |= 1L << k;
+					this.domainSizes[s]++;
+				}
+			}
+		}
+	}
+
+	private static boolean contains(int[] frequencies, int frequency) {
+		for (int f : frequencies) {
+			if (f == frequency) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Mark the constraints satisfied by all the remaining pairs of their two stations.
+	 */
+	private void removeEntailedConstraints() {
+		for (int c = 0; c < this.constraintsNumber; c++) {
+			long[] domain = this.domains[this.constraintX[c]];
+			long[] otherDomain = this.domains[this.constraintY[c]];
+			long[][] supports = this.supports[2 * c];
+			boolean entailed = true;
+
+			for (int w = 0; w < domain.length && entailed; w++) {
+				for (long bits = domain[w]; bits != 0 && entailed; bits &= bits - 1) {
+					long[] support = supports[(w << 6) + Long.numberOfTrailingZeros(bits)];
+					for (int v = 0; v < otherDomain.length; v++) {
+						if ((otherDomain[v] & ~support[v]) != 0) {
+							entailed = false;
+							break;
+						}
+					}
+				}
+			}
+
+			this.entailed[c] = entailed;
+		}
+	}
+
+	/**
+	 * Run the preprocessing.
+	 * 
+	 * @return the reduced instance, or the instance itself if the arc
+	 *         consistency found a station without any pair left.
+	 */
+	public FrequencyAllocationInstance run() {
+		long start = System.nanoTime();
+
+		this.computeSupports();
+		if (this.hard) {
+			this.enforceArcConsistency();
+		}
+		if (this.hard && this.consistent) {
+			this.closeDomains();
+		}
+		if (this.consistent) {
+			this.removeEntailedConstraints();
+		}
+
+		/* The supports are only needed by the preprocessing */
+		this.supports = null;
+		this.residues = null;
+		this.elapsedTime = System.nanoTime() - start;
+
+		return this.consistent ? this.reducedInstance() : this.instance;
+	}
+
+	/**
+	 * Preprocess an instance as chosen in the WCSP options.
+	 * 
+	 * @param instance      the instance.
+	 * @param preprocessing the preprocessing.
+	 * @return the reduced instance, or the instance itself without preprocessing.
+	 */
+	static FrequencyAllocationInstance preprocess(FrequencyAllocationInstance instance, WCSPOptions.Preprocessing preprocessing) {
+		if (preprocessing == WCSPOptions.Preprocessing.NONE) {
+			return instance;
+		}
+
+		return new FrequencyAllocationPreprocessor(instance, preprocessing == WCSPOptions.Preprocessing.HARD).run();
+	}
+
+	/**
+	 * @return false if the arc consistency found a station without any
+	 *         pair left, that is if the hard constraints can't be satisfied.
+	 */
+	public boolean isConsistent() {
+		return this.consistent;
+	}
+
+	/**
+	 * @param frequencies the frequencies of a station.
+	 * @param pairs       the transmitter or receiver frequencies of its pairs.
+	 * @param domain      the remaining pairs.
+	 * @return the frequencies used by a remaining pair, in their original order.
+	 */
+	private static int[] project(int[] frequencies, int[] pairs, long[] domain) {
+		FrequencyAllocationInstance.IntList projection = new FrequencyAllocationInstance.IntList();
+
+		for (int frequency : frequencies) {
+			for (int k = 0; k < pairs.length; k++) {
+				if (pairs[k] == frequency && (domain[k >>> 6] & (1L << k)) != 0) {
+					projection.add(frequency);
+					break;
+				}
+			}
+		}
+
+		return projection.toArray();
+	}
+
+	private FrequencyAllocationInstance reducedInstance() {
+		int[][] transmitter = new int[this.stationsNumber][];
+		int[][] receiver = new int[this.stationsNumber][];
+		for (int s = 0; s < this.stationsNumber; s++) {
+			transmitter[s] = this.instance.transmitter(s);
+			receiver[s] = this.instance.receiver(s);
+			if (this.hard) {
+				transmitter[s] = project(transmitter[s], this.pairT[s], this.domains[s]);
+				receiver[s] = project(receiver[s], this.pairR[s], this.domains[s]);
+			}
+		}
+
+		int[][] interference = new int[this.instance.interferencesNumber - this.removedConstraintsNumber(0, this.instance.interferencesNumber)][];
+		int[][] connection = new int[this.instance.connectionsNumber - this.removedConstraintsNumber(this.instance.interferencesNumber, this.constraintsNumber)][];
+		int interferencesNumber = 0, connectionsNumber = 0;
+		for (int c = 0; c < this.constraintsNumber; c++) {
+			if (this.entailed[c]) {
+				continue;
+			}
+			if (c < this.instance.interferencesNumber) {
+				interference[interferencesNumber++] = new int[] { this.constraintX[c], this.constraintY[c], this.instance.interferenceDelta[c] };
+			} else {
+				connection[connectionsNumber++] = new int[] { this.constraintX[c], this.constraintY[c] };
+			}
+		}
+
+		return FrequencyAllocationInstance.of(this.instance.num, this.instance.region, this.instance.delta,
+			transmitter, receiver, interference, connection, this.instance.regions);
+	}
+
+	private int removedConstraintsNumber(int from, int to) {
+		int removed = 0;
+		for (int c = from; c < to; c++) {
+			if (this.entailed[c]) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Print how much the preprocessing removed.
+	 * 
+	 * @param name the name of the instance.
+	 * @param out  the output stream.
+	 */
+	public void report(String name, PrintStream out) {
+		int pairsBefore = 0, pairsAfter = 0, fixedBefore = 0, fixedAfter = 0;
+		for (int s = 0; s < this.stationsNumber; s++) {
+			pairsBefore += this.pairT[s].length;
+			pairsAfter += this.domainSizes[s];
+			fixedBefore += this.pairT[s].length == 1 ? 1 : 0;
+			fixedAfter += this.domainSizes[s] == 1 ? 1 : 0;
+		}
+		int interferencesAfter = this.instance.interferencesNumber - this.removedConstraintsNumber(0, this.instance.interferencesNumber);
+		int connectionsAfter = this.instance.connectionsNumber - this.removedConstraintsNumber(this.instance.interferencesNumber, this.constraintsNumber);
+
+		out.println(name + (this.hard ? " (hard)" : " (entailed)") + ": " + this.elapsedTime / 1000000 + " ms");
+		if (!this.consistent) {
+			out.println("  a station has no pair left, the constraints can't be satisfied");
+			return;
+		}
+		out.println("  pairs:          " + pairsBefore + " -> " + pairsAfter + percentage(pairsBefore, pairsAfter));
+		out.println("  fixed stations: " + fixedBefore + " -> " + fixedAfter + " of " + this.stationsNumber);
+		out.println("  interferences:  " + this.instance.interferencesNumber + " -> " + interferencesAfter
+			+ percentage(this.instance.interferencesNumber, interferencesAfter));
+		out.println("  connections:    " + this.instance.connectionsNumber + " -> " + connectionsAfter
+			+ percentage(this.instance.connectionsNumber, connectionsAfter));
+	}
+
+	private static String percentage(int before, int after) {
+		return before == 0 ? "" : String.format(" (%.1f %% removed)", 100.0 * (before - after) / before);
+	}
+
+	/**
+	 * Usage: FrequencyAllocationPreprocessor [-entailed] data.json...
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean hard = true;
+		int filesNumber = 0;
+
+		for (String arg : args) {
+			if (arg.equals("-entailed")) {
+				hard = false;
+			}
+		}
+
+		for (String arg : args) {
+			if (arg.startsWith("-")) {
+				continue;
+			}
+			FrequencyAllocationPreprocessor preprocessor = new FrequencyAllocationPreprocessor(FrequencyAllocationInstance.load(arg), hard);
+			preprocessor.run();
+			preprocessor.report(arg, System.out);
+			filesNumber++;
+		}
+
+		if (filesNumber == 0) {
+			System.err.println("Usage: FrequencyAllocationPreprocessor [-entailed] data.json...");
+		}
+	}
+}
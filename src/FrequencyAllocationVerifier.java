@@ -0,0 +1,641 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Verify the solutions written by the solvers in the results directories,
+ * against the JSON instances they were generated from.
+ * 
+ * Two kinds of outputs are read:
+ * - the .sol files of toulbar2 (see solve_wcsp_toulbar2.sh), whose values
+ *   are indexes in the tuples of SpacedStation, mapped back to the pairs of
+ *   frequencies, with the optimum and the time of the .log file next to them
+ * - the _choco files of choco (see solve_xcsp3.sh), whose instantiation
+ *   gives the frequencies of T and R, with the status, the last objective
+ *   and the time given by "time -p"
+ * 
+ * The four constraints are checked on flat arrays of frequencies, and the
+ * objectives of m1, m2 and m3 are computed for every solution. Constraint 3
+ * counts the frequencies above the limits of the regions, the others count
+ * the violated stations, interferences and connections. The objective
+ * reported by the solver is checked against the computed one: for toulbar2,
+ * the cost of the violated interferences and connections, plus the excess
+ * of the regions times their weight if they are soft (see WCSPOptions), a
+ * hard region being never exceeded, and for choco, the objective of the
+ * model, whose solutions must satisfy every constraint. The regions of the
+ * WCSP instances are given as for their generation, by the system
+ * properties wcsp.regions and wcsp.regionWeight, or by -regions and
+ * -regionWeight.
+ * 
+ * The files are verified in parallel, each instance being loaded once.
+ * 
+ * Usage: FrequencyAllocationVerifier [-workers=n] [-regions=none|hard|soft] [-regionWeight=n]
+ *   -data=dir results-dir... [-data=dir results-dir...]...
+ */
+public class FrequencyAllocationVerifier {
+
+	private static final Pattern TOULBAR2_NAME = Pattern.compile("FrequencyAllocationWCSP_(.+)\\.sol");
+	private static final Pattern CHOCO_NAME = Pattern.compile("FrequencyAllocationXCSP3-(?:(m[123])-)?(.+)\\.txt_choco");
+	static final Pattern TOULBAR2_OPTIMUM = Pattern.compile("^Optimum: (\\d+) in .* and ([0-9.]+) seconds\\.");
+	static final Pattern TOULBAR2_SOLUTION = Pattern.compile("^New solution: (\\d+) ");
+	private static final Pattern CHOCO_VARIABLE = Pattern.compile("([TR])\\[(\\d*)(?:\\.\\.(\\d+))?\\]");
+
+	/* A frequency missing from the instantiation */
+	private static final int UNASSIGNED = Integer.MIN_VALUE;
+
+	/**
+	 * The verification of a solution file.
+	 */
+	static class Verification {
+		final File solutionFile;
+		final String solver, model, instanceName;
+
+		String status = "-";
+		/* The frequencies of each station */
+		int[] transmitter, receiver;
+
+		/* The violations of the constraints 1 to 4 */
+		final int[] violations = new int[4];
+		int distinct, span;
+		long sum;
+
+		/* The objective reported by the solver, and its running time in seconds */
+		long reported = -1;
+		double time = Double.NaN;
+
+		/* Why the solution couldn't be verified, or null */
+		String error;
+		boolean mismatch;
+
+		Verification(File solutionFile, String solver, String model, String instanceName) {
+			this.solutionFile = solutionFile;
+			this.solver = solver;
+			this.model = model;
+			this.instanceName = instanceName;
+		}
+
+		boolean hasViolations() {
+			return this.violations[0] + this.violations[1] + this.violations[2] + this.violations[3] > 0;
+		}
+	}
+
+	/**
+	 * A solution file and the directory of its instance.
+	 */
+	private static class Job {
+		final File solutionFile, dataDirectory;
+
+		Job(File solutionFile, File dataDirectory) {
+			this.solutionFile = solutionFile;
+			this.dataDirectory = dataDirectory;
+		}
+	}
+
+	/**
+	 * An instance and the tuples of its stations, shared by its solutions.
+	 */
+	private static class Data {
+		final FrequencyAllocationInstance instance;
+		private FrequencyAllocationWCSP.SpacedStation[] spacedStations;
+
+		Data(FrequencyAllocationInstance instance) {
+			this.instance = instance;
+		}
+
+		synchronized FrequencyAllocationWCSP.SpacedStation[] spacedStations() {
+			if (this.spacedStations == null) {
+				this.spacedStations = FrequencyAllocationWCSP.fromInstance(this.instance).computeSpacedStations();
+			}
+			return this.spacedStations;
+		}
+	}
+
+	private final int workersNumber;
+	private final Map<File, Data> data;
+
+	/* The regions of the WCSP instances, and their weight if they are soft */
+	private final WCSPOptions.Regions regions;
+	private final int regionWeight;
+
+	/**
+	 * @param workersNumber the number of files verified at the same time.
+	 */
+	public FrequencyAllocationVerifier(int workersNumber) {
+		this(workersNumber, new WCSPOptions());
+	}
+
+	/**
+	 * @param workersNumber the number of files verified at the same time.
+	 * @param options       the options of the generation of the WCSP instances, giving their regions.
+	 */
+	public FrequencyAllocationVerifier(int workersNumber, WCSPOptions options) {
+		this.workersNumber = workersNumber;
+		this.data = new ConcurrentHashMap<>();
+		this.regions = options.regions;
+		this.regionWeight = options.regionWeight;
+	}
+
+	/**
+	 * Load an instance, or get it if it has already been loaded.
+	 */
+	private Data data(File dataFile) throws IOException {
+		Data loaded = this.data.get(dataFile);
+		if (loaded == null) {
+			/* Two workers may load the same instance, the first one is kept */
+			Data read = new Data(FrequencyAllocationInstance.load(dataFile.getPath()));
+			Data previous = this.data.putIfAbsent(dataFile, read);
+			loaded = previous == null ? read : previous;
+		}
+		return loaded;
+	}
+
+	/**
+	 * Verify a solution file.
+	 * 
+	 * @param solutionFile  the output of toulbar2 or choco.
+	 * @param dataDirectory the directory of the JSON instances.
+	 * @return the verification, or null if the file isn't a solver output.
+	 */
+	public Verification verify(File solutionFile, File dataDirectory) {
+		Verification verification;
+		Matcher toulbar2 = TOULBAR2_NAME.matcher(solutionFile.getName());
+		Matcher choco = CHOCO_NAME.matcher(solutionFile.getName());
+		if (toulbar2.matches()) {
+			verification = new Verification(solutionFile, "toulbar2", "wcsp", toulbar2.group(1));
+		} else if (choco.matches()) {
+			verification = new Verification(solutionFile, "choco", choco.group(1) == null ? "csp" : choco.group(1), choco.group(2));
+		} else {
+			return null;
+		}
+
+		try {
+			File dataFile = new File(dataDirectory, verification.instanceName + ".json");
+			if (!dataFile.exists()) {
+				verification.error = "no instance " + dataFile;
+				return verification;
+			}
+			Data data = this.data(dataFile);
+
+			if (verification.solver.equals("toulbar2")) {
+				this.readToulbar2(verification, data);
+			} else {
+				this.readChoco(verification, data.instance);
+			}
+
+			if (verification.transmitter != null && verification.error == null) {
+				this.check(verification, data.instance);
+			}
+		} catch (IOException | RuntimeException e) {
+			verification.error = e.toString();
+		}
+
+		return verification;
+	}
+
+	/**
+	 * Parse the integers of a line from an index, without splitting it.
+	 * A '*' gives UNASSIGNED.
+	 * 
+	 * @param line   the line.
+	 * @param from   the index of the first character.
+	 * @param values the parsed integers.
+	 */
+	private static void parseIntegers(String line, int from, FrequencyAllocationInstance.IntList values) {
+		int length = line.length();
+		int i = from;
+
+		while (i < length) {
+			char c = line.charAt(i);
+			if (c == '*') {
+				values.add(UNASSIGNED);
+				i++;
+			} else if (c == '-' || (c >= '0' && c <= '9')) {
+				boolean negative = c == '-';
+				int value = 0;
+				i += negative ? 1 : 0;
+				while (i < length && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+					value = 10 * value + (line.charAt(i++) - '0');
+				}
+				values.add(negative ? -value : value);
+			} else if (c == '<') {
+				/* The end of the values */
+				return;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Read a solution of toulbar2, with the optimum and the time of its log.
+	 * The values are the tuple indexes of the stations, followed by the
+	 * variables of the modeled regions, if any.
+	 */
+	private void readToulbar2(Verification verification, Data data) throws IOException {
+		String solutionName = verification.solutionFile.getName();
+		File logFile = new File(verification.solutionFile.getParentFile(), solutionName.substring(0, solutionName.length() - ".sol".length()) + ".log");
+		if (logFile.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(logFile.toPath(), StandardCharsets.ISO_8859_1)) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					Matcher optimum = TOULBAR2_OPTIMUM.matcher(line);
+					Matcher solution = TOULBAR2_SOLUTION.matcher(line);
+					if (optimum.find()) {
+						verification.status = "OPTIMUM";
+						verification.reported = Long.parseLong(optimum.group(1));
+						verification.time = Double.parseDouble(optimum.group(2));
+					} else if (solution.find()) {
+						verification.status = "SOLUTION";
+						verification.reported = Long.parseLong(solution.group(1));
+					}
+				}
+			}
+		}
+
+		FrequencyAllocationInstance.IntList values = new FrequencyAllocationInstance.IntList();
+		try (BufferedReader reader = Files.newBufferedReader(verification.solutionFile.toPath(), StandardCharsets.ISO_8859_1)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				parseIntegers(line, 0, values);
+			}
+		}
+
+		int stationsNumber = data.instance.stationsNumber;
+		if (values.size() < stationsNumber) {
+			verification.error = values.size() + " values for " + stationsNumber + " stations";
+			return;
+		}
+		if (values.size() > stationsNumber && this.regions == WCSPOptions.Regions.NONE) {
+			verification.error = "variables of modeled regions, whose mode isn't given";
+			return;
+		}
+
+		FrequencyAllocationWCSP.SpacedStation[] spacedStations = data.spacedStations();
+		verification.transmitter = new int[stationsNumber];
+		verification.receiver = new int[stationsNumber];
+		for (int s = 0; s < stationsNumber; s++) {
+			int index = values.get(s);
+			if (index < 0 || index >= spacedStations[s].tuplesNumber) {
+				verification.error = "value " + index + " out of the " + spacedStations[s].tuplesNumber + " tuples of station " + s;
+				return;
+			}
+			verification.transmitter[s] = spacedStations[s].transmitter[index];
+			verification.receiver[s] = spacedStations[s].receiver[index];
+		}
+	}
+
+	/**
+	 * Read the last instantiation of a choco output, with its status,
+	 * its last objective, and the real time of "time -p".
+	 */
+	private void readChoco(Verification verification, FrequencyAllocationInstance instance) throws IOException {
+		List<String> variables = null;
+		FrequencyAllocationInstance.IntList values = null;
+		List<String> lastVariables = null;
+		FrequencyAllocationInstance.IntList lastValues = null;
+
+		try (BufferedReader reader = Files.newBufferedReader(verification.solutionFile.toPath(), StandardCharsets.ISO_8859_1)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.startsWith("s ")) {
+					verification.status = line.substring(2).trim().replace(' ', '_');
+				} else if (line.startsWith("o ")) {
+					verification.reported = Long.parseLong(line.substring(2).trim());
+				} else if (line.startsWith("real ")) {
+					verification.time = Double.parseDouble(line.substring(5).trim());
+				} else if (line.startsWith("v ")) {
+					int list = line.indexOf("<list>");
+					int valuesStart = line.indexOf("<values>");
+					if (line.contains("<instantiation")) {
+						variables = new ArrayList<>();
+						values = new FrequencyAllocationInstance.IntList();
+					} else if (list >= 0 && variables != null) {
+						int end = line.indexOf("</list>");
+						for (String variable : line.substring(list + "<list>".length(), end < 0 ? line.length() : end).trim().split("\\s+")) {
+							variables.add(variable);
+						}
+					} else if (valuesStart >= 0 && values != null) {
+						parseIntegers(line, valuesStart + "<values>".length(), values);
+					} else if (line.contains("</instantiation>") && variables != null) {
+						lastVariables = variables;
+						lastValues = values;
+						variables = null;
+						values = null;
+					}
+				}
+			}
+		}
+
+		if (lastVariables == null) {
+			return;
+		}
+
+		int stationsNumber = instance.stationsNumber;
+		verification.transmitter = new int[stationsNumber];
+		verification.receiver = new int[stationsNumber];
+		Arrays.fill(verification.transmitter, UNASSIGNED);
+		Arrays.fill(verification.receiver, UNASSIGNED);
+
+		/* The variables are T[i], or T[] and T[a..b] for several stations, and likewise for R; the others are ignored */
+		int v = 0;
+		for (String variable : lastVariables) {
+			Matcher matcher = CHOCO_VARIABLE.matcher(variable);
+			int first = 0, last = 0;
+			if (matcher.matches()) {
+				first = matcher.group(2).isEmpty() ? 0 : Integer.parseInt(matcher.group(2));
+				last = matcher.group(2).isEmpty() ? stationsNumber - 1 : matcher.group(3) == null ? first : Integer.parseInt(matcher.group(3));
+			}
+			for (int s = first; s <= last; s++, v++) {
+				if (v >= lastValues.size()) {
+					verification.error = lastValues.size() + " values for more variables";
+					return;
+				}
+				if (matcher.matches() && s < stationsNumber) {
+					int[] frequencies = matcher.group(1).equals("T") ? verification.transmitter : verification.receiver;
+					frequencies[s] = lastValues.get(v);
+				}
+			}
+		}
+
+		for (int s = 0; s < stationsNumber; s++) {
+			if (verification.transmitter[s] == UNASSIGNED || verification.receiver[s] == UNASSIGNED) {
+				verification.error = "station " + s + " isn't assigned";
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the frequency is in values[from .. to - 1].
+	 */
+	private static boolean contains(int[] values, int from, int to, int frequency) {
+		for (int i = from; i < to; i++) {
+			if (values[i] == frequency) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param frequencies some frequencies, sorted in place.
+	 * @param length      the number of frequencies.
+	 * @return the number of different frequencies.
+	 */
+	private static int distinct(int[] frequencies, int length) {
+		Arrays.sort(frequencies, 0, length);
+		int distinct = 0;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || frequencies[i] != frequencies[i - 1]) {
+				distinct++;
+			}
+		}
+		return distinct;
+	}
+
+	/**
+	 * Check the constraints and compute the objectives of a solution,
+	 * then compare the objective reported by the solver.
+	 */
+	private void check(Verification verification, FrequencyAllocationInstance instance) {
+		int[] T = verification.transmitter;
+		int[] R = verification.receiver;
+		int stationsNumber = instance.stationsNumber;
+
+		/* Constraint 1: the frequencies are in the domains, and their gap is delta */
+		for (int s = 0; s < stationsNumber; s++) {
+			if (Math.abs(T[s] - R[s]) != instance.delta[s]
+					|| !contains(instance.transmitters, instance.transmitterOffsets[s], instance.transmitterOffsets[s + 1], T[s])
+					|| !contains(instance.receivers, instance.receiverOffsets[s], instance.receiverOffsets[s + 1], R[s])) {
+				verification.violations[0]++;
+			}
+		}
+
+		/* Constraint 2: the four gaps of an interference are at least Delta */
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			int x = instance.interferenceX[i], y = instance.interferenceY[i], Delta = instance.interferenceDelta[i];
+			if (Math.abs(T[x] - R[y]) < Delta || Math.abs(T[y] - R[x]) < Delta || Math.abs(T[x] - T[y]) < Delta || Math.abs(R[x] - R[y]) < Delta) {
+				verification.violations[1]++;
+			}
+		}
+
+		/* Constraint 3: the number of different frequencies of each region is limited */
+		int[] regionOffsets = new int[instance.regions.length + 1];
+		for (int s = 0; s < stationsNumber; s++) {
+			regionOffsets[instance.region[s] + 1] += 2;
+		}
+		for (int r = 0; r < instance.regions.length; r++) {
+			regionOffsets[r + 1] += regionOffsets[r];
+		}
+		int[] regionFrequencies = new int[2 * stationsNumber];
+		int[] fill = Arrays.copyOf(regionOffsets, instance.regions.length);
+		for (int s = 0; s < stationsNumber; s++) {
+			regionFrequencies[fill[instance.region[s]]++] = T[s];
+			regionFrequencies[fill[instance.region[s]]++] = R[s];
+		}
+		int[] frequencies = new int[2 * stationsNumber];
+		for (int r = 0; r < instance.regions.length; r++) {
+			int length = regionOffsets[r + 1] - regionOffsets[r];
+			System.arraycopy(regionFrequencies, regionOffsets[r], frequencies, 0, length);
+			verification.violations[2] += Math.max(0, distinct(frequencies, length) - instance.regions[r]);
+		}
+
+		/* Constraint 4: the frequencies of a connection match */
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			int x = instance.connectionX[i], y = instance.connectionY[i];
+			if (T[x] != R[y] || T[y] != R[x]) {
+				verification.violations[3]++;
+			}
+		}
+
+		/* The objectives of m1, m2 and m3 */
+		System.arraycopy(T, 0, frequencies, 0, stationsNumber);
+		System.arraycopy(R, 0, frequencies, stationsNumber, stationsNumber);
+		verification.distinct = distinct(frequencies, 2 * stationsNumber);
+		verification.span = stationsNumber == 0 ? 0 : frequencies[2 * stationsNumber - 1] - frequencies[0];
+		for (int s = 0; s < stationsNumber; s++) {
+			verification.sum += (long) T[s] + R[s];
+		}
+
+		long expected;
+		switch (verification.model) {
+		case "wcsp":
+			/* The Max-CSP cost, with the weighted excess of the soft regions */
+			expected = verification.violations[1] + verification.violations[3];
+			if (this.regions == WCSPOptions.Regions.SOFT) {
+				expected += (long) this.regionWeight * verification.violations[2];
+			}
+			verification.mismatch = verification.violations[0] > 0 || (this.regions == WCSPOptions.Regions.HARD && verification.violations[2] > 0)
+				|| (verification.reported >= 0 && verification.reported != expected);
+			break;
+		case "m1":
+			expected = verification.distinct;
+			verification.mismatch = verification.hasViolations() || (verification.reported >= 0 && verification.reported != expected);
+			break;
+		case "m2":
+			expected = verification.sum;
+			verification.mismatch = verification.hasViolations() || (verification.reported >= 0 && verification.reported != expected);
+			break;
+		case "m3":
+			expected = verification.span;
+			verification.mismatch = verification.hasViolations() || (verification.reported >= 0 && verification.reported != expected);
+			break;
+		default:
+			verification.mismatch = verification.hasViolations();
+		}
+	}
+
+	/**
+	 * Verify the solution files of the results directories in parallel.
+	 * 
+	 * @param resultsDirectories the results directories, each with the directory of its instances.
+	 * @return the verifications, in the order of the directories and of the file names.
+	 * @throws InterruptedException
+	 */
+	public List<Verification> run(Map<File, File> resultsDirectories) throws InterruptedException {
+		List<Job> jobs = new ArrayList<>();
+		for (Map.Entry<File, File> entry : resultsDirectories.entrySet()) {
+			File[] files = entry.getKey().listFiles();
+			if (files == null) {
+				continue;
+			}
+			Arrays.sort(files);
+			for (File file : files) {
+				if (file.isFile()) {
+					jobs.add(new Job(file, entry.getValue()));
+				}
+			}
+		}
+
+		/* When the queue is full, the submitting thread runs the job itself */
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(this.workersNumber, this.workersNumber, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(2 * this.workersNumber), new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Future<Verification>> futures = new ArrayList<>(jobs.size());
+		for (Job job : jobs) {
+			futures.add(executor.submit(() -> this.verify(job.solutionFile, job.dataDirectory)));
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		List<Verification> verifications = new ArrayList<>();
+		for (Future<Verification> future : futures) {
+			try {
+				Verification verification = future.get();
+				if (verification != null) {
+					verifications.add(verification);
+				}
+			} catch (ExecutionException e) {
+				/* verify() catches the failures of the files */
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		return verifications;
+	}
+
+	/**
+	 * Print the summary table of the verifications.
+	 * 
+	 * @param verifications the verifications.
+	 * @param out           the stream.
+	 */
+	public static void printSummary(List<Verification> verifications, PrintStream out) {
+		String format = "%-32s %-8s %-5s %-18s %4s %4s %4s %4s %5s %9s %6s %9s %9s  %s%n";
+		out.printf(format, "instance", "solver", "model", "status", "C1", "C2", "C3", "C4", "m1", "m2", "m3", "reported", "time (s)", "check");
+
+		int violatedNumber = 0, mismatchesNumber = 0, errorsNumber = 0;
+		for (Verification verification : verifications) {
+			boolean checked = verification.error == null && verification.transmitter != null;
+			String check = verification.error != null ? "ERROR " + verification.error : !checked ? "no solution" : verification.mismatch ? "MISMATCH" : "ok";
+			out.printf(format, verification.instanceName, verification.solver, verification.model, verification.status,
+				checked ? verification.violations[0] : "-", checked ? verification.violations[1] : "-",
+				checked ? verification.violations[2] : "-", checked ? verification.violations[3] : "-",
+				checked ? verification.distinct : "-", checked ? verification.sum : "-", checked ? verification.span : "-",
+				verification.reported >= 0 ? verification.reported : "-",
+				Double.isNaN(verification.time) ? "-" : String.format("%.2f", verification.time), check);
+
+			violatedNumber += checked && verification.hasViolations() ? 1 : 0;
+			mismatchesNumber += checked && verification.mismatch ? 1 : 0;
+			errorsNumber += verification.error != null ? 1 : 0;
+		}
+
+		out.println(verifications.size() + " solution files, " + violatedNumber + " with violations, "
+			+ mismatchesNumber + " mismatches, " + errorsNumber + " errors");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int workersNumber = Runtime.getRuntime().availableProcessors();
+		WCSPOptions options = WCSPOptions.fromSystemProperties();
+		File dataDirectory = null;
+		Map<File, File> resultsDirectories = new LinkedHashMap<>();
+
+		for (String arg : args) {
+			if (arg.startsWith("-workers=")) {
+				workersNumber = Integer.parseInt(arg.substring("-workers=".length()));
+			} else if (arg.startsWith("-regions=")) {
+				options.regions = WCSPOptions.Regions.valueOf(arg.substring("-regions=".length()).toUpperCase());
+			} else if (arg.startsWith("-regionWeight=")) {
+				options.regionWeight = Integer.parseInt(arg.substring("-regionWeight=".length()));
+			} else if (arg.startsWith("-data=")) {
+				dataDirectory = new File(arg.substring("-data=".length()));
+			} else if (dataDirectory != null) {
+				resultsDirectories.put(new File(arg), dataDirectory);
+			} else {
+				resultsDirectories.clear();
+				break;
+			}
+		}
+
+		if (resultsDirectories.isEmpty() || workersNumber < 1) {
+			System.err.println("Usage: FrequencyAllocationVerifier [-workers=n] [-regions=none|hard|soft] [-regionWeight=n]"
+				+ " -data=dir results-dir... [-data=dir results-dir...]...");
+			return;
+		}
+
+		long start = System.nanoTime();
+		List<Verification> verifications = new FrequencyAllocationVerifier(workersNumber, options).run(resultsDirectories);
+		printSummary(verifications, System.out);
+		System.out.println("Verified in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
@@ -26,21 +26,36 @@
 
 package org.xcsp.modeler.problems;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 import org.xcsp.modeler.api.ProblemAPI;
 
 public class FrequencyAllocationWCSP implements ProblemAPI {
 
+	/* The number of chunks of cost functions per worker, to balance the load */
+	private static final int CHUNKS_PER_WORKER = 4;
+
+	/* The system property naming a JSON file to load instead of the data bound by the compiler */
+	public static final String DATA_PROPERTY = "wcsp.data";
+
 	Station[] stations;
 	Interference[] interferences;
 	Connection[] connection;
 	int[] regions;
 
+	/* The instance reduced by the preprocessing, or null, and the tuples of each station outside its reduced domain */
+	private FrequencyAllocationInstance reducedInstance;
+	private int[][] forbiddenTuples;
+
 	public class Station {
 		int num, region, delta;
 		int[] transmitter;
@@ -84,10 +99,18 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 		int[] transmitter;
 		int[] receiver;
 
+		/* The tuple indexes sorted by frequency, and the sorted frequencies */
+		int[] transmitterOrder, sortedTransmitter;
+		int[] receiverOrder, sortedReceiver;
+
+		/* The canonical id of the tuples, interned by CompatibilityTables */
+		int domainId;
+
 		public SpacedStation(Station station) {
 			this.num = station.num;
 			this.region = station.region;
 			this.tuplesNumber = 0;
+			this.domainId = -1;
 
 			this.transmitter = new int[2 * station.transmitter.length];
 			this.receiver = new int[2 * station.receiver.length];
@@ -102,24 +125,204 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 					}
 				}
 			}
+
+			this.transmitterOrder = new int[this.tuplesNumber];
+			this.sortedTransmitter = new int[this.tuplesNumber];
+			this.sort(this.transmitter, this.transmitterOrder, this.sortedTransmitter);
+
+			this.receiverOrder = new int[this.tuplesNumber];
+			this.sortedReceiver = new int[this.tuplesNumber];
+			this.sort(this.receiver, this.receiverOrder, this.sortedReceiver);
+		}
+
+		/**
+		 * Sort the tuple indexes by frequency.
+		 * 
+		 * @param frequencies the frequencies of the tuples.
+		 * @param order       the tuple indexes sorted by frequency.
+		 * @param sorted      the sorted frequencies.
+		 */
+		private void sort(int[] frequencies, int[] order, int[] sorted) {
+			/* Pack each frequency with its index, so that sorting doesn't box them */
+			long[] packed = new long[this.tuplesNumber];
+			for (int i = 0; i < this.tuplesNumber; i++) {
+				packed[i] = ((long) frequencies[i] << 32) | i;
+			}
+			Arrays.sort(packed);
+
+			for (int i = 0; i < this.tuplesNumber; i++) {
+				order[i] = (int) packed[i];
+				sorted[i] = (int) (packed[i] >> 32);
+			}
 		}
 	}
 	
 	/**
-	 * Resolve the output file name, create the ouput file
-	 * and initialize the writer (output stream).
+	 * Constraint 3:
+	 * The number of different frequencies used in a region is limited.
 	 * 
-	 * @return writer the ouput stream used to write in the file.
-	 * @throws IOException
+	 * Each frequency of the stations of the region has a boolean variable
+	 * telling if it is used in the region, linked to each station having
+	 * this frequency by a binary cost function, and the number of used
+	 * frequencies is bounded by a wamong global cost function of toulbar2
+	 * over these variables, so that the encoding stays linear in the size
+	 * of the region.
 	 */
-	private BufferedWriter resolveWriter() throws IOException {
+	public class RegionFrequencies {
+		int region, limit;
+		/* The stations of the region, and the sorted frequencies of the pairs of each one */
+		int[] stations;
+		int[][] stationFrequencies;
+		/* The sorted frequencies of the region */
+		int[] frequencies;
+		/* The variable of the first frequency, the others following it */
+		int firstVariable;
+
+		public RegionFrequencies(int region, int limit, int[] stations, SpacedStation[] spacedStations, int firstVariable) {
+			this.region = region;
+			this.limit = limit;
+			this.stations = stations;
+			this.firstVariable = firstVariable;
+
+			this.stationFrequencies = new int[stations.length][];
+			for (int s = 0; s < stations.length; s++) {
+				SpacedStation spacedStation = spacedStations[stations[s]];
+				int[] frequencies = new int[2 * spacedStation.tuplesNumber];
+				for (int i = 0; i < spacedStation.tuplesNumber; i++) {
+					frequencies[2 * i] = spacedStation.transmitter[i];
+					frequencies[2 * i + 1] = spacedStation.receiver[i];
+				}
+				this.stationFrequencies[s] = Arrays.stream(frequencies).sorted().distinct().toArray();
+			}
+			this.frequencies = Arrays.stream(this.stationFrequencies).flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+		}
+
+		/**
+		 * @param frequency a frequency of the region.
+		 * @return the variable telling if the frequency is used in the region.
+		 */
+		int variable(int frequency) {
+			return this.firstVariable + Arrays.binarySearch(this.frequencies, frequency);
+		}
+
+		/**
+		 * @return the number of binary cost functions linking the stations to the frequencies.
+		 */
+		int linksNumber() {
+			int linksNumber = 0;
+			for (int[] frequencies : this.stationFrequencies) {
+				linksNumber += frequencies.length;
+			}
+			return linksNumber;
+		}
+
+		/**
+		 * @return the number of frequencies above the limit when all of them are used.
+		 */
+		int maxExcess() {
+			return this.frequencies.length - this.limit;
+		}
+	}
+
+	/**
+	 * An assignment of FrequencyAllocationGreedy, as the values of the
+	 * variables of the WCSP, and its cost.
+	 */
+	static class Hint {
+		final int[] values;
+		final long cost;
+
+		Hint(int[] values, long cost) {
+			this.values = values;
+			this.cost = cost;
+		}
+	}
+
+	/**
+	 * Create the problem from an instance loaded without the XCSP3 compiler.
+	 * 
+	 * @param instance the instance.
+	 * @return the problem, ready to be generated.
+	 */
+	public static FrequencyAllocationWCSP fromInstance(FrequencyAllocationInstance instance) {
+		FrequencyAllocationWCSP problem = new FrequencyAllocationWCSP();
+
+		problem.stations = new Station[instance.stationsNumber];
+		for (int i = 0; i < instance.stationsNumber; i++) {
+			problem.stations[i] = problem.new Station(instance.num[i], instance.region[i], instance.delta[i],
+				instance.transmitter(i), instance.receiver(i));
+		}
+
+		problem.interferences = new Interference[instance.interferencesNumber];
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			problem.interferences[i] = problem.new Interference(instance.interferenceX[i], instance.interferenceY[i], instance.interferenceDelta[i]);
+		}
+
+		problem.connection = new Connection[instance.connectionsNumber];
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			problem.connection[i] = problem.new Connection(instance.connectionX[i], instance.connectionY[i]);
+		}
+
+		problem.regions = instance.regions.clone();
+
+		return problem;
+	}
+
+	/**
+	 * @return the instance of the problem, to be preprocessed.
+	 */
+	private FrequencyAllocationInstance toInstance() {
+		int[] num = new int[this.stations.length], region = new int[this.stations.length], delta = new int[this.stations.length];
+		int[][] transmitter = new int[this.stations.length][], receiver = new int[this.stations.length][];
+		for (int i = 0; i < this.stations.length; i++) {
+			num[i] = this.stations[i].num;
+			region[i] = this.stations[i].region;
+			delta[i] = this.stations[i].delta;
+			transmitter[i] = this.stations[i].transmitter;
+			receiver[i] = this.stations[i].receiver;
+		}
+
+		int[][] interference = new int[this.interferences.length][];
+		for (int i = 0; i < this.interferences.length; i++) {
+			interference[i] = new int[] { this.interferences[i].x, this.interferences[i].y, this.interferences[i].Delta };
+		}
+
+		int[][] connection = new int[this.connection.length][];
+		for (int i = 0; i < this.connection.length; i++) {
+			connection[i] = new int[] { this.connection[i].x, this.connection[i].y };
+		}
+
+		return FrequencyAllocationInstance.of(num, region, delta, transmitter, receiver, interference, connection, this.regions);
+	}
+
+	/**
+	 * Resolve the output file name.
+	 * 
+	 * @param options the options, giving the output format.
+	 * @return the name of the output file.
+	 */
+	private String resolveResultFileName(WCSPOptions options) {
 		/* Resolve the name personalized for the output file */
 		String currentWorkName = this.resolveCurrentWorkName();
-		String resultFileName = "FrequencyAllocationWCSP_" + currentWorkName + ".wcsp";
-		
-		BufferedWriter writer = new BufferedWriter(new FileWriter(resultFileName));
 		
-		return writer;
+		return "FrequencyAllocationWCSP_" + currentWorkName + options.resultFileExtension();
+	}
+
+	/**
+	 * Create the output file and initialize the writer
+	 * of the format chosen in the options.
+	 * 
+	 * @param resultFileName the name of the output file.
+	 * @param options        the options, giving the output format.
+	 * @return the writer.
+	 * @throws IOException
+	 */
+	private WCSPOutput resolveWriter(String resultFileName, WCSPOptions options) throws IOException {
+		if (options.binaryOutput) {
+			return new WCSPBinaryWriter(resultFileName, options.compressOutput);
+		}
+
+		return new WCSPWriter(resultFileName);
 	}
 	
 	/**
@@ -153,10 +356,11 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 	
 	/**
 	 * Compute the stations spaced apart (Constraint 1).
+	 * Package-private, like the tuple loops, for the benchmarks.
 	 * 
 	 * @return the array of spaced stations.
 	 */
-	private SpacedStation[] computeSpacedStations() {
+	SpacedStation[] computeSpacedStations() {
 		int stationsNumber = this.stations.length;
 		SpacedStation[] spacedStations = new SpacedStation[stationsNumber];
 
@@ -173,14 +377,21 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 	 * 
 	 * The header is composed of:
 	 * - the problem name
-	 * - the number of variables (stations number)
+	 * - the number of variables (stations number, and the frequencies of the modeled regions)
 	 * - the maximum size used by all the domains (2 x the size of an transmitter/receiver)
-	 * - the number of cost functions (the interferences number + the connections number)
-	 * - the global initial upper bound of the problem (the number of cost functions + 1)
+	 * - the number of cost functions (the interferences number + the connections number,
+	 *   the cost functions of the modeled regions, and the ones of the preprocessing)
+	 * - the global initial upper bound of the problem (the number of cost functions + 1,
+	 *   and the maximum excess of the regions times their weight if they are soft),
+	 *   or the cost of the hint + 1 if it is lower
 	 * 
+	 * @param regionFrequencies the modeled regions.
+	 * @param hint              the assignment of FrequencyAllocationGreedy, or null.
+	 * @param options           the options, giving the mode of the regions.
+	 * @return the upper bound, which is the cost of the forbidden tuples.
 	 * @throws IOException
 	 **/
-	private void computeHeader(BufferedWriter writer) throws IOException {
+	int computeHeader(RegionFrequencies[] regionFrequencies, Hint hint, WCSPOutput writer, WCSPOptions options) throws IOException {
 		String problemName = new String("FrequencyAllocationProblem");
 		int variablesNumber = stations.length;
 		int maxDomainSize = 0;
@@ -194,8 +405,30 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 		}
 
 		int costFunctionNumber = interferences.length + connection.length;
-		int UB = interferences.length + connection.length + 1;
-		writer.write(String.format("%s %d %d %d %d\n", problemName, variablesNumber, maxDomainSize, costFunctionNumber, UB));
+		long UB = interferences.length + connection.length + 1;
+		if (this.forbiddenTuples != null) {
+			for (int[] tuples : this.forbiddenTuples) {
+				costFunctionNumber += tuples.length > 0 ? 1 : 0;
+			}
+		}
+
+		for (RegionFrequencies region : regionFrequencies) {
+			variablesNumber += region.frequencies.length;
+			maxDomainSize = Math.max(maxDomainSize, 2);
+			costFunctionNumber += region.linksNumber() + 1;
+			if (options.regions == WCSPOptions.Regions.SOFT) {
+				UB += (long) options.regionWeight * region.maxExcess();
+			}
+		}
+		if (hint != null) {
+			UB = Math.min(UB, hint.cost + 1);
+		}
+		if (UB > Integer.MAX_VALUE) {
+			throw new IOException("The upper bound " + UB + " is too large for the region weight " + options.regionWeight);
+		}
+
+		writer.writeHeader(problemName, variablesNumber, maxDomainSize, costFunctionNumber, (int) UB);
+		return (int) UB;
 	}
 
 	/**
@@ -205,17 +438,82 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 	 * The size has already been calculated in SpacedStation()
 	 * and is record in the variable tuplesNumber.
 	 * 
-	 * @param spacedStations  les stations espacées par delta.
-	 * @param writer          le flux de sortie.
+	 * @param spacedStations    les stations espacées par delta.
+	 * @param regionFrequencies les régions modélisées.
+	 * @param writer            le flux de sortie.
 	 * @throws IOException
 	 */
-	private void computeDomainSizes(SpacedStation[] spacedStations, BufferedWriter writer) throws IOException {
-		for (SpacedStation spacedStation : spacedStations) {
-			writer.write(String.format("%d ", spacedStation.tuplesNumber));
+	private void computeDomainSizes(SpacedStation[] spacedStations, RegionFrequencies[] regionFrequencies, WCSPOutput writer) throws IOException {
+		int variablesNumber = spacedStations.length;
+		for (RegionFrequencies region : regionFrequencies) {
+			variablesNumber += region.frequencies.length;
 		}
-		writer.newLine();
+
+		/* The variables of the frequencies of the regions are booleans */
+		int[] domainSizes = new int[variablesNumber];
+		Arrays.fill(domainSizes, 2);
+		for (int i = 0; i < spacedStations.length; i++) {
+			domainSizes[i] = spacedStations[i].tuplesNumber;
+		}
+		writer.writeDomainSizes(domainSizes);
 	}
 	
+	/**
+	 * Compute the tuples of each station outside its domain in the reduced
+	 * instance, that is whose transmitter or receiver was removed.
+	 * 
+	 * @param reducedInstance the instance reduced by the preprocessing.
+	 * @return the forbidden tuple indexes of each station, in increasing order.
+	 */
+	private int[][] computeForbiddenTuples(FrequencyAllocationInstance reducedInstance) {
+		SpacedStation[] spacedStations = this.computeSpacedStations();
+		int[][] forbiddenTuples = new int[spacedStations.length][];
+
+		for (int s = 0; s < spacedStations.length; s++) {
+			int[] transmitter = reducedInstance.transmitter(s), receiver = reducedInstance.receiver(s);
+			FrequencyAllocationInstance.IntList tuples = new FrequencyAllocationInstance.IntList();
+			for (int i = 0; i < spacedStations[s].tuplesNumber; i++) {
+				if (!contains(transmitter, spacedStations[s].transmitter[i]) || !contains(receiver, spacedStations[s].receiver[i])) {
+					tuples.add(i);
+				}
+			}
+			forbiddenTuples[s] = tuples.toArray();
+		}
+
+		return forbiddenTuples;
+	}
+
+	private static boolean contains(int[] frequencies, int frequency) {
+		for (int f : frequencies) {
+			if (f == frequency) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Write the unary cost functions forbidding the tuples removed by the
+	 * preprocessing, so that the value indexes are still the tuples of
+	 * SpacedStation of the original instance.
+	 * 
+	 * @param UB     the cost of the forbidden tuples.
+	 * @param writer
+	 * @throws IOException
+	 */
+	private void computeForbiddenTuplesConstraint(int UB, WCSPOutput writer) throws IOException {
+		for (int s = 0; s < this.forbiddenTuples.length; s++) {
+			if (this.forbiddenTuples[s].length == 0) {
+				continue;
+			}
+			writer.beginUnaryCostFunction(s, 0);
+			for (int i : this.forbiddenTuples[s]) {
+				writer.writeUnaryTuple(i, UB);
+			}
+			writer.endCostFunction();
+		}
+	}
+
 	/**
      * Calcule la contrainte d'interférences (C2).	
 	 * 
@@ -229,63 +527,229 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 	 * @param writer
 	 * @throws IOException
 	 */
-	private void computeInterferenceConstraint(SpacedStation[] spacedStations, BufferedWriter writer) throws IOException {
+	private void computeInterferenceConstraint(SpacedStation[] spacedStations, WCSPOutput writer, WCSPOptions options, GenerationMetrics metrics) throws IOException {
 		for (Interference interference : this.interferences) {
-			computeInterferenceConstraintIteration(interference, spacedStations, writer);
+			int tuplesNumber = computeInterferenceConstraintIteration(interference, spacedStations, writer, options);
+			metrics.costFunction("interference", tuplesNumber, (long) spacedStations[interference.x].tuplesNumber * spacedStations[interference.y].tuplesNumber);
 		}
 	}
 	
 	/**
+	 * Write the cost function of an interference. Its header is written
+	 * first, and the tuple count is back-filled by the writer.
+	 * 
+	 * If the complement tables are enabled and there are fewer forbidden
+	 * tuples than allowed ones, the forbidden tuples are written with a
+	 * cost of 1 and a default cost of 0, instead of the allowed tuples.
+	 * 
+	 * With the cache of the options, the table is computed once for the
+	 * domains of the stations and Delta, and written from the cache.
 	 * 
 	 * @param interference
 	 * @param spacedStations
 	 * @param writer
+	 * @param options
+	 * @return the number of tuples written.
 	 * @throws IOException
 	 */
-	private void computeInterferenceConstraintIteration(Interference interference, SpacedStation[] spacedStations, BufferedWriter writer) throws IOException {
-		StringBuilder contentSb = new StringBuilder();
+	int computeInterferenceConstraintIteration(Interference interference, SpacedStation[] spacedStations, WCSPOutput writer, WCSPOptions options) throws IOException {
+		if (options.tables != null) {
+			CompatibilityTables.Table table = this.resolveInterferenceTable(interference, spacedStations, options.tables);
+			long tuplesNumber = (long) table.xTuplesNumber * table.yTuplesNumber;
+			boolean complement = options.complementTables && table.forbiddenTuplesNumber < tuplesNumber - table.forbiddenTuplesNumber;
 
-		int tuplesNumber = computeInterferenceConstraintContent(interference, spacedStations, contentSb);
-		String header = computeInterferenceConstraintHeader(interference, tuplesNumber);
+			writer.beginCostFunction(interference.x, interference.y, complement ? 0 : 1);
+			table.write(complement, writer);
+			return writer.endCostFunction();
+		}
 
-		writer.write(header);
-		writer.write(contentSb.toString());
+		boolean complement = false;
+		if (options.complementTables) {
+			long tuplesNumber = (long) spacedStations[interference.x].tuplesNumber * spacedStations[interference.y].tuplesNumber;
+			long forbiddenTuplesNumber = computeInterferenceForbiddenTuplesNumber(interference, spacedStations);
+			complement = forbiddenTuplesNumber < tuplesNumber - forbiddenTuplesNumber;
+		}
+
+		writer.beginCostFunction(interference.x, interference.y, complement ? 0 : 1);
+		computeInterferenceConstraintContent(interference, spacedStations, complement, writer);
+		return writer.endCostFunction();
 	}
-	
+
 	/**
+	 * Find the table of an interference in the cache, or compute it and
+	 * add it to the cache.
 	 * 
 	 * @param interference
-	 * @param tuplesNumber
-	 * @return
+	 * @param spacedStations
+	 * @param tables         the cache.
+	 * @return the table of the interference.
+	 */
+	private CompatibilityTables.Table resolveInterferenceTable(Interference interference, SpacedStation[] spacedStations, CompatibilityTables tables) {
+		SpacedStation sx = spacedStations[interference.x];
+		SpacedStation sy = spacedStations[interference.y];
+		long key = CompatibilityTables.key(tables.domainId(sx), tables.domainId(sy), interference.Delta);
+
+		CompatibilityTables.Table table = key < 0 ? null : tables.get(key);
+		if (table == null) {
+			table = this.computeInterferenceTable(interference.Delta, sx, sy);
+			if (key >= 0) {
+				tables.put(key, table);
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * Compute the bitsets of the forbidden tuples of sy for each tuple of sx.
+	 * 
+	 * @param Delta the minimum gap between the frequencies.
+	 * @param sx
+	 * @param sy
+	 * @return the table.
 	 */
-	private String computeInterferenceConstraintHeader(Interference interference, int tuplesNumber) {
-		return String.format("2 %d %d 1 %d\n", interference.x, interference.y, tuplesNumber);
+	private CompatibilityTables.Table computeInterferenceTable(int Delta, SpacedStation sx, SpacedStation sy) {
+		int rowWords = CompatibilityTables.Table.rowWords(sy.tuplesNumber);
+		long[] forbidden = new long[sx.tuplesNumber * rowWords];
+		long[] marks = new long[rowWords];
+		long forbiddenTuplesNumber = 0;
+
+		for (int i = 0; i < sx.tuplesNumber; i++) {
+			forbiddenTuplesNumber += markInterferingTuples(sx.transmitter[i], Delta, sy, marks);
+			forbiddenTuplesNumber += markInterferingTuples(sx.receiver[i], Delta, sy, marks);
+			System.arraycopy(marks, 0, forbidden, i * rowWords, rowWords);
+			Arrays.fill(marks, 0L);
+		}
+
+		return new CompatibilityTables.Table(sx.tuplesNumber, sy.tuplesNumber, forbidden, forbiddenTuplesNumber);
 	}
 
 	/**
+	 * Mark the tuples of sy whose transmitter or receiver frequency
+	 * is at less than Delta of the frequency.
+	 * 
+	 * The tuples are found by binary search in the sorted frequencies
+	 * of sy, so that only the forbidden window is visited.
+	 * 
+	 * @param frequency the frequency of the other station.
+	 * @param Delta     the minimum gap between the frequencies.
+	 * @param sy        the marked station.
+	 * @param marks     the bitset of the marked tuples of sy.
+	 * @return the number of tuples which weren't already marked.
+	 */
+	private int markInterferingTuples(int frequency, int Delta, SpacedStation sy, long[] marks) {
+		return markWindow(sy.sortedTransmitter, sy.transmitterOrder, frequency - Delta + 1, frequency + Delta, marks) +
+			markWindow(sy.sortedReceiver, sy.receiverOrder, frequency - Delta + 1, frequency + Delta, marks);
+	}
+
+	/**
+	 * Mark the tuples whose frequency is in [from, to[.
+	 * 
+	 * @param sorted the sorted frequencies.
+	 * @param order  the tuple indexes sorted by frequency.
+	 * @param from   the lowest frequency of the window.
+	 * @param to     the frequency after the window.
+	 * @param marks  the bitset of the marked tuples.
+	 * @return the number of tuples which weren't already marked.
+	 */
+	private int markWindow(int[] sorted, int[] order, int from, int to, long[] marks) {
+		int newlyMarked = 0;
+
+		for (int k = lowerBound(sorted, from); k < sorted.length && sorted[k] < to; k++) {
+			int j = order[k];
+			long bit = 1L << j;
+			if ((marks[j >>> 6] & bit) == 0) {
+				marks[j >>> 6] |= bit;
+				newlyMarked++;
+			}
+		}
+
+		return newlyMarked;
+	}
+
+	/**
+	 * @param sorted the sorted values.
+	 * @param value  the searched value.
+	 * @return the index of the first value greater or equal to value.
+	 */
+	private int lowerBound(int[] sorted, int value) {
+		int low = 0;
+		int high = sorted.length;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Compute the number of forbidden tuples of an interference,
+	 * without enumerating the allowed ones.
+	 * 
+	 * @param interference
+	 * @param spacedStations
+	 * @return the number of forbidden tuples.
+	 */
+	private long computeInterferenceForbiddenTuplesNumber(Interference interference, SpacedStation[] spacedStations) {
+		SpacedStation sx = spacedStations[interference.x];
+		SpacedStation sy = spacedStations[interference.y];
+		long[] marks = new long[(sy.tuplesNumber + 63) >>> 6];
+		long forbiddenTuplesNumber = 0;
+
+		for (int i = 0; i < sx.tuplesNumber; i++) {
+			forbiddenTuplesNumber += markInterferingTuples(sx.transmitter[i], interference.Delta, sy, marks);
+			forbiddenTuplesNumber += markInterferingTuples(sx.receiver[i], interference.Delta, sy, marks);
+			Arrays.fill(marks, 0L);
+		}
+
+		return forbiddenTuplesNumber;
+	}
+
+	/**
+	 * 
+	 * For each tuple i of x, the tuples of y which are too close of
+	 * the frequencies of i are marked from the sorted frequencies of y,
+	 * then the unmarked tuples (or the marked ones for a complement table)
+	 * are written in the order of their indexes.
 	 * 
 	 * @param interference
 	 * @param spacedStations
-	 * @param sb
+	 * @param complement     if true, write the forbidden tuples instead of the allowed ones.
+	 * @param writer
 	 * @return
 	 */
-	private int computeInterferenceConstraintContent(Interference interference, SpacedStation[] spacedStations, StringBuilder sb) {
+	int computeInterferenceConstraintContent(Interference interference, SpacedStation[] spacedStations, boolean complement, WCSPOutput writer) {
 		SpacedStation sx = spacedStations[interference.x];
 		SpacedStation sy = spacedStations[interference.y];
+		long[] marks = new long[(sy.tuplesNumber + 63) >>> 6];
 		int tuplesNumber = 0;
 
 		for (int i = 0; i < sx.tuplesNumber; i++) {
-			for (int j = 0; j < sy.tuplesNumber; j++) {
-				if (Math.abs(sx.transmitter[i] - sy.transmitter[j]) < interference.Delta ||
-					Math.abs(sx.transmitter[i] - sy.receiver[j]) < interference.Delta ||
-					Math.abs(sx.receiver[i] - sy.transmitter[j]) < interference.Delta ||
-					Math.abs(sx.receiver[i] - sy.receiver[j]) < interference.Delta) {
-					continue;
+			markInterferingTuples(sx.transmitter[i], interference.Delta, sy, marks);
+			markInterferingTuples(sx.receiver[i], interference.Delta, sy, marks);
+
+			for (int w = 0; w < marks.length; w++) {
+				long word = complement ? marks[w] : ~marks[w];
+				if (w == marks.length - 1 && (sy.tuplesNumber & 63) != 0) {
+					/* Ignore the bits after the last tuple */
+					word &= (1L << (sy.tuplesNumber & 63)) - 1;
 				}
 
-				sb.append(String.format("%d %d 0\n", i, j));
-				tuplesNumber++;
+				while (word != 0) {
+					int j = (w << 6) + Long.numberOfTrailingZeros(word);
+					writer.writeTuple(i, j, complement ? 1 : 0);
+					tuplesNumber++;
+					word &= word - 1;
+				}
 			}
+
+			Arrays.fill(marks, 0L);
 		}
 
 		return tuplesNumber;
@@ -303,37 +767,37 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 	 * @param writer
 	 * @throws IOException
 	 */
-	private void computeConnectionConstraint(SpacedStation[] spacedStations, BufferedWriter writer) throws IOException {
+	private void computeConnectionConstraint(SpacedStation[] spacedStations, WCSPOutput writer, GenerationMetrics metrics) throws IOException {
 		for (Connection connection : this.connection) {
-			computeConnectionConstraintIteration(connection, spacedStations, writer);
+			int tuplesNumber = computeConnectionConstraintIteration(connection, spacedStations, writer);
+			metrics.costFunction("connection", tuplesNumber, (long) spacedStations[connection.x].tuplesNumber * spacedStations[connection.y].tuplesNumber);
 		}
 	}
 	
 	/**
+	 * Write the cost function of a connection. Its header is written
+	 * first, and the tuple count is back-filled by the writer.
 	 * 
 	 * @param connection
 	 * @param spacedStations
 	 * @param writer
+	 * @return the number of tuples written.
 	 * @throws IOException
 	 */
-	private void computeConnectionConstraintIteration(Connection connection, SpacedStation[] spacedStations, BufferedWriter writer) throws IOException {
-		StringBuilder contentSb = new StringBuilder();
-
-		int tuplesNumber = computeConnectionConstraintIterationContent(connection, spacedStations, contentSb);
-		String header = computeConnectionConstraintIterationHeader(connection, tuplesNumber);
-
-		writer.write(header);
-		writer.write(contentSb.toString());
+	int computeConnectionConstraintIteration(Connection connection, SpacedStation[] spacedStations, WCSPOutput writer) throws IOException {
+		writer.beginCostFunction(connection.x, connection.y, 1);
+		computeConnectionConstraintIterationContent(connection, spacedStations, writer);
+		return writer.endCostFunction();
 	}
 
 	/**
 	 * 
 	 * @param connection
 	 * @param spacedStations
-	 * @param sb
+	 * @param writer
 	 * @return
 	 */
-	private int computeConnectionConstraintIterationContent(Connection connection, SpacedStation[] spacedStations, StringBuilder sb) {
+	int computeConnectionConstraintIterationContent(Connection connection, SpacedStation[] spacedStations, WCSPOutput writer) {
 		SpacedStation sx = spacedStations[connection.x];
 		SpacedStation sy = spacedStations[connection.y];
 
@@ -346,7 +810,7 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 					continue;
 				}
 
-				sb.append(String.format("%d %d 0\n", i, j));
+				writer.writeTuple(i, j, 0);
 				tuplesNumber++;
 			}
 		}
@@ -355,30 +819,319 @@ public class FrequencyAllocationWCSP implements ProblemAPI {
 	}
 
 	/**
+	 * Compute the regions which can exceed their limit, those with more
+	 * frequencies than their limit. The variables of their frequencies
+	 * are numbered after the stations.
 	 * 
-	 * @param connection
-	 * @param tuplesNumber
-	 * @return
+	 * @param spacedStations
+	 * @param options        the options, giving the mode of the regions.
+	 * @return the modeled regions, none if the regions are ignored.
 	 */
-	private String computeConnectionConstraintIterationHeader(Connection connection, int tuplesNumber) {
-		return String.format("2 %d %d 1 %d\n", connection.x, connection.y, tuplesNumber);
+	private RegionFrequencies[] computeRegionFrequencies(SpacedStation[] spacedStations, WCSPOptions options) {
+		if (options.regions == WCSPOptions.Regions.NONE) {
+			return new RegionFrequencies[0];
+		}
+
+		List<RegionFrequencies> regionFrequencies = new ArrayList<>();
+		int nextVariable = spacedStations.length;
+		for (int r = 0; r < this.regions.length; r++) {
+			int region = r;
+			int[] regionStations = IntStream.range(0, spacedStations.length).filter(i -> spacedStations[i].region == region).toArray();
+			RegionFrequencies frequencies = new RegionFrequencies(region, this.regions[region], regionStations, spacedStations, nextVariable);
+			if (frequencies.maxExcess() > 0) {
+				regionFrequencies.add(frequencies);
+				nextVariable += frequencies.frequencies.length;
+			}
+		}
+
+		return regionFrequencies.toArray(new RegionFrequencies[0]);
 	}
 
-	public void model() {
+	/**
+	 * Constraint 3:
+	 * Write the cost functions of the regions.
+	 * 
+	 * A station using a frequency forces the variable of the frequency in
+	 * its region to 1: the binary cost function of a station and a frequency
+	 * forbids the pairs of the station having the frequency when the variable
+	 * is 0. The wamong cost function then counts the variables at 1, with a
+	 * forbidden cost (hard) or a cost of weight per frequency above the limit
+	 * (soft, lin).
+	 * 
+	 * @param spacedStations
+	 * @param regionFrequencies the modeled regions.
+	 * @param UB                the cost of the forbidden tuples.
+	 * @param writer
+	 * @param options           the options, giving the mode of the regions.
+	 * @param metrics           the metrics of the generation.
+	 * @throws IOException
+	 */
+	private void computeRegionConstraint(SpacedStation[] spacedStations, RegionFrequencies[] regionFrequencies, int UB,
+			WCSPOutput writer, WCSPOptions options, GenerationMetrics metrics) throws IOException {
+		for (RegionFrequencies region : regionFrequencies) {
+			for (int s = 0; s < region.stations.length; s++) {
+				SpacedStation station = spacedStations[region.stations[s]];
+				for (int frequency : region.stationFrequencies[s]) {
+					writer.beginCostFunction(region.stations[s], region.variable(frequency), 0);
+					for (int i = 0; i < station.tuplesNumber; i++) {
+						if (station.transmitter[i] == frequency || station.receiver[i] == frequency) {
+							writer.writeTuple(i, 0, UB);
+						}
+					}
+					metrics.costFunction("region", writer.endCostFunction(), 2L * station.tuplesNumber);
+				}
+			}
+
+			int[] scope = IntStream.range(region.firstVariable, region.firstVariable + region.frequencies.length).toArray();
+			String cost = options.regions == WCSPOptions.Regions.SOFT ? "lin " + options.regionWeight : "hard " + UB;
+			writer.writeGlobalCostFunction(scope, "wamong " + cost + " 1 1 0 " + region.limit);
+			metrics.count("wamong", 1);
+		}
+	}
+
+	/**
+	 * Compute the assignment of FrequencyAllocationGreedy, whose pairs are
+	 * the tuples of SpacedStation. The variable of a frequency of a region
+	 * is 1 if a station of the region uses it.
+	 * 
+	 * Its cost is the number of violated interferences and connections,
+	 * plus the weighted excess of the soft regions. An assignment exceeding
+	 * the limit of a hard region isn't a hint.
+	 * 
+	 * @param spacedStations
+	 * @param regionFrequencies the modeled regions.
+	 * @param options           the options, giving the mode of the regions.
+	 * @return the hint, or null.
+	 */
+	private Hint computeHint(SpacedStation[] spacedStations, RegionFrequencies[] regionFrequencies, WCSPOptions options) {
+		FrequencyAllocationGreedy greedy = new FrequencyAllocationGreedy(this.reducedInstance != null ? this.reducedInstance : this.toInstance(), null, 0);
+		if (!greedy.hasPairs()) {
+			return null;
+		}
+
+		int[] assignment = greedy.solve();
+		FrequencyAllocationEvaluator evaluator = greedy.evaluator();
+		if (this.reducedInstance != null) {
+			/* The pairs of the reduced domains, as tuples of the original ones */
+			for (int s = 0; s < spacedStations.length; s++) {
+				int t = evaluator.transmitter(s, assignment[s]), r = evaluator.receiver(s, assignment[s]);
+				int i = 0;
+				while (spacedStations[s].transmitter[i] != t || spacedStations[s].receiver[i] != r) {
+					i++;
+				}
+				assignment[s] = i;
+			}
+		}
+		long cost = evaluator.violations() - evaluator.regionViolations();
+		if (options.regions == WCSPOptions.Regions.HARD && evaluator.regionViolations() > 0) {
+			return null;
+		}
+		if (options.regions == WCSPOptions.Regions.SOFT) {
+			cost += (long) options.regionWeight * evaluator.regionViolations();
+		}
+
+		int variablesNumber = spacedStations.length;
+		for (RegionFrequencies region : regionFrequencies) {
+			variablesNumber += region.frequencies.length;
+		}
+		int[] values = Arrays.copyOf(assignment, variablesNumber);
+		for (RegionFrequencies region : regionFrequencies) {
+			for (int station : region.stations) {
+				values[region.variable(spacedStations[station].transmitter[assignment[station]])] = 1;
+				values[region.variable(spacedStations[station].receiver[assignment[station]])] = 1;
+			}
+		}
+
+		return new Hint(values, cost);
+	}
+
+	/**
+	 * Write the cost functions of indexes [from, to[ in an in-memory writer.
+	 * The interferences come first, followed by the connections. They are
+	 * recorded in a part of the metrics, merged once the chunk is done.
+	 * 
+	 * @param spacedStations
+	 * @param from           the index of the first cost function.
+	 * @param to             the index after the last cost function.
+	 * @param chunk          the in-memory writer.
+	 * @param options
+	 * @param metrics        the metrics of the generation.
+	 * @return the in-memory writer.
+	 * @throws IOException
+	 */
+	private WCSPOutput computeCostFunctionsChunk(SpacedStation[] spacedStations, int from, int to, WCSPOutput chunk, WCSPOptions options,
+			GenerationMetrics metrics) throws IOException {
+		GenerationMetrics part = metrics.part();
+		for (int i = from; i < to; i++) {
+			if (i < this.interferences.length) {
+				Interference interference = this.interferences[i];
+				int tuplesNumber = computeInterferenceConstraintIteration(interference, spacedStations, chunk, options);
+				part.costFunction("interference", tuplesNumber, (long) spacedStations[interference.x].tuplesNumber * spacedStations[interference.y].tuplesNumber);
+			} else {
+				Connection connection = this.connection[i - this.interferences.length];
+				int tuplesNumber = computeConnectionConstraintIteration(connection, spacedStations, chunk);
+				part.costFunction("connection", tuplesNumber, (long) spacedStations[connection.x].tuplesNumber * spacedStations[connection.y].tuplesNumber);
+			}
+		}
+		metrics.merge(part);
+
+		return chunk;
+	}
+
+	/**
+	 * Compute the interference and connection cost functions with several
+	 * workers. The cost functions are split in contiguous chunks, built in
+	 * memory by the workers, and written in their original order, so that
+	 * the file is the same as with a single worker.
+	 * 
+	 * @param spacedStations
+	 * @param writer
+	 * @param options        the options, giving the number of workers.
+	 * @param metrics        the metrics of the generation.
+	 * @throws IOException
+	 */
+	private void computeCostFunctionsInParallel(SpacedStation[] spacedStations, WCSPOutput writer, WCSPOptions options, GenerationMetrics metrics) throws IOException {
+		int workersNumber = options.workersNumber;
+		int costFunctionsNumber = this.interferences.length + this.connection.length;
+		int chunksNumber = Math.min(costFunctionsNumber, workersNumber * CHUNKS_PER_WORKER);
+		ForkJoinPool pool = new ForkJoinPool(workersNumber);
+
+		try {
+			List<Future<WCSPOutput>> chunks = new ArrayList<>(chunksNumber);
+			for (int i = 0; i < chunksNumber; i++) {
+				int from = (int) ((long) costFunctionsNumber * i / chunksNumber);
+				int to = (int) ((long) costFunctionsNumber * (i + 1) / chunksNumber);
+				WCSPOutput chunk = writer.newChunk();
+				chunks.add(pool.submit(() -> computeCostFunctionsChunk(spacedStations, from, to, chunk, options, metrics)));
+			}
+
+			/* The chunks are written as soon as they, and the ones before them, are done */
+			for (Future<WCSPOutput> chunk : chunks) {
+				writer.write(chunk.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while computing the cost functions", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compute the cost functions", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write the WCSP file of the problem, in the text
+	 * or binary format chosen in the options.
+	 * 
+	 * If the options ask for the metrics, the time of each phase is
+	 * recorded, with the interferences and the connections as a single
+	 * phase when they are computed in parallel.
+	 * 
+	 * @param resultFileName the name of the output file.
+	 * @param options        the generation options.
+	 * @throws IOException
+	 */
+	private void computeProblem(String resultFileName, WCSPOptions options) throws IOException {
+		String extension = options.resultFileExtension();
+		String baseName = resultFileName.endsWith(extension) ? resultFileName.substring(0, resultFileName.length() - extension.length()) : resultFileName;
+		GenerationMetrics metrics = options.metrics ? new GenerationMetrics("wcsp", new File(baseName).getName()) : GenerationMetrics.DISABLED;
+		long start = System.nanoTime();
+
 		SpacedStation[] spacedStations = this.computeSpacedStations();
+		start = metrics.phase("spacedStations", start);
+		RegionFrequencies[] regionFrequencies = this.computeRegionFrequencies(spacedStations, options);
+		start = metrics.phase("regionFrequencies", start);
+		Hint hint = options.greedyBound ? this.computeHint(spacedStations, regionFrequencies, options) : null;
+		start = metrics.phase("hint", start);
+		WCSPOutput writer = this.resolveWriter(resultFileName, options);
 
 		try {
-			BufferedWriter writer = this.resolveWriter();
-			
-			this.computeHeader(writer);
-			
-			this.computeDomainSizes(spacedStations, writer);
+			int UB = this.computeHeader(regionFrequencies, hint, writer, options);
+			start = metrics.phase("header", start);
 
-			this.computeInterferenceConstraint(spacedStations, writer);
-			
-			this.computeConnectionConstraint(spacedStations, writer);
+			this.computeDomainSizes(spacedStations, regionFrequencies, writer);
+			start = metrics.phase("domainSizes", start);
 
+			if (this.forbiddenTuples != null) {
+				this.computeForbiddenTuplesConstraint(UB, writer);
+				start = metrics.phase("forbiddenTuples", start);
+			}
+
+			if (options.workersNumber > 1) {
+				this.computeCostFunctionsInParallel(spacedStations, writer, options, metrics);
+				start = metrics.phase("costFunctions", start);
+			} else {
+				this.computeInterferenceConstraint(spacedStations, writer, options, metrics);
+				start = metrics.phase("interferences", start);
+
+				this.computeConnectionConstraint(spacedStations, writer, metrics);
+				start = metrics.phase("connections", start);
+			}
+
+			this.computeRegionConstraint(spacedStations, regionFrequencies, UB, writer, options, metrics);
+			start = metrics.phase("regions", start);
+			metrics.count("bytes", writer.offset());
+		} finally {
 			writer.close();
+		}
+		metrics.phase("close", start);
+
+		if (hint != null) {
+			FrequencyAllocationGreedy.writeSolution(hint.values, new File(baseName + ".sol"));
+		}
+
+		if (options.metrics) {
+			metrics.count("fileBytes", new File(resultFileName).length());
+			metrics.export(baseName + ".metrics");
+		}
+	}
+
+	/**
+	 * Generate the WCSP file of the problem, after the preprocessing
+	 * chosen in the options (see FrequencyAllocationPreprocessor), and
+	 * with the connected stations merged if the options ask for it
+	 * (see FrequencyAllocationLinks).
+	 * 
+	 * Without merge, the domains of the stations are kept, and the tuples
+	 * removed by the preprocessing are forbidden by unary cost functions,
+	 * so that the value indexes of the solutions are the tuples of
+	 * SpacedStation of the original instance, as the verifier reads them.
+	 * 
+	 * @param resultFileName the name of the output file.
+	 * @param options        the generation options.
+	 * @throws IOException
+	 */
+	public void generate(String resultFileName, WCSPOptions options) throws IOException {
+		if (options.preprocessing == WCSPOptions.Preprocessing.NONE && !options.mergeConnections) {
+			this.computeProblem(resultFileName, options);
+			return;
+		}
+
+		FrequencyAllocationInstance instance = FrequencyAllocationPreprocessor.preprocess(this.toInstance(), options.preprocessing);
+		if (options.mergeConnections) {
+			new FrequencyAllocationLinks(instance).generate(resultFileName, options);
+		} else {
+			FrequencyAllocationWCSP problem = fromInstance(instance);
+			problem.stations = this.stations;
+			problem.reducedInstance = instance;
+			problem.forbiddenTuples = problem.computeForbiddenTuples(instance);
+			problem.computeProblem(resultFileName, options);
+		}
+	}
+
+	/**
+	 * Generate the WCSP file named after the work name, with
+	 * the options given by the system properties (see WCSPOptions).
+	 * If the property wcsp.data names a JSON file, the data is loaded
+	 * from it by FrequencyAllocationInstance, instead of the data bound
+	 * by the compiler.
+	 */
+	public void model() {
+		try {
+			WCSPOptions options = WCSPOptions.fromSystemProperties();
+			String dataFileName = System.getProperty(DATA_PROPERTY);
+			FrequencyAllocationWCSP problem = dataFileName == null ? this : fromInstance(FrequencyAllocationInstance.load(dataFileName));
+			problem.generate(this.resolveResultFileName(options), options);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
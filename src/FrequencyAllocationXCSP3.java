@@ -29,10 +29,47 @@ package org.xcsp.modeler.problems;
 import org.xcsp.common.IVar.Var;
 import org.xcsp.modeler.api.ProblemAPI;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 class FrequencyAllocationXCSP3 implements ProblemAPI {
+
+	/* If this system property is true, the instance is reduced by FrequencyAllocationPreprocessor before being modeled */
+	static final String PREPROCESSING_PROPERTY = "xcsp3.preprocess";
+
+	/* If this system property is true, the stations linked by connections share their variables (see FrequencyAllocationLinks) */
+	static final String MERGE_CONNECTIONS_PROPERTY = "xcsp3.mergeConnections";
+
+	/* If this system property names a JSON file, the data is loaded from it by FrequencyAllocationInstance instead of being bound by the compiler */
+	static final String DATA_PROPERTY = "xcsp3.data";
+
+	/* If this system property is true, a feasible assignment of FrequencyAllocationGreedy bounds the domains of the objective variables */
+	static final String GREEDY_BOUND_PROPERTY = "xcsp3.greedyBound";
+
+	/* If this system property is true, the interchangeable stations found by FrequencyAllocationAnalysis are ordered lexicographically */
+	static final String SYMMETRY_BREAKING_PROPERTY = "xcsp3.breakSymmetries";
+
+	/* If this system property is set, the metrics of the modeling (see GenerationMetrics) are written in its value with the extensions .json and .prom */
+	static final String METRICS_PROPERTY = "xcsp3.metrics";
+
+	/* If this system property is true, the constraints 1, 2 and 4 are posted as binary tables instead of intension expressions */
+	static final String EXTENSION_PROPERTY = "xcsp3.extension";
+
+	/* This system property gives the maximum number of tuples of a table, above which the relation is posted in intension */
+	static final String EXTENSION_LIMIT_PROPERTY = "xcsp3.extensionLimit";
+
+	/* If this system property is true, the frequencies of the cliques of interfering stations found by FrequencyAllocationAnalysis are all different */
+	static final String CLIQUES_PROPERTY = "xcsp3.cliques";
+
+	/* The relation of a binary constraint, between the values of its two variables */
+	private interface Relation {
+		boolean allows(int a, int b);
+	}
+
 	Station stations[];
 	int regions[];
 	Interference interferences[];
@@ -69,10 +106,190 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		}
 	}
 
+	/**
+	 * @return the instance of the data of the problem.
+	 */
+	private FrequencyAllocationInstance toInstance() {
+		int[] num = new int[stations.length], region = new int[stations.length], delta = new int[stations.length];
+		int[][] transmitter = new int[stations.length][], receiver = new int[stations.length][];
+		for (int i = 0; i < stations.length; i++) {
+			num[i] = stations[i].num;
+			region[i] = stations[i].region;
+			delta[i] = stations[i].delta;
+			transmitter[i] = stations[i].transmitter;
+			receiver[i] = stations[i].receiver;
+		}
+		int[][] interference = Arrays.stream(interferences).map(it -> new int[] { it.x, it.y, it.Delta }).toArray(int[][]::new);
+		int[][] connections = Arrays.stream(connection).map(c -> new int[] { c.x, c.y }).toArray(int[][]::new);
+
+		return FrequencyAllocationInstance.of(num, region, delta, transmitter, receiver, interference, connections, regions);
+	}
+
+	/**
+	 * Enforce the arc consistency on the interferences and the connections,
+	 * remove the frequencies without support from the domains, and the
+	 * constraints satisfied by all the remaining frequencies.
+	 * The instance is kept as it is if it can't be satisfied.
+	 */
+	private void preprocess() {
+		FrequencyAllocationPreprocessor preprocessor = new FrequencyAllocationPreprocessor(toInstance(), true);
+		FrequencyAllocationInstance reduced = preprocessor.run();
+		if (preprocessor.isConsistent()) {
+			setInstance(reduced);
+		}
+	}
+
+	/**
+	 * Replace the data of the problem by an instance.
+	 * 
+	 * @param instance the instance.
+	 */
+	private void setInstance(FrequencyAllocationInstance instance) {
+		stations = new Station[instance.stationsNumber];
+		for (int i = 0; i < instance.stationsNumber; i++) {
+			stations[i] = new Station(instance.num[i], instance.region[i], instance.delta[i], instance.transmitter(i), instance.receiver(i));
+		}
+		interferences = new Interference[instance.interferencesNumber];
+		for (int i = 0; i < instance.interferencesNumber; i++) {
+			interferences[i] = new Interference(instance.interferenceX[i], instance.interferenceY[i], instance.interferenceDelta[i]);
+		}
+		connection = new Connection[instance.connectionsNumber];
+		for (int i = 0; i < instance.connectionsNumber; i++) {
+			connection[i] = new Connection(instance.connectionX[i], instance.connectionY[i]);
+		}
+		regions = instance.regions.clone();
+	}
+
+	/**
+	 * Post a binary relation as a table, in the smallest of its forms: the
+	 * conflicts, or the supports where a value of x compatible with all the
+	 * values of y is a starred tuple. A relation satisfied by all the pairs
+	 * isn't posted.
+	 * 
+	 * @param x         the first variable.
+	 * @param xValues   the domain of x.
+	 * @param y         the second variable.
+	 * @param yValues   the domain of y.
+	 * @param relation  the relation.
+	 * @param maxTuples the maximum number of tuples of the table.
+	 * @param metrics   the metrics of the modeling.
+	 * @return false if the table would be too large, or if x and y are the
+	 *         same variable, the relation having to be posted in intension.
+	 */
+	private boolean table(Var x, int[] xValues, Var y, int[] yValues, Relation relation, int maxTuples, GenerationMetrics metrics) {
+		if (x == y) {
+			return false;
+		}
+
+		int[] xs = Arrays.stream(xValues).sorted().distinct().toArray();
+		int[] ys = Arrays.stream(yValues).sorted().distinct().toArray();
+		FrequencyAllocationInstance.IntList supports = new FrequencyAllocationInstance.IntList();
+		FrequencyAllocationInstance.IntList conflicts = new FrequencyAllocationInstance.IntList();
+		for (int a : xs) {
+			int supportsSize = supports.size();
+			for (int b : ys) {
+				if (relation.allows(a, b)) {
+					supports.add(a);
+					supports.add(b);
+				} else {
+					conflicts.add(a);
+					conflicts.add(b);
+				}
+			}
+
+			/* The supports of a compatible with every value of y are replaced by (a, *) */
+			if (supports.size() - supportsSize == 2 * ys.length) {
+				supports.truncate(supportsSize);
+				supports.add(a);
+				supports.add(STAR);
+			}
+		}
+
+		if (conflicts.size() == 0) {
+			metrics.count("entailedTables", 1);
+			return true;
+		}
+
+		boolean negative = conflicts.size() < supports.size();
+		FrequencyAllocationInstance.IntList list = negative ? conflicts : supports;
+		if (list.size() / 2 > maxTuples) {
+			return false;
+		}
+
+		int[][] tuples = new int[list.size() / 2][];
+		for (int t = 0; t < tuples.length; t++) {
+			tuples[t] = new int[] { list.get(2 * t), list.get(2 * t + 1) };
+		}
+		extension(vars(x, y), tuples, !negative);
+		metrics.costFunction(negative ? "conflicts" : "supports", tuples.length, (long) xs.length * ys.length);
+		return true;
+	}
+
+	/**
+	 * @return true if the station has its own variables, that is without
+	 *         links, or if it is the root of its group of linked stations.
+	 */
+	private static boolean isRoot(FrequencyAllocationLinks links, int station) {
+		return links == null || links.root(links.variableOf(station)) == station;
+	}
+
 	@Override
 	public void model() {
-		Var[] transmitters_var = array("T", size(stations.length), i -> dom(stations[i].transmitter), "T[i] is the model used for the ith station transmitter");
-		Var[] receivers_var = array("R", size(stations.length), i -> dom(stations[i].receiver), "R[i] is the model used for the ith station receiver");
+		String dataFileName = System.getProperty(DATA_PROPERTY);
+		String model = modelVariant("m1") ? "m1" : modelVariant("m2") ? "m2" : modelVariant("m3") ? "m3" : null;
+		String metricsFileName = System.getProperty(METRICS_PROPERTY);
+		GenerationMetrics metrics = metricsFileName == null ? GenerationMetrics.DISABLED
+				: new GenerationMetrics("xcsp3" + (model == null ? "" : "-" + model),
+						dataFileName == null ? "FrequencyAllocationXCSP3" : new File(dataFileName).getName().replaceFirst("\\.json$", ""));
+		long start = System.nanoTime();
+
+		if (dataFileName != null) {
+			try {
+				setInstance(FrequencyAllocationInstance.load(dataFileName));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		start = metrics.phase("data", start);
+
+		if (Boolean.getBoolean(PREPROCESSING_PROPERTY)) {
+			preprocess();
+		}
+		start = metrics.phase("preprocessing", start);
+
+		FrequencyAllocationLinks links = Boolean.getBoolean(MERGE_CONNECTIONS_PROPERTY) ? new FrequencyAllocationLinks(toInstance()) : null;
+		start = metrics.phase("links", start);
+		metrics.count("stations", stations.length);
+		metrics.count("interferences", interferences.length);
+		metrics.count("connections", connection.length);
+		metrics.count("regions", regions.length);
+
+		/* With the links, only the root of each group of connected stations has its variables */
+		Var[] transmitters_root = array("T", size(stations.length), i -> isRoot(links, i) ? dom(stations[i].transmitter) : null, "T[i] is the model used for the ith station transmitter");
+		Var[] receivers_root = array("R", size(stations.length), i -> isRoot(links, i) ? dom(stations[i].receiver) : null, "R[i] is the model used for the ith station receiver");
+
+		/* The other stations take the variables of their root, swapped if their pairs are reversed */
+		Var[] transmitters_var = new Var[stations.length];
+		Var[] receivers_var = new Var[stations.length];
+		for (int i = 0; i < stations.length; i++) {
+			int root = links == null ? i : links.root(links.variableOf(i));
+			boolean reversed = links != null && links.isReversed(i);
+			transmitters_var[i] = reversed ? receivers_root[root] : transmitters_root[root];
+			receivers_var[i] = reversed ? transmitters_root[root] : receivers_root[root];
+		}
+		start = metrics.phase("variables", start);
+
+		/* The domains of the variables of each station, to compute the tables */
+		boolean extensionTables = Boolean.getBoolean(EXTENSION_PROPERTY);
+		int maxTuples = Integer.getInteger(EXTENSION_LIMIT_PROPERTY, 10000);
+		int[][] transmitters_values = new int[stations.length][];
+		int[][] receivers_values = new int[stations.length][];
+		for (int i = 0; i < stations.length; i++) {
+			Station root = stations[links == null ? i : links.root(links.variableOf(i))];
+			boolean reversed = links != null && links.isReversed(i);
+			transmitters_values[i] = reversed ? root.receiver : root.transmitter;
+			receivers_values[i] = reversed ? root.transmitter : root.receiver;
+		}
 
 		/**
 		 * Constraint 1:
@@ -80,9 +297,22 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		 * the station i must be equal to delta i.
 		 */
 		forall(range(stations.length), i -> {
-			/* equal() already use intension() */
-			equal(stations[i].delta, dist(transmitters_var[i], receivers_var[i]));
+			if (!isRoot(links, i)) {
+				return;
+			}
+
+			if (links != null && links.size(links.variableOf(i)) > 1) {
+				/* The pairs of the root which give every station of its group a valid pair */
+				int[][] values = links.values(links.variableOf(i));
+				extension(vars(transmitters_var[i], receivers_var[i]), values);
+				metrics.costFunction("link", values.length, (long) stations[i].transmitter.length * stations[i].receiver.length);
+			} else if (!extensionTables || !table(transmitters_var[i], transmitters_values[i], receivers_var[i], receivers_values[i],
+					(t, r) -> Math.abs(t - r) == stations[i].delta, maxTuples, metrics)) {
+				/* equal() already use intension() */
+				equal(stations[i].delta, dist(transmitters_var[i], receivers_var[i]));
+			}
 		});
+		start = metrics.phase("constraint1", start);
 
 		/**
 		 * Constraint 2:
@@ -96,6 +326,25 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		 * between the stations i and j.
 		 */
 		forall(range(interferences.length), i -> {
+			if (extensionTables) {
+				/* The four gaps as binary tables, those too large in intension */
+				int x = interferences[i].x, y = interferences[i].y, Delta = interferences[i].Delta;
+				Relation spaced = (a, b) -> Math.abs(a - b) >= Delta;
+				if (!table(transmitters_var[x], transmitters_values[x], receivers_var[y], receivers_values[y], spaced, maxTuples, metrics)) {
+					intension(ge(dist(transmitters_var[x], receivers_var[y]), Delta));
+				}
+				if (!table(transmitters_var[y], transmitters_values[y], receivers_var[x], receivers_values[x], spaced, maxTuples, metrics)) {
+					intension(ge(dist(transmitters_var[y], receivers_var[x]), Delta));
+				}
+				if (!table(transmitters_var[y], transmitters_values[y], transmitters_var[x], transmitters_values[x], spaced, maxTuples, metrics)) {
+					intension(ge(dist(transmitters_var[y], transmitters_var[x]), Delta));
+				}
+				if (!table(receivers_var[y], receivers_values[y], receivers_var[x], receivers_values[x], spaced, maxTuples, metrics)) {
+					intension(ge(dist(receivers_var[y], receivers_var[x]), Delta));
+				}
+				return;
+			}
+
 			/* Add an intension constraint */
 			intension(and(
 					ge(dist(transmitters_var[interferences[i].x], receivers_var[interferences[i].y]), interferences[i].Delta),
@@ -104,6 +353,7 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 					ge(dist(receivers_var[interferences[i].y], receivers_var[interferences[i].x]), interferences[i].Delta)
 			));
 		});
+		start = metrics.phase("constraint2", start);
 
 		/**
 		 * Constraint 3:
@@ -133,9 +383,10 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 			Var [] F = new Var[sizeTmp]; /* the set of the present variables in the region */
 			System.arraycopy(tmp, 0, F, 0, sizeTmp);
 
-			/* The number of maximum frequencies is <= the maximum allowed frequencies */
-			nValues(F, LE, maxFrequences);
+			/* The number of maximum frequencies is <= the maximum allowed frequencies, the linked stations sharing their variables */
+			nValues(Arrays.stream(F).distinct().toArray(Var[]::new), LE, maxFrequences);
 		}
+		start = metrics.phase("constraint3", start);
 
 		/**
 		 * Constraint 4:
@@ -146,6 +397,25 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		 * to the connections array.
 		 */
 		for (Connection connection : connection) {
+			/* The connections inside a group of linked stations are satisfied by the values of its root */
+			if (links != null && links.variableOf(connection.x) == links.variableOf(connection.y)) {
+				continue;
+			}
+
+			if (extensionTables) {
+				/* The two equalities as binary tables, those too large in intension */
+				Relation equal = (a, b) -> a == b;
+				if (!table(transmitters_var[connection.x], transmitters_values[connection.x], receivers_var[connection.y], receivers_values[connection.y],
+						equal, maxTuples, metrics)) {
+					intension(eq(transmitters_var[connection.x], receivers_var[connection.y]));
+				}
+				if (!table(transmitters_var[connection.y], transmitters_values[connection.y], receivers_var[connection.x], receivers_values[connection.x],
+						equal, maxTuples, metrics)) {
+					intension(eq(transmitters_var[connection.y], receivers_var[connection.x]));
+				}
+				continue;
+			}
+
 			/* We create an intension constraint for each specified connection in the file */
 			intension(
 				and(
@@ -156,10 +426,58 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 				)
 			);
 		}
+		start = metrics.phase("constraint4", start);
 
-		/* All the frequencies, used for the models 1 and 3 */
+		/**
+		 * Symmetry breaking:
+		 * The pairs of the interchangeable stations (or connected pairs of stations)
+		 * are ordered lexicographically, since swapping them keeps the constraints
+		 * and the objectives. The stations sharing their variables are left out.
+		 */
+		FrequencyAllocationAnalysis analysis = new FrequencyAllocationAnalysis(toInstance());
+		if (links == null && Boolean.getBoolean(SYMMETRY_BREAKING_PROPERTY)) {
+			for (int[][] symmetryClass : analysis.symmetryClasses()) {
+				lex(Arrays.stream(symmetryClass)
+						.map(unit -> Arrays.stream(unit).boxed().flatMap(j -> Stream.of(transmitters_var[j], receivers_var[j])).toArray(Var[]::new))
+						.toArray(Var[][]::new), INCREASING);
+				metrics.count("lex", 1);
+			}
+		}
+
+		/**
+		 * Redundant constraints:
+		 * The frequencies of stations interfering two by two are all different,
+		 * the receiver of a station whose delta is 0 being its transmitter.
+		 */
+		if (Boolean.getBoolean(CLIQUES_PROPERTY)) {
+			for (int[] clique : analysis.cliques()) {
+				allDifferent(Arrays.stream(clique).boxed()
+						.flatMap(j -> stations[j].delta > 0 ? Stream.of(transmitters_var[j], receivers_var[j]) : Stream.of(transmitters_var[j]))
+						.distinct().toArray(Var[]::new));
+				metrics.count("allDifferent", 1);
+			}
+		}
+		start = metrics.phase("analysis", start);
+
+		/* The bounds of the objectives given by the domains and the cliques, and by a feasible assignment for the upper bounds */
+		int minFrequencies = analysis.minFrequencies(), maxFrequencies = analysis.maxFrequencies();
+		int minSpan = analysis.minSpan(), maxSpan = analysis.maxSpan();
+		if (Boolean.getBoolean(GREEDY_BOUND_PROPERTY)) {
+			FrequencyAllocationGreedy greedy = new FrequencyAllocationGreedy(toInstance(), "m2".equals(model) ? null : model, 0);
+			if (greedy.hasPairs()) {
+				greedy.solve();
+				FrequencyAllocationEvaluator evaluator = greedy.evaluator();
+				if (evaluator.violations() == 0) {
+					maxFrequencies = Math.min(maxFrequencies, evaluator.distinct());
+					maxSpan = Math.min(maxSpan, evaluator.span());
+				}
+			}
+		}
+		start = metrics.phase("greedy", start);
+
+		/* All the frequencies, used for the models 1 and 3, the linked stations sharing their variables */
 		Var [] frequencies = Stream.concat(Arrays.stream(transmitters_var), Arrays.stream(receivers_var))
-				.toArray(Var[]::new);
+				.distinct().toArray(Var[]::new);
 
 		/**
 		 * Model 1:
@@ -169,10 +487,10 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		 */
 		if (modelVariant("m1")) {
 			/**
-			 * We define a variable nFrequencies with n the number of stations
-			 * so that the maximum number of different frequencies we can obtain.
+			 * We define a variable nFrequencies between the bounds of the
+			 * analysis, at most the number of frequencies of the domains.
 			 */
-			Var nFrequencies = var("nFrequencies", dom(range(stations.length)));
+			Var nFrequencies = var("nFrequencies", dom(range(minFrequencies, maxFrequencies + 1)));
 			/**
 			 * Our number of different frequencies must be equal to our
 			 * variable. Thus, it reduce our domain of frequencies to the number
@@ -196,7 +514,16 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		 * The maximum variables (MAXIMUM) are the lowest possibles (minimize).
 		 */
 		if (modelVariant("m2")) {
-			minimize(SUM, new Var[][]{transmitters_var, receivers_var});
+			if (links == null) {
+				minimize(SUM, new Var[][]{transmitters_var, receivers_var});
+			} else {
+				/* The frequencies of a root count once for each station of its group */
+				int[] roots = IntStream.range(0, stations.length).filter(i -> isRoot(links, i)).toArray();
+				Var[] list = Stream.concat(Arrays.stream(roots).mapToObj(i -> transmitters_root[i]), Arrays.stream(roots).mapToObj(i -> receivers_root[i]))
+						.toArray(Var[]::new);
+				int[] coeffs = Stream.of(roots, roots).flatMapToInt(Arrays::stream).map(i -> links.size(links.variableOf(i))).toArray();
+				minimize(SUM, list, coeffs);
+			}
 		}
 
 		/**
@@ -205,11 +532,20 @@ class FrequencyAllocationXCSP3 implements ProblemAPI {
 		 * and the highest frequency).
 		 */
 		if (modelVariant("m3")) {
-			Var spanFrequencies = var("span", dom(range(100000)));
+			Var spanFrequencies = var("span", dom(range(minSpan, maxSpan + 1)));
 
 			equal(spanFrequencies, sub(max(frequencies), min(frequencies)));
 
 			minimize(MINIMUM, spanFrequencies);
 		}
+		metrics.phase("objective", start);
+
+		if (metricsFileName != null) {
+			try {
+				metrics.export(metricsFileName);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 }
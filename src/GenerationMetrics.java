@@ -0,0 +1,328 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The metrics of the generation of an instance: the time of each phase,
+ * the tuples of the cost functions, the bytes written and the peak heap.
+ * 
+ * For each kind of cost function (interference, connection, region), the
+ * tuples listed in the tables are counted against all the tuples of their
+ * scopes, the others taking the default cost, and the density of each table
+ * (its listed tuples over all its tuples) is added to a histogram of ten
+ * buckets.
+ * 
+ * The metrics are recorded by a single thread: the workers computing cost
+ * functions in parallel record them in their own part (see part()), merged
+ * once they are done. When the metrics are not asked for, the generations
+ * record them in DISABLED, which ignores them.
+ * 
+ * The peak heap is the one of the memory pools of the process since the
+ * creation of the metrics, shared with the generations run at the same time.
+ * 
+ * The metrics are exported in JSON and in the text format of Prometheus,
+ * whose series are labeled with the generator and the instance, so that
+ * the files of a corpus can be gathered by a textfile collector.
+ */
+public class GenerationMetrics {
+
+	/* The number of buckets of the density histograms, of width 1 / DENSITY_BUCKETS_NUMBER */
+	private static final int DENSITY_BUCKETS_NUMBER = 10;
+
+	/**
+	 * The tuples of the cost functions of a kind.
+	 */
+	private static class CostFunctions {
+		long costFunctionsNumber, tuplesNumber, listedTuplesNumber;
+		double densitySum;
+		final long[] densityBuckets = new long[DENSITY_BUCKETS_NUMBER];
+	}
+
+	/* The metrics ignoring everything recorded, so that they can be shared by any number of threads */
+	public static final GenerationMetrics DISABLED = new GenerationMetrics(false, "", "");
+
+	private final boolean enabled;
+	private final String generator, instance;
+	private final long startTime;
+
+	private final Map<String, Long> phases = new LinkedHashMap<>();
+	private final Map<String, Long> counters = new LinkedHashMap<>();
+	private final Map<String, CostFunctions> costFunctions = new LinkedHashMap<>();
+
+	/**
+	 * @param generator the generator, wcsp or xcsp3.
+	 * @param instance  the name of the instance.
+	 */
+	public GenerationMetrics(String generator, String instance) {
+		this(true, generator, instance);
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private GenerationMetrics(boolean enabled, String generator, String instance) {
+		this.enabled = enabled;
+		this.generator = generator;
+		this.instance = instance;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * @return empty metrics recorded by a worker and merged into these ones
+	 *         with merge(), or DISABLED if these metrics are disabled.
+	 */
+	public GenerationMetrics part() {
+		return this.enabled ? new GenerationMetrics(true, this.generator, this.instance) : DISABLED;
+	}
+
+	/**
+	 * Add the metrics recorded in a part to these ones.
+	 * The parts of several workers may be merged at the same time.
+	 * 
+	 * @param part the metrics returned by part().
+	 */
+	public void merge(GenerationMetrics part) {
+		if (!this.enabled || part == this) {
+			return;
+		}
+		synchronized (this) {
+			part.phases.forEach((phase, time) -> this.phases.merge(phase, time, Long::sum));
+			part.counters.forEach((counter, value) -> this.counters.merge(counter, value, Long::sum));
+			part.costFunctions.forEach((kind, partFunctions) -> {
+				CostFunctions functions = this.costFunctions.computeIfAbsent(kind, k -> new CostFunctions());
+				functions.costFunctionsNumber += partFunctions.costFunctionsNumber;
+				functions.tuplesNumber += partFunctions.tuplesNumber;
+				functions.listedTuplesNumber += partFunctions.listedTuplesNumber;
+				functions.densitySum += partFunctions.densitySum;
+				for (int b = 0; b < DENSITY_BUCKETS_NUMBER; b++) {
+					functions.densityBuckets[b] += partFunctions.densityBuckets[b];
+				}
+			});
+		}
+	}
+
+	/**
+	 * Record the time of a phase, which is added to the previous times of the phase.
+	 * 
+	 * @param phase the name of the phase.
+	 * @param start the System.nanoTime() of the beginning of the phase.
+	 * @return the System.nanoTime() of the end of the phase, to begin the next one.
+	 */
+	public long phase(String phase, long start) {
+		if (!this.enabled) {
+			return start;
+		}
+		long end = System.nanoTime();
+		this.phases.merge(phase, end - start, Long::sum);
+		return end;
+	}
+
+	/**
+	 * Add a value to a counter.
+	 * 
+	 * @param counter the name of the counter.
+	 * @param value   the value.
+	 */
+	public void count(String counter, long value) {
+		if (!this.enabled) {
+			return;
+		}
+		this.counters.merge(counter, value, Long::sum);
+	}
+
+	/**
+	 * Record a cost function.
+	 * 
+	 * @param kind               the kind of the cost function.
+	 * @param listedTuplesNumber the number of tuples listed in its table.
+	 * @param tuplesNumber       the number of tuples of its scope.
+	 */
+	public void costFunction(String kind, long listedTuplesNumber, long tuplesNumber) {
+		if (!this.enabled) {
+			return;
+		}
+		CostFunctions functions = this.costFunctions.computeIfAbsent(kind, k -> new CostFunctions());
+		double density = tuplesNumber == 0 ? 0 : (double) listedTuplesNumber / tuplesNumber;
+
+		functions.costFunctionsNumber++;
+		functions.tuplesNumber += tuplesNumber;
+		functions.listedTuplesNumber += listedTuplesNumber;
+		functions.densitySum += density;
+		functions.densityBuckets[Math.min((int) (density * DENSITY_BUCKETS_NUMBER), DENSITY_BUCKETS_NUMBER - 1)]++;
+	}
+
+	/**
+	 * @return the sum of the peaks of the heap memory pools, in bytes.
+	 */
+	private static long heapPeakBytes() {
+		long bytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				bytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return bytes;
+	}
+
+	private static String seconds(long nanoseconds) {
+		return String.format(Locale.ROOT, "%.6f", nanoseconds / 1e9);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * @return the metrics in JSON.
+	 */
+	public synchronized String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n\t\"generator\": \"").append(escape(this.generator)).append("\",\n");
+		json.append("\t\"instance\": \"").append(escape(this.instance)).append("\",\n");
+		json.append("\t\"seconds\": ").append(seconds(System.nanoTime() - this.startTime)).append(",\n");
+		json.append("\t\"heapPeakBytes\": ").append(heapPeakBytes()).append(",\n");
+
+		json.append("\t\"phases\": {");
+		String separator = "\n";
+		for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+			json.append(separator).append("\t\t\"").append(escape(phase.getKey())).append("\": ").append(seconds(phase.getValue()));
+			separator = ",\n";
+		}
+		json.append("\n\t},\n");
+
+		json.append("\t\"counters\": {");
+		separator = "\n";
+		for (Map.Entry<String, Long> counter : this.counters.entrySet()) {
+			json.append(separator).append("\t\t\"").append(escape(counter.getKey())).append("\": ").append(counter.getValue());
+			separator = ",\n";
+		}
+		json.append("\n\t},\n");
+
+		json.append("\t\"costFunctions\": {");
+		separator = "\n";
+		for (Map.Entry<String, CostFunctions> entry : this.costFunctions.entrySet()) {
+			CostFunctions functions = entry.getValue();
+			json.append(separator).append("\t\t\"").append(escape(entry.getKey())).append("\": {");
+			json.append("\"count\": ").append(functions.costFunctionsNumber);
+			json.append(", \"tuples\": ").append(functions.tuplesNumber);
+			json.append(", \"listedTuples\": ").append(functions.listedTuplesNumber);
+			json.append(", \"defaultTuples\": ").append(functions.tuplesNumber - functions.listedTuplesNumber);
+			json.append(", \"densityHistogram\": [");
+			for (int b = 0; b < DENSITY_BUCKETS_NUMBER; b++) {
+				json.append(b == 0 ? "" : ", ").append(functions.densityBuckets[b]);
+			}
+			json.append("]}");
+			separator = ",\n";
+		}
+		json.append("\n\t}\n}\n");
+
+		return json.toString();
+	}
+
+	/**
+	 * @return the metrics in the text format of Prometheus.
+	 */
+	public synchronized String toPrometheus() {
+		StringBuilder text = new StringBuilder();
+		String labels = "generator=\"" + escape(this.generator) + "\",instance=\"" + escape(this.instance) + "\"";
+
+		text.append("# HELP frequency_allocation_generation_seconds The time of the generation.\n");
+		text.append("# TYPE frequency_allocation_generation_seconds gauge\n");
+		text.append("frequency_allocation_generation_seconds{").append(labels).append("} ").append(seconds(System.nanoTime() - this.startTime)).append('\n');
+
+		text.append("# HELP frequency_allocation_heap_peak_bytes The peak of the heap during the generation.\n");
+		text.append("# TYPE frequency_allocation_heap_peak_bytes gauge\n");
+		text.append("frequency_allocation_heap_peak_bytes{").append(labels).append("} ").append(heapPeakBytes()).append('\n');
+
+		text.append("# HELP frequency_allocation_phase_seconds The time of each phase of the generation.\n");
+		text.append("# TYPE frequency_allocation_phase_seconds gauge\n");
+		for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+			text.append("frequency_allocation_phase_seconds{").append(labels).append(",phase=\"").append(escape(phase.getKey())).append("\"} ")
+				.append(seconds(phase.getValue())).append('\n');
+		}
+
+		text.append("# HELP frequency_allocation_count The counters of the generation.\n");
+		text.append("# TYPE frequency_allocation_count gauge\n");
+		for (Map.Entry<String, Long> counter : this.counters.entrySet()) {
+			text.append("frequency_allocation_count{").append(labels).append(",name=\"").append(escape(counter.getKey())).append("\"} ")
+				.append(counter.getValue()).append('\n');
+		}
+
+		text.append("# HELP frequency_allocation_tuples The tuples of the cost functions, listed in their tables or taking the default cost.\n");
+		text.append("# TYPE frequency_allocation_tuples gauge\n");
+		for (Map.Entry<String, CostFunctions> entry : this.costFunctions.entrySet()) {
+			String kindLabels = labels + ",kind=\"" + escape(entry.getKey()) + "\"";
+			CostFunctions functions = entry.getValue();
+			text.append("frequency_allocation_tuples{").append(kindLabels).append(",listed=\"true\"} ").append(functions.listedTuplesNumber).append('\n');
+			text.append("frequency_allocation_tuples{").append(kindLabels).append(",listed=\"false\"} ")
+				.append(functions.tuplesNumber - functions.listedTuplesNumber).append('\n');
+		}
+
+		text.append("# HELP frequency_allocation_table_density The density of the tables of the cost functions.\n");
+		text.append("# TYPE frequency_allocation_table_density histogram\n");
+		for (Map.Entry<String, CostFunctions> entry : this.costFunctions.entrySet()) {
+			String kindLabels = labels + ",kind=\"" + escape(entry.getKey()) + "\"";
+			CostFunctions functions = entry.getValue();
+			long cumulated = 0;
+			for (int b = 0; b < DENSITY_BUCKETS_NUMBER; b++) {
+				cumulated += functions.densityBuckets[b];
+				String bound = b == DENSITY_BUCKETS_NUMBER - 1 ? "+Inf" : String.format(Locale.ROOT, "%.1f", (b + 1.0) / DENSITY_BUCKETS_NUMBER);
+				text.append("frequency_allocation_table_density_bucket{").append(kindLabels).append(",le=\"").append(bound).append("\"} ")
+					.append(cumulated).append('\n');
+			}
+			text.append("frequency_allocation_table_density_sum{").append(kindLabels).append("} ")
+				.append(String.format(Locale.ROOT, "%.6f", functions.densitySum)).append('\n');
+			text.append("frequency_allocation_table_density_count{").append(kindLabels).append("} ").append(functions.costFunctionsNumber).append('\n');
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Write the metrics in baseName.json and baseName.prom.
+	 * 
+	 * @param baseName the name of the files, without extension.
+	 * @throws IOException
+	 */
+	public void export(String baseName) throws IOException {
+		Files.write(Paths.get(baseName + ".json"), this.toJson().getBytes(StandardCharsets.UTF_8));
+		Files.write(Paths.get(baseName + ".prom"), this.toPrometheus().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,242 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reader of the binary WCSP format written by WCSPBinaryWriter,
+ * compressed or not.
+ * 
+ * The problem is replayed into a WCSPOutput, so that it can be converted
+ * back to the text format with a WCSPWriter, or copied to another binary file.
+ */
+public class WCSPBinaryReader implements Closeable {
+
+	private final InputStream input;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+
+	/**
+	 * Open a binary WCSP file. The compressed files are recognized
+	 * from the gzip magic bytes.
+	 * 
+	 * @param fileName the name of the binary file.
+	 * @throws IOException
+	 */
+	public WCSPBinaryReader(String fileName) throws IOException {
+		PushbackInputStream pushbackInput = new PushbackInputStream(Files.newInputStream(Paths.get(fileName)), 2);
+		byte[] magic = new byte[2];
+		int read = pushbackInput.read(magic);
+		if (read > 0) {
+			pushbackInput.unread(magic, 0, read);
+		}
+
+		boolean compressed = read == 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B;
+		this.input = compressed ? new GZIPInputStream(pushbackInput, 1 << 16) : pushbackInput;
+		this.buffer = new byte[1 << 16];
+		this.position = 0;
+		this.limit = 0;
+	}
+
+	/**
+	 * Read the whole problem and replay it into the output.
+	 * The output isn't closed.
+	 * 
+	 * @param output the output receiving the problem.
+	 * @throws IOException if the file isn't a valid binary WCSP file.
+	 */
+	public void read(WCSPOutput output) throws IOException {
+		for (int i = 0; i < WCSPBinaryWriter.MAGIC.length; i++) {
+			if (this.readByte() != WCSPBinaryWriter.MAGIC[i]) {
+				throw new IOException("Not a binary WCSP file");
+			}
+		}
+		int version = this.readByte();
+		if (version != WCSPBinaryWriter.VERSION) {
+			throw new IOException("Unsupported binary WCSP version " + version);
+		}
+
+		char[] problemName = new char[this.readVarint()];
+		for (int i = 0; i < problemName.length; i++) {
+			problemName[i] = (char) this.readByte();
+		}
+		int variablesNumber = this.readVarint();
+		int maxDomainSize = this.readVarint();
+		int costFunctionsNumber = this.readVarint();
+		int upperBound = this.readVarint();
+		output.writeHeader(new String(problemName), variablesNumber, maxDomainSize, costFunctionsNumber, upperBound);
+
+		int[] domainSizes = new int[variablesNumber];
+		for (int i = 0; i < variablesNumber; i++) {
+			domainSizes[i] = this.readVarint();
+		}
+		output.writeDomainSizes(domainSizes);
+
+		for (int c = 0; c < costFunctionsNumber; c++) {
+			this.readCostFunction(output);
+		}
+	}
+
+	/**
+	 * Read a cost function and its runs of tuples. The unary cost functions
+	 * are read as binary ones whose first value index is always 0.
+	 */
+	private void readCostFunction(WCSPOutput output) throws IOException {
+		int arity = this.readVarint();
+		if (arity == 0) {
+			this.readGlobalCostFunction(output);
+			return;
+		}
+		if (arity != 1 && arity != 2) {
+			throw new IOException("Unsupported cost function arity " + arity);
+		}
+
+		int x = this.readVarint();
+		int y = arity == 2 ? this.readVarint() : -1;
+		int defaultCost = this.readVarint();
+		int tuplesNumber = this.readVarint();
+		if (arity == 2) {
+			output.beginCostFunction(x, y, defaultCost);
+		} else {
+			output.beginUnaryCostFunction(x, defaultCost);
+		}
+
+		int previousI = 0;
+		int previousEnd = 0;
+		int remaining = tuplesNumber;
+		while (remaining > 0) {
+			int di = this.readVarint();
+			int gap = this.readVarint();
+			int runLength = this.readVarint() + 1;
+			int cost = this.readVarint();
+			if (runLength > remaining) {
+				throw new IOException("Run longer than the tuple count of the cost function " + x + " " + y);
+			}
+
+			int i = previousI + di;
+			int start = (di != 0 ? 0 : previousEnd) + gap;
+			for (int j = start; j < start + runLength; j++) {
+				if (arity == 2) {
+					output.writeTuple(i, j, cost);
+				} else {
+					output.writeUnaryTuple(j, cost);
+				}
+			}
+
+			previousI = i;
+			previousEnd = start + runLength;
+			remaining -= runLength;
+		}
+
+		output.endCostFunction();
+	}
+
+	/**
+	 * Read a global cost function, after its arity of 0.
+	 */
+	private void readGlobalCostFunction(WCSPOutput output) throws IOException {
+		int[] scope = new int[this.readVarint()];
+		for (int i = 0; i < scope.length; i++) {
+			scope[i] = this.readVarint();
+		}
+
+		char[] definition = new char[this.readVarint()];
+		for (int i = 0; i < definition.length; i++) {
+			definition[i] = (char) this.readByte();
+		}
+		output.writeGlobalCostFunction(scope, new String(definition));
+	}
+
+	private int readByte() throws IOException {
+		if (this.position == this.limit) {
+			this.limit = this.input.read(this.buffer);
+			this.position = 0;
+			if (this.limit <= 0) {
+				this.limit = 0;
+				throw new EOFException("Truncated binary WCSP file");
+			}
+		}
+
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	private int readVarint() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = this.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed varint");
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+
+	/**
+	 * Convert a binary WCSP file to the text format.
+	 * 
+	 * @param binaryFileName the name of the binary file.
+	 * @param textFileName   the name of the text file.
+	 * @throws IOException
+	 */
+	public static void convert(String binaryFileName, String textFileName) throws IOException {
+		try (WCSPBinaryReader reader = new WCSPBinaryReader(binaryFileName)) {
+			WCSPWriter writer = new WCSPWriter(textFileName);
+			reader.read(writer);
+			writer.close();
+		}
+	}
+
+	/**
+	 * Convert a binary WCSP file to the text format.
+	 * 
+	 * Usage: WCSPBinaryReader input.wcspb[.gz] output.wcsp
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: WCSPBinaryReader input.wcspb[.gz] output.wcsp");
+			return;
+		}
+
+		convert(args[0], args[1]);
+	}
+}
@@ -0,0 +1,241 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming writer of a compact binary version of the WCSP format.
+ * 
+ * All the integers are written as varints (7 bits per byte, the high bit
+ * telling if another byte follows). The file is made of:
+ * - the magic bytes "WCSPB" followed by the format version (1)
+ * - the problem name (its length and its ASCII characters), the number of
+ *   variables, the maximum domain size, the number of cost functions and
+ *   the upper bound
+ * - the domain sizes
+ * - for each cost function: its arity (1 or 2), its variables, its default
+ *   cost, its tuple count and its tuples
+ * 
+ * The tuples are grouped in runs of consecutive value indexes of the second
+ * variable, for the same value index of the first variable and the same cost.
+ * A run is written as the difference with the previous value index of the
+ * first variable, the gap after the end of the previous run (or from 0 on a
+ * new value index of the first variable), the run length minus 1 and the cost.
+ * The tuples of a unary cost function are written as the runs of binary
+ * tuples whose first value index is always 0.
+ * A global cost function is written with an arity of 0, followed by its
+ * real arity, its variables and its definition (its length and its ASCII
+ * characters), as in the text format.
+ * 
+ * A compressed file is the gzip of the whole binary file.
+ * WCSPBinaryReader reads both, and converts them back to the text format.
+ */
+public class WCSPBinaryWriter extends WCSPOutput {
+
+	public static final byte[] MAGIC = { 'W', 'C', 'S', 'P', 'B' };
+	public static final int VERSION = 1;
+
+	/* The maximum size of an int varint */
+	private static final int VARINT_MAX_SIZE = 5;
+
+	/* The current run of tuples */
+	private int runI, runStartJ, runLength, runCost;
+
+	/* The first value index and the end of the last written run */
+	private int previousI, previousEnd;
+
+	/**
+	 * Create (or truncate) the output file and initialize the writer.
+	 * 
+	 * @param fileName   the name of the output file.
+	 * @param compressed if true, the file is compressed with gzip.
+	 * @throws IOException
+	 */
+	public WCSPBinaryWriter(String fileName, boolean compressed) throws IOException {
+		this(openChannel(fileName), compressed);
+	}
+
+	/**
+	 * Initialize the writer over an already opened channel.
+	 * 
+	 * @param channel    the output channel, closed by close().
+	 * @param compressed if true, the content is compressed with gzip.
+	 * @throws IOException
+	 */
+	public WCSPBinaryWriter(FileChannel channel, boolean compressed) throws IOException {
+		super(compressed ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16)) : channel);
+	}
+
+	/**
+	 * Initialize a writer which keeps everything in memory.
+	 */
+	public WCSPBinaryWriter() {
+		super((WritableByteChannel) null);
+	}
+
+	@Override
+	public void writeHeader(String problemName, int variablesNumber, int maxDomainSize, int costFunctionsNumber, int upperBound) throws IOException {
+		this.reserve(MAGIC.length + 1 + VARINT_MAX_SIZE + problemName.length() + 4 * VARINT_MAX_SIZE);
+
+		System.arraycopy(MAGIC, 0, this.buffer, this.position, MAGIC.length);
+		this.position += MAGIC.length;
+		this.buffer[this.position++] = VERSION;
+
+		this.putVarint(problemName.length());
+		for (int i = 0; i < problemName.length(); i++) {
+			this.buffer[this.position++] = (byte) problemName.charAt(i);
+		}
+
+		this.putVarint(variablesNumber);
+		this.putVarint(maxDomainSize);
+		this.putVarint(costFunctionsNumber);
+		this.putVarint(upperBound);
+	}
+
+	@Override
+	public void writeDomainSizes(int[] domainSizes) throws IOException {
+		for (int domainSize : domainSizes) {
+			this.reserve(VARINT_MAX_SIZE);
+			this.putVarint(domainSize);
+		}
+	}
+
+	@Override
+	public void beginCostFunction(int x, int y, int defaultCost) throws IOException {
+		this.reserve(4 * VARINT_MAX_SIZE);
+		this.putVarint(2);
+		this.putVarint(x);
+		this.putVarint(y);
+		this.putVarint(defaultCost);
+
+		this.reserveTuplesNumberSlot(VARINT_MAX_SIZE);
+		this.runLength = 0;
+		this.previousI = 0;
+		this.previousEnd = 0;
+	}
+
+	@Override
+	public void writeTuple(int i, int j, int cost) {
+		if (this.runLength > 0 && i == this.runI && j == this.runStartJ + this.runLength && cost == this.runCost) {
+			this.runLength++;
+		} else {
+			this.putRun();
+			this.runI = i;
+			this.runStartJ = j;
+			this.runLength = 1;
+			this.runCost = cost;
+		}
+		this.tuplesNumber++;
+	}
+
+	@Override
+	public void beginUnaryCostFunction(int x, int defaultCost) throws IOException {
+		this.reserve(3 * VARINT_MAX_SIZE);
+		this.putVarint(1);
+		this.putVarint(x);
+		this.putVarint(defaultCost);
+
+		this.reserveTuplesNumberSlot(VARINT_MAX_SIZE);
+		this.runLength = 0;
+		this.previousI = 0;
+		this.previousEnd = 0;
+	}
+
+	@Override
+	public void writeUnaryTuple(int i, int cost) {
+		this.writeTuple(0, i, cost);
+	}
+
+	@Override
+	public void writeGlobalCostFunction(int[] scope, String definition) throws IOException {
+		this.reserve((3 + scope.length) * VARINT_MAX_SIZE + definition.length());
+		this.putVarint(0);
+		this.putVarint(scope.length);
+		for (int x : scope) {
+			this.putVarint(x);
+		}
+		this.putVarint(definition.length());
+		for (int i = 0; i < definition.length(); i++) {
+			this.buffer[this.position++] = (byte) definition.charAt(i);
+		}
+	}
+
+	@Override
+	public WCSPOutput newChunk() {
+		return new WCSPBinaryWriter();
+	}
+
+	@Override
+	protected void finishTuples() {
+		this.putRun();
+	}
+
+	@Override
+	protected void putTuplesNumber(int tuplesNumber) {
+		this.putVarint(tuplesNumber);
+	}
+
+	/**
+	 * Put the current run in the buffer, if there is one.
+	 */
+	private void putRun() {
+		if (this.runLength == 0) {
+			return;
+		}
+
+		if (this.runI != this.previousI) {
+			this.previousEnd = 0;
+		}
+
+		this.ensureCapacity(4 * VARINT_MAX_SIZE);
+		this.putVarint(this.runI - this.previousI);
+		this.putVarint(this.runStartJ - this.previousEnd);
+		this.putVarint(this.runLength - 1);
+		this.putVarint(this.runCost);
+
+		this.previousI = this.runI;
+		this.previousEnd = this.runStartJ + this.runLength;
+		this.runLength = 0;
+	}
+
+	/**
+	 * Put a varint in the buffer, assuming there is enough room for it.
+	 * The value is taken as unsigned.
+	 */
+	private void putVarint(int value) {
+		while ((value & ~0x7F) != 0) {
+			this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte) value;
+	}
+}
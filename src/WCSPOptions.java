@@ -0,0 +1,185 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+/**
+ * The options of the WCSP generation.
+ * 
+ * They are given to FrequencyAllocationWCSP.generate() by the programs
+ * running the modeler in-process, and read from the system properties
+ * by model(), since the XCSP3 compiler only passes the data to the problem.
+ */
+public class WCSPOptions {
+
+	/* The system properties read by fromSystemProperties() */
+	public static final String WORKERS_NUMBER_PROPERTY = "wcsp.workers";
+	public static final String COMPLEMENT_TABLES_PROPERTY = "wcsp.complement";
+	public static final String BINARY_OUTPUT_PROPERTY = "wcsp.binary";
+	public static final String COMPRESS_OUTPUT_PROPERTY = "wcsp.compress";
+	public static final String PREPROCESSING_PROPERTY = "wcsp.preprocess";
+	public static final String MERGE_CONNECTIONS_PROPERTY = "wcsp.mergeConnections";
+	public static final String REGIONS_PROPERTY = "wcsp.regions";
+	public static final String REGION_WEIGHT_PROPERTY = "wcsp.regionWeight";
+	public static final String TABLE_CACHE_PROPERTY = "wcsp.tableCache";
+	public static final String GREEDY_BOUND_PROPERTY = "wcsp.greedyBound";
+	public static final String METRICS_PROPERTY = "wcsp.metrics";
+
+	/**
+	 * The preprocessing of the instance before its generation
+	 * (see FrequencyAllocationPreprocessor).
+	 */
+	public enum Preprocessing {
+		/* The instance is generated as it is */
+		NONE,
+		/* The cost functions satisfied by all the tuples are removed, the optimum is kept */
+		ENTAILED,
+		/* The arc consistency is enforced as if the cost functions were hard, which keeps the optimum only if it is 0 */
+		HARD
+	}
+
+	/**
+	 * The modeling of the limits of the numbers of frequencies
+	 * of the regions (see FrequencyAllocationWCSP.RegionFrequencies).
+	 */
+	public enum Regions {
+		/* The regions are ignored, the problem is relaxed */
+		NONE,
+		/* A region can't exceed its limit */
+		HARD,
+		/* Each frequency above the limit of a region costs the region weight */
+		SOFT
+	}
+
+	/**
+	 * The number of workers computing the cost functions.
+	 * With more than one worker, the cost functions are computed
+	 * in parallel, and the file is the same.
+	 */
+	public int workersNumber = 1;
+
+	/**
+	 * If true, the interference cost functions list their forbidden
+	 * tuples with a default cost of 0 when there are fewer forbidden
+	 * tuples than allowed ones.
+	 */
+	public boolean complementTables = false;
+
+	/**
+	 * If true, the problem is written in the binary format of
+	 * WCSPBinaryWriter instead of the WCSP text format.
+	 */
+	public boolean binaryOutput = false;
+
+	/**
+	 * If true, the binary output is compressed with gzip.
+	 */
+	public boolean compressOutput = false;
+
+	/**
+	 * The preprocessing of the instance before its generation.
+	 */
+	public Preprocessing preprocessing = Preprocessing.NONE;
+
+	/**
+	 * If true, the stations linked by connections share a single variable
+	 * (see FrequencyAllocationLinks). The merged connections become hard,
+	 * and the solutions must be decoded with FrequencyAllocationLinks.
+	 */
+	public boolean mergeConnections = false;
+
+	/**
+	 * The modeling of the regions.
+	 */
+	public Regions regions = Regions.NONE;
+
+	/**
+	 * The cost of each frequency above the limit of a region, with the soft regions.
+	 */
+	public int regionWeight = 1;
+
+	/**
+	 * The cache of the interference tables (see CompatibilityTables),
+	 * shared by the generations using these options, or null to compute
+	 * each table. Its counters tell how many tables were reused.
+	 */
+	public CompatibilityTables tables = null;
+
+	/**
+	 * If true, the assignment of FrequencyAllocationGreedy gives the upper
+	 * bound of the header (its cost plus one, when it is lower), and is written
+	 * next to the output in a .sol file, from which toulbar2 can start.
+	 * It is ignored with the merged connections, whose values are groups.
+	 */
+	public boolean greedyBound = false;
+
+	/**
+	 * If true, the metrics of the generation (see GenerationMetrics) are
+	 * written next to the output in .metrics.json and .metrics.prom files.
+	 * It is ignored with the merged connections and the incremental generation.
+	 */
+	public boolean metrics = false;
+
+	/**
+	 * @return the extension of the output file, depending on its format.
+	 */
+	public String resultFileExtension() {
+		if (!this.binaryOutput) {
+			return ".wcsp";
+		}
+
+		return this.compressOutput ? ".wcspb.gz" : ".wcspb";
+	}
+
+	/**
+	 * Read the options from the system properties, using the
+	 * default value of the options which are not set.
+	 * 
+	 * @return the options.
+	 */
+	public static WCSPOptions fromSystemProperties() {
+		WCSPOptions options = new WCSPOptions();
+
+		options.workersNumber = Integer.getInteger(WORKERS_NUMBER_PROPERTY, options.workersNumber);
+		options.complementTables = Boolean.parseBoolean(System.getProperty(COMPLEMENT_TABLES_PROPERTY, String.valueOf(options.complementTables)));
+		options.binaryOutput = Boolean.parseBoolean(System.getProperty(BINARY_OUTPUT_PROPERTY, String.valueOf(options.binaryOutput)));
+		options.compressOutput = Boolean.parseBoolean(System.getProperty(COMPRESS_OUTPUT_PROPERTY, String.valueOf(options.compressOutput)));
+		options.mergeConnections = Boolean.parseBoolean(System.getProperty(MERGE_CONNECTIONS_PROPERTY, String.valueOf(options.mergeConnections)));
+		options.regions = Regions.valueOf(System.getProperty(REGIONS_PROPERTY, options.regions.name()).toUpperCase());
+		options.regionWeight = Integer.getInteger(REGION_WEIGHT_PROPERTY, options.regionWeight);
+		options.greedyBound = Boolean.parseBoolean(System.getProperty(GREEDY_BOUND_PROPERTY, String.valueOf(options.greedyBound)));
+		options.metrics = Boolean.parseBoolean(System.getProperty(METRICS_PROPERTY, String.valueOf(options.metrics)));
+		options.preprocessing = Preprocessing.valueOf(System.getProperty(PREPROCESSING_PROPERTY, options.preprocessing.name()).toUpperCase());
+
+		/* The property gives the capacity of the cache, which is disabled by default */
+		int tableCacheCapacity = Integer.getInteger(TABLE_CACHE_PROPERTY, 0);
+		if (tableCacheCapacity > 0) {
+			options.tables = new CompatibilityTables(tableCacheCapacity);
+		}
+
+		return options;
+	}
+}
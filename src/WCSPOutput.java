@@ -0,0 +1,364 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming output of a WCSP problem, in the format of the subclass.
+ * 
+ * The content is written in a reusable byte buffer which is flushed
+ * through a channel, so that writing a tuple doesn't allocate anything.
+ * 
+ * The header of a cost function must be written before its tuples,
+ * but the number of tuples is only known at the end. Instead of
+ * buffering the tuples, a slot large enough for any tuple count is
+ * reserved in the buffer, and it is back-filled by endCostFunction(),
+ * which moves the tuples right after the real count. The buffer is only
+ * flushed between two cost functions, so it grows when a single cost
+ * function doesn't fit in it.
+ * 
+ * An output created without channel keeps everything in memory. It is
+ * used to build chunks of cost functions in parallel, which are then
+ * appended in order to the file output with write(WCSPOutput).
+ */
+public abstract class WCSPOutput {
+
+	/* The default size of the buffer, and the size from which it is flushed */
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/* The output channel, or null if the output keeps everything in memory */
+	private final WritableByteChannel channel;
+	protected byte[] buffer;
+	protected int position;
+
+	/* The number of bytes already written through the channel */
+	private long flushedBytesNumber;
+
+	/* Position and size of the reserved tuple count slot of the current cost function */
+	private int tuplesNumberSlot;
+	private int tuplesNumberSlotSize;
+	protected int tuplesNumber;
+
+	/**
+	 * Initialize the output over a channel.
+	 * 
+	 * @param channel the output channel, closed by close(),
+	 *                or null to keep everything in memory.
+	 */
+	protected WCSPOutput(WritableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = new byte[DEFAULT_CAPACITY];
+		this.position = 0;
+		this.flushedBytesNumber = 0;
+		this.tuplesNumberSlot = -1;
+		this.tuplesNumber = 0;
+	}
+
+	/**
+	 * Create (or truncate) a file and open a channel over it.
+	 * 
+	 * @param fileName the name of the file.
+	 * @return the channel.
+	 * @throws IOException
+	 */
+	protected static FileChannel openChannel(String fileName) throws IOException {
+		return FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Write the problem header.
+	 * 
+	 * @param problemName         the problem name.
+	 * @param variablesNumber     the number of variables.
+	 * @param maxDomainSize       the maximum size of the domains.
+	 * @param costFunctionsNumber the number of cost functions.
+	 * @param upperBound          the global initial upper bound.
+	 * @throws IOException
+	 */
+	public abstract void writeHeader(String problemName, int variablesNumber, int maxDomainSize, int costFunctionsNumber, int upperBound) throws IOException;
+
+	/**
+	 * Write the size of the domain of each variable.
+	 * 
+	 * @param domainSizes the domain sizes.
+	 * @throws IOException
+	 */
+	public abstract void writeDomainSizes(int[] domainSizes) throws IOException;
+
+	/**
+	 * Write the header of a binary cost function, without its tuple count,
+	 * which will be back-filled by endCostFunction().
+	 * 
+	 * @param x           the first variable.
+	 * @param y           the second variable.
+	 * @param defaultCost the cost of the tuples which are not listed.
+	 * @throws IOException
+	 */
+	public abstract void beginCostFunction(int x, int y, int defaultCost) throws IOException;
+
+	/**
+	 * Write a tuple of the current cost function. The tuples must be
+	 * written in lexicographic order.
+	 * 
+	 * @param i    the value index of the first variable.
+	 * @param j    the value index of the second variable.
+	 * @param cost the cost of the tuple.
+	 */
+	public abstract void writeTuple(int i, int j, int cost);
+
+	/**
+	 * Write the header of a unary cost function, without its tuple count,
+	 * which will be back-filled by endCostFunction().
+	 * 
+	 * @param x           the variable.
+	 * @param defaultCost the cost of the values which are not listed.
+	 * @throws IOException
+	 */
+	public abstract void beginUnaryCostFunction(int x, int defaultCost) throws IOException;
+
+	/**
+	 * Write a tuple of the current unary cost function. The tuples must
+	 * be written in increasing order.
+	 * 
+	 * @param i    the value index of the variable.
+	 * @param cost the cost of the value.
+	 */
+	public abstract void writeUnaryTuple(int i, int cost);
+
+	/**
+	 * Write a global cost function of toulbar2, whose costs are
+	 * defined by its keyword and parameters instead of tuples.
+	 * 
+	 * @param scope      the variables.
+	 * @param definition the keyword of the cost function followed by its parameters.
+	 * @throws IOException
+	 */
+	public abstract void writeGlobalCostFunction(int[] scope, String definition) throws IOException;
+
+	/**
+	 * @return a new output of the same format which keeps everything in memory.
+	 */
+	public abstract WCSPOutput newChunk();
+
+	/**
+	 * Write the tuples which are still pending at the end of
+	 * a cost function, if the format keeps some.
+	 */
+	protected void finishTuples() {
+	}
+
+	/**
+	 * Put the tuple count in the buffer, at the current position.
+	 * 
+	 * @param tuplesNumber the tuple count, which must fit in the reserved slot.
+	 */
+	protected abstract void putTuplesNumber(int tuplesNumber);
+
+	/**
+	 * Reserve the slot of the tuple count of the current cost function.
+	 * 
+	 * @param slotSize the maximum size of the tuple count.
+	 */
+	protected void reserveTuplesNumberSlot(int slotSize) {
+		if (this.tuplesNumberSlot != -1) {
+			throw new IllegalStateException("The previous cost function isn't ended");
+		}
+
+		this.ensureCapacity(slotSize);
+		this.tuplesNumberSlot = this.position;
+		this.tuplesNumberSlotSize = slotSize;
+		this.position += slotSize;
+		this.tuplesNumber = 0;
+	}
+
+	/**
+	 * Back-fill the tuple count of the current cost function
+	 * and flush the buffer if needed.
+	 * 
+	 * @return the number of tuples of the cost function.
+	 * @throws IOException
+	 */
+	public int endCostFunction() throws IOException {
+		this.finishTuples();
+
+		int tuplesStart = this.tuplesNumberSlot + this.tuplesNumberSlotSize;
+
+		/* Write the count at the beginning of the slot, then move the tuples after it */
+		int savedPosition = this.position;
+		this.position = this.tuplesNumberSlot;
+		this.putTuplesNumber(this.tuplesNumber);
+		int tuplesLength = savedPosition - tuplesStart;
+		System.arraycopy(this.buffer, tuplesStart, this.buffer, this.position, tuplesLength);
+		this.position += tuplesLength;
+
+		this.tuplesNumberSlot = -1;
+		if (this.position >= DEFAULT_CAPACITY && this.channel != null) {
+			this.flush();
+		}
+
+		return this.tuplesNumber;
+	}
+
+	/**
+	 * Append the content of an in-memory output of the same format.
+	 * 
+	 * @param chunk the in-memory output, whose cost functions must be ended.
+	 * @throws IOException
+	 */
+	public void write(WCSPOutput chunk) throws IOException {
+		if (chunk.getClass() != this.getClass()) {
+			throw new IllegalArgumentException("The chunk isn't in the same format");
+		}
+		if (chunk.tuplesNumberSlot != -1) {
+			throw new IllegalStateException("The last cost function of the chunk isn't ended");
+		}
+
+		if (this.channel != null && this.tuplesNumberSlot == -1 && chunk.position >= DEFAULT_CAPACITY) {
+			/* Large chunks are written directly, without copying them */
+			this.flush();
+			chunk.writeTo(this.channel);
+			this.flushedBytesNumber += chunk.position;
+		} else {
+			this.reserve(chunk.position);
+			System.arraycopy(chunk.buffer, 0, this.buffer, this.position, chunk.position);
+			this.position += chunk.position;
+		}
+	}
+
+	/**
+	 * @return the number of bytes written so far, which is the offset
+	 *         of the next byte in the (uncompressed) output.
+	 */
+	public long offset() {
+		return this.flushedBytesNumber + this.position;
+	}
+
+	/**
+	 * Append bytes of a file, such as cost functions copied from a
+	 * previous output of the same format, without going through the buffer.
+	 * 
+	 * @param source the file.
+	 * @param from   the offset of the first byte in the file.
+	 * @param length the number of bytes.
+	 * @throws IOException
+	 */
+	public void transferFrom(FileChannel source, long from, long length) throws IOException {
+		if (this.channel == null || this.tuplesNumberSlot != -1) {
+			throw new IllegalStateException("Bytes can only be transferred to a channel, between two cost functions");
+		}
+
+		this.flush();
+		for (long transferred = 0; transferred < length; ) {
+			long count = source.transferTo(from + transferred, length - transferred, this.channel);
+			if (count <= 0) {
+				throw new IOException("Failed to transfer the bytes " + (from + transferred) + " to " + (from + length));
+			}
+			transferred += count;
+		}
+		this.flushedBytesNumber += length;
+	}
+
+	/**
+	 * Drop the content of an in-memory output, keeping its buffer,
+	 * so that it can be reused without allocating.
+	 */
+	void clear() {
+		if (this.channel != null) {
+			throw new IllegalStateException("Only an in-memory output can be cleared");
+		}
+
+		this.position = 0;
+		this.tuplesNumberSlot = -1;
+		this.tuplesNumber = 0;
+	}
+
+	/**
+	 * Flush the buffer and close the channel.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (this.tuplesNumberSlot != -1) {
+			throw new IllegalStateException("The last cost function isn't ended");
+		}
+
+		this.flush();
+		if (this.channel != null) {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Make room for length bytes, by flushing the buffer when we're
+	 * outside of a cost function, or by growing it otherwise.
+	 * 
+	 * @param length the number of bytes.
+	 * @throws IOException
+	 */
+	protected void reserve(int length) throws IOException {
+		if (this.position + length > this.buffer.length && this.tuplesNumberSlot == -1 && this.channel != null) {
+			this.flush();
+		}
+		this.ensureCapacity(length);
+	}
+
+	/**
+	 * Grow the buffer if there isn't room for length bytes.
+	 * 
+	 * @param length the number of bytes.
+	 */
+	protected void ensureCapacity(int length) {
+		if (this.position + length > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(2 * this.buffer.length, this.position + length));
+		}
+	}
+
+	private void flush() throws IOException {
+		if (this.channel == null) {
+			return;
+		}
+
+		this.writeTo(this.channel);
+		this.flushedBytesNumber += this.position;
+		this.position = 0;
+	}
+
+	private void writeTo(WritableByteChannel target) throws IOException {
+		ByteBuffer byteBuffer = ByteBuffer.wrap(this.buffer, 0, this.position);
+		while (byteBuffer.hasRemaining()) {
+			target.write(byteBuffer);
+		}
+	}
+}
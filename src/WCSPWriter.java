@@ -0,0 +1,232 @@
+/*************************************************************************************
+ * MIT License                                                                       *
+ *                                                                                   *
+ * Copyright (C) 2018 Charly Lamothe, Guillaume Ollier                               *
+ *                                                                                   *
+ * This file is part of FrequencyAllocationProblem.                                  *
+ *                                                                                   *
+ *   Permission is hereby granted, free of charge, to any person obtaining a copy    *
+ *   of this software and associated documentation files (the "Software"), to deal   *
+ *   in the Software without restriction, including without limitation the rights    *
+ *   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell       *
+ *   copies of the Software, and to permit persons to whom the Software is           *
+ *   furnished to do so, subject to the following conditions:                        *
+ *                                                                                   *
+ *   The above copyright notice and this permission notice shall be included in all  *
+ *   copies or substantial portions of the Software.                                 *
+ *                                                                                   *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR      *
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,        *
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE     *
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER          *
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,   *
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE   *
+ *   SOFTWARE.                                                                       *
+ *************************************************************************************/
+
+package org.xcsp.modeler.problems;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streaming writer of the WCSP text format.
+ * 
+ * The integers are written digit by digit in the buffer, and the tuple
+ * count of a cost function is back-filled as described in WCSPOutput.
+ */
+public class WCSPWriter extends WCSPOutput {
+
+	/* The maximum number of digits of a tuple count, followed by the line feed */
+	private static final int TUPLES_NUMBER_SLOT_SIZE = 11;
+
+	/**
+	 * Create (or truncate) the output file and initialize the writer.
+	 * 
+	 * @param fileName the name of the output file.
+	 * @throws IOException
+	 */
+	public WCSPWriter(String fileName) throws IOException {
+		this(openChannel(fileName));
+	}
+
+	/**
+	 * Initialize the writer over an already opened channel.
+	 * 
+	 * @param channel the output channel, closed by close().
+	 */
+	public WCSPWriter(FileChannel channel) {
+		super(channel);
+	}
+
+	/**
+	 * Initialize a writer which keeps everything in memory.
+	 */
+	public WCSPWriter() {
+		super(null);
+	}
+
+	@Override
+	public void writeHeader(String problemName, int variablesNumber, int maxDomainSize, int costFunctionsNumber, int upperBound) throws IOException {
+		this.writeAscii(problemName);
+		this.writeByte(' ');
+		this.writeInt(variablesNumber);
+		this.writeByte(' ');
+		this.writeInt(maxDomainSize);
+		this.writeByte(' ');
+		this.writeInt(costFunctionsNumber);
+		this.writeByte(' ');
+		this.writeInt(upperBound);
+		this.newLine();
+	}
+
+	/**
+	 * Write the domain sizes on a line, each followed by a space.
+	 */
+	@Override
+	public void writeDomainSizes(int[] domainSizes) throws IOException {
+		for (int domainSize : domainSizes) {
+			this.writeInt(domainSize);
+			this.writeByte(' ');
+		}
+		this.newLine();
+	}
+
+	@Override
+	public void beginCostFunction(int x, int y, int defaultCost) throws IOException {
+		this.writeAscii("2 ");
+		this.writeInt(x);
+		this.writeByte(' ');
+		this.writeInt(y);
+		this.writeByte(' ');
+		this.writeInt(defaultCost);
+		this.writeByte(' ');
+
+		this.reserveTuplesNumberSlot(TUPLES_NUMBER_SLOT_SIZE);
+	}
+
+	@Override
+	public void writeTuple(int i, int j, int cost) {
+		/* 3 integers of at most 11 characters and their separators */
+		this.ensureCapacity(36);
+		this.putInt(i);
+		this.buffer[this.position++] = ' ';
+		this.putInt(j);
+		this.buffer[this.position++] = ' ';
+		this.putInt(cost);
+		this.buffer[this.position++] = '\n';
+		this.tuplesNumber++;
+	}
+
+	@Override
+	public void beginUnaryCostFunction(int x, int defaultCost) throws IOException {
+		this.writeAscii("1 ");
+		this.writeInt(x);
+		this.writeByte(' ');
+		this.writeInt(defaultCost);
+		this.writeByte(' ');
+
+		this.reserveTuplesNumberSlot(TUPLES_NUMBER_SLOT_SIZE);
+	}
+
+	@Override
+	public void writeUnaryTuple(int i, int cost) {
+		/* 2 integers of at most 11 characters and their separators */
+		this.ensureCapacity(24);
+		this.putInt(i);
+		this.buffer[this.position++] = ' ';
+		this.putInt(cost);
+		this.buffer[this.position++] = '\n';
+		this.tuplesNumber++;
+	}
+
+	/**
+	 * Write the global cost function on a line, with -1 in place of the default cost.
+	 */
+	@Override
+	public void writeGlobalCostFunction(int[] scope, String definition) throws IOException {
+		this.writeInt(scope.length);
+		for (int x : scope) {
+			this.writeByte(' ');
+			this.writeInt(x);
+		}
+		this.writeAscii(" -1 ");
+		this.writeAscii(definition);
+		this.newLine();
+	}
+
+	@Override
+	public WCSPOutput newChunk() {
+		return new WCSPWriter();
+	}
+
+	@Override
+	protected void putTuplesNumber(int tuplesNumber) {
+		this.putInt(tuplesNumber);
+		this.buffer[this.position++] = '\n';
+	}
+
+	/**
+	 * Write a line feed.
+	 * 
+	 * @throws IOException
+	 */
+	public void newLine() throws IOException {
+		this.writeByte('\n');
+	}
+
+	/**
+	 * Write an integer in decimal.
+	 * 
+	 * @param value the integer.
+	 * @throws IOException
+	 */
+	public void writeInt(int value) throws IOException {
+		this.reserve(11);
+		this.putInt(value);
+	}
+
+	/**
+	 * Write a string made of ASCII characters.
+	 * 
+	 * @param s the string.
+	 * @throws IOException
+	 */
+	public void writeAscii(String s) throws IOException {
+		this.reserve(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			this.buffer[this.position++] = (byte) s.charAt(i);
+		}
+	}
+
+	private void writeByte(int b) throws IOException {
+		this.reserve(1);
+		this.buffer[this.position++] = (byte) b;
+	}
+
+	/**
+	 * Put the decimal digits of value in the buffer, assuming
+	 * there is enough room for them.
+	 */
+	private void putInt(int value) {
+		/* Work on a negative value so that Integer.MIN_VALUE is handled too */
+		int negative = value;
+		if (value < 0) {
+			this.buffer[this.position++] = '-';
+		} else {
+			negative = -value;
+		}
+
+		int digitsNumber = 1;
+		for (int bound = -10; negative <= bound && digitsNumber < 10; bound *= 10) {
+			digitsNumber++;
+		}
+
+		int end = this.position + digitsNumber;
+		for (int i = end - 1; i >= this.position; i--) {
+			this.buffer[i] = (byte) ('0' - negative % 10);
+			negative /= 10;
+		}
+		this.position = end;
+	}
+}